@@ -0,0 +1,93 @@
+package coloring;
+
+/** Build a line of text formatted with ANSI escape sequences, one cell at a time.
+ * Adjacent cells with the same colours and attributes share a single escape
+ * sequence, emitted only where the formatting changes. Unformatted cells are printed
+ * on the default background with no escape at all.
+ * */
+public class AnsiEncoder {
+
+	public static final int INVERT= 1;
+	public static final int UNDERLINE= 2;
+	/** Show the cell in bold and reverse video on top of its formatting*/
+	public static final int HIGHLIGHT= 4;
+
+	private final StringBuilder sb;
+	/** Background colour restored after formatted cells*/
+	private final int background;
+	/** Formatting of the last cell. open is false for unformatted cells.*/
+	private boolean open= false;
+	private int fg;
+	private int bg;
+	private int attributes;
+	/** If true the formatting of the next cell must be written out in full*/
+	private boolean dirty= false;
+
+	/*   C o n s t r u c t o r s   */
+
+	public AnsiEncoder(StringBuilder sb, int background){
+		this.sb= sb;
+		this.background= background;
+	}
+
+	public AnsiEncoder(int background){
+		this(new StringBuilder(), background);
+	}
+
+	/*   M e t h o d s   */
+
+	/** Add a cell without formatting. Only the HIGHLIGHT attribute applies.*/
+	public void appendPlain(char c, int attr){
+		this.close();
+		if((attr & HIGHLIGHT) != 0){
+			this.sb.append("\033[1;7m").append(c).append("\033[21;27m");
+		} else {
+			this.sb.append(c);
+		}
+	}
+
+	/** Add a cell with the given xterm256 colours and attributes*/
+	public void append(char c, int fgColor, int bgColor, int attr){
+		int style= attr & (INVERT | UNDERLINE);
+		if( ! this.open || this.dirty || fgColor != this.fg || bgColor != this.bg || style != this.attributes){
+			this.sb.append("\033[");
+			if(this.open && (this.dirty || (this.attributes & ~style) != 0)){
+				// Turn off attributes of the previous cell
+				this.sb.append("0;");
+			}
+			if((style & INVERT) != 0){
+				this.sb.append("7;");
+			}
+			if((style & UNDERLINE) != 0){
+				this.sb.append("4;");
+			}
+			this.sb.append("48;5;").append(bgColor).append(";38;5;").append(fgColor).append('m');
+			this.open= true;
+			this.fg= fgColor;
+			this.bg= bgColor;
+			this.attributes= style;
+			this.dirty= false;
+		}
+		if((attr & HIGHLIGHT) != 0){
+			this.sb.append("\033[1;7m").append(c).append("\033[21;27m");
+			this.dirty= true;
+		} else {
+			this.sb.append(c);
+		}
+	}
+
+	/** Reset formatting if the last cell was formatted*/
+	private void close(){
+		if(this.open){
+			this.sb.append("\033[0;48;5;").append(this.background).append('m');
+			this.open= false;
+		}
+	}
+
+	/** The encoded line, with formatting reset at the end*/
+	@Override
+	public String toString(){
+		this.close();
+		return this.sb.toString();
+	}
+}
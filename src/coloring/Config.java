@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -25,16 +26,22 @@ public class Config {
 	// C O N S T R U C T O R 
 	
 	private static final Map<ConfigKey, String> config= new HashMap<ConfigKey, String>();
+	
+	/** xterm256 colour of each key, indexed by ConfigKey ordinal and -1 for keys that 
+	 * are not colours. Replaced as a whole, never modified, each time the configuration 
+	 * changes so that renderers can read it without further lookups.*/
+	private static volatile int[] palette= new int[0];
 
 	public Config(String source) throws IOException, InvalidConfigException {
 		
-		new Xterm256();
-		
 		String RawConfigFile= Config.getConfigFileAsString(source).replaceAll("\t", " ").toLowerCase();
 		
 		// This will give one string per line
 		List<String> raw= Splitter.on("\n").omitEmptyStrings().trimResults().splitToList(RawConfigFile);
 
+		// Defaults for keys the file may not have
+		config.putAll(ConfigKey.optionalKeys());
+		
 		//List<String> config= new ArrayList<String>();
 		for(String x : raw){
 			x= x.replaceAll("#.*", "").trim();
@@ -111,34 +118,52 @@ public class Config {
 		
 	} 
 	
-	/** We convert the color names to the corresponding int. This is because looking up
-	 *  by int is much faster than by name. 
+	/** We convert the color names to the corresponding int and store them in the 
+	 * palette. This is because looking up by int is much faster than by name. 
 	 * @throws InvalidColourException 
 	 * */
 	private static void colorNameToInt() throws InvalidColourException{
-		for(ConfigKey key : config.keySet()){
-			if(ConfigKey.nonColorKeys().contains(key)){
+		Set<ConfigKey> nonColorKeys= ConfigKey.nonColorKeys();
+		int[] resolved= new int[ConfigKey.values().length];
+		for(ConfigKey key : ConfigKey.values()){
+			if(nonColorKeys.contains(key) || ! config.containsKey(key)){
+				resolved[key.ordinal()]= -1;
 				continue;
 			}
 			int colorInt = Xterm256.colorNameToXterm256(config.get(key));
 			config.put(key, Integer.toString(colorInt));
+			resolved[key.ordinal()]= colorInt;
 		}
+		palette= resolved;
 	}
 	
 	/** Get xterm256 color corresponding to this configuration key
 	 * */
 	public static int get256Color(ConfigKey key) throws InvalidColourException{
-		new Xterm256();
-		return Xterm256.colorNameToXterm256(config.get(key));
+		int[] p= palette;
+		if(key.ordinal() >= p.length || p[key.ordinal()] < 0){
+			System.err.println("Not a colour: " + key);
+			throw new InvalidColourException();
+		}
+		return p[key.ordinal()];
 	}
 
-	/** Get value associated to this configuration key 
+	/** Get value associated to this configuration key. For optional keys, the default 
+	 * if no configuration has been read.
 	 * */
 	public static String get(ConfigKey key) {
-		return config.get(key);
+		String value= config.get(key);
+		if(value == null){
+			return ConfigKey.optionalKeys().get(key);
+		}
+		return value;
 	}		
 
 	public static void set(ConfigKey key, String value) throws InvalidColourException{
+		if( ! ConfigKey.nonColorKeys().contains(key)){
+			// Fail before changing anything if value is not a colour 
+			Xterm256.colorNameToXterm256(value);
+		}
 		config.put(key, value);
 		colorNameToInt();
 	}
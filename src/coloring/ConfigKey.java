@@ -1,6 +1,8 @@
 package coloring;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 // See http://stackoverflow.com/questions/15989316/how-to-add-a-description-for-each-entry-of-enum
@@ -28,7 +30,9 @@ public enum ConfigKey {
 	ruler("Colour for ruler"),
 	max_reads_in_stack("Max number of reads to accumulate when showing read tracks"), 
 	shade_baseq("Shade read base when quality is below this threshold"),
-	shade_structural_variant("Background colour for reads suggesting structural variation");
+	shade_structural_variant("Background colour for reads suggesting structural variation"),
+	bgzf_threads("Threads to decompress bam files ahead of reading. 0 to disable"),
+	memory_index_mb("Max size in MB to index bed, gtf, gff in memory. 0 to disable");
 	
 	private String value;
 
@@ -43,9 +47,21 @@ public enum ConfigKey {
 		Set<ConfigKey> nonColorKeys= new HashSet<ConfigKey>(); 
 		nonColorKeys.add(ConfigKey.max_reads_in_stack);
 		nonColorKeys.add(ConfigKey.shade_baseq);
+		nonColorKeys.add(ConfigKey.bgzf_threads);
+		nonColorKeys.add(ConfigKey.memory_index_mb);
 		return nonColorKeys;
 	}
 	
+	/** Keys that may be missing from a configuration file, with their default value. So that 
+	 * configuration files written before these keys were added still work.
+	 * */
+	public static Map<ConfigKey, String> optionalKeys(){
+		Map<ConfigKey, String> optionalKeys= new HashMap<ConfigKey, String>();
+		optionalKeys.put(ConfigKey.bgzf_threads, "0");
+		optionalKeys.put(ConfigKey.memory_index_mb, "20");
+		return optionalKeys;
+	}
+	
     public static ConfigKey getEnum(String value) {
         if(value == null)
             throw new IllegalArgumentException();
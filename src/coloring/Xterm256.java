@@ -13,7 +13,7 @@ public class Xterm256 {
 	public static final LinkedHashMap<Integer, String> contrastColor= new LinkedHashMap<Integer, String>(); 
 	// static final HashMap<Integer, String> intColorToName= new HashMap<Integer, String>();
 	
-	public Xterm256(){
+	static {
 		
 		// See http://jonasjacek.github.io/colors/
 		xtermNameToNumber.put("black", 0);
@@ -533,6 +533,11 @@ public class Xterm256 {
 		contrastColor.put(255, "grey19");
 		
 	}
+	
+	/** The colour tables are filled once when the class is loaded. Creating an 
+	 * instance is not necessary and does nothing.*/
+	public Xterm256(){
+	}
 
 	public static final Color xterm256ToColor(int xterm256) throws InvalidColourException{
 		
@@ -594,15 +599,15 @@ public class Xterm256 {
 			}
 		}
 		
+		String reset= "\033[38;5;" + Config.get256Color(ConfigKey.foreground) + 
+				";48;5;" + Config.get256Color(ConfigKey.background) + "m";
 		StringBuilder sb= new StringBuilder();
 		int i= 0;
 		for(String x : xtermNameToNumber.keySet()){
 			i++;
 			int xterm= xtermNameToNumber.get(x);
 			int spacer= maxLen - x.length();
-			sb.append(xterm + ": \033[38;5;" + xterm + "m" + x + 
-					"\033[38;5;" + Config.get256Color(ConfigKey.foreground) + 
-					";48;5;" + Config.get256Color(ConfigKey.background) + "m");
+			sb.append(xterm + ": \033[38;5;" + xterm + "m" + x + reset);
 			
 			if(i == 3){ // Arrange colors in this many columns
 				sb.append("\n");
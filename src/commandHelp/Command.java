@@ -47,6 +47,7 @@ public enum Command {
 	history("history"),
 	rpm("rpm"),
 	samtools("samtools"),
+	coverageTdf("coverageTdf"),
 	BSseq("BSseq"),
 	save("save"),
 	sessionSave("sessionSave");
@@ -391,7 +391,7 @@ public class CommandList {
 
 		
 		cmd= new CommandHelp();
-		cmd.setName("grep"); cmd.setArgs("[-i = .*] [-e = ''] [-c] [-F] [-v] [track_regex = .*]..."); cmd.inSection= Section.DISPLAY; 
+		cmd.setName("grep"); cmd.setArgs("[-i = .*] [-e = ''] [-c] [-F] [-f field] [-v] [track_regex = .*]..."); cmd.inSection= Section.DISPLAY; 
 		cmd.setBriefDescription("Similar to grep command, filter for features including or excluding patterns.");
 		cmd.setAdditionalDescription(""
 				+ "Options:\n"
@@ -404,6 +404,13 @@ public class CommandList {
 				+ "\n"
 				+ "* :code:`-F` Interpret `regex` in `-i` and `-e` as a fixed, literal string instead of as a regex.\n"
 				+ "\n"
+				+ "* :code:`-f field` For alignment tracks, match only this field of the reads: One of "
+				+ ":code:`qname` (read name), :code:`flag`, :code:`rname`, :code:`pos`, :code:`mapq`, :code:`cigar`, "
+				+ ":code:`rnext`, :code:`pnext`, :code:`tlen`, :code:`seq`, :code:`qual` or the name of a tag, e.g. :code:`NM`. "
+				+ "For tags, the regex is matched against the value only. Reads without the tag are not shown "
+				+ "by :code:`-i` and not hidden by :code:`-e`. This is faster than matching the whole "
+				+ "read, e.g. :code:`grep -i ^HWI-ST -f qname`\n"
+				+ "\n"
 				+ "* :code:`-v` Invert selection: apply changes to the tracks not selected by list of track_regex\n"
 				+ "\n"
 				+ "* :code:`track_regex` Apply to tracks matched by `track_regex`.\n"
@@ -576,6 +583,43 @@ public class CommandList {
 				+ "\n"
 				+ "* An invalid script throws an ugly stack trace to stderr. To be fixed.");
 		cmdList.add(cmd);
+
+		cmd= new CommandHelp();
+		cmd.setName("filter"); cmd.setArgs("[-off ...] [-V] '<expression>' [track_regex = .*]..."); cmd.inSection= Section.DISPLAY; 
+		cmd.setBriefDescription("Fast filtering of records on column values using awk syntax.");
+		cmd.setAdditionalDescription("Filter records with an expression in the same syntax as :code:`awk` and "
+				+ "with the same column headers, e.g. :code:`$START`. "
+				+ "Simple expressions are evaluated directly on the columns of each record without "
+				+ "running awk, which is much faster on large windows. These can use:\n"
+				+ "\n"
+				+ "* Columns :code:`$0`, :code:`$1`, :code:`$2`, ..., numbers and strings in double quotes\n"
+				+ "\n"
+				+ "* Comparisons :code:`==, !=, <, <=, >, >=` and regex matches :code:`\\~, !\\~`\n"
+				+ "\n"
+				+ "* :code:`&&, ||, !` and parentheses\n"
+				+ "\n"
+				+ "Anything else, such as arithmetic or the :code:`get(...)` function, is passed to awk. "
+				+ "The expression replaces the awk script of the selected tracks, if any, and "
+				+ "the :code:`awk` command replaces the filter.\n"
+				+ "\n"
+				+ "*OPTIONS*\n"
+				+ "\n"
+				+ "* :code:`-off track_re ...`  Turn off filtering for tracks captured by the list of regexes.\n"
+				+ "\n"
+				+ "* :code:`-V` Invert selection: apply changes to the tracks not selected by list of track_regex\n"
+				+ "\n"
+				+ "*EXAMPLES*\n"
+				+ "\n"
+				+ "* Filter for lines where the 5th column is above 30 and the feature is an exon::\n"
+				+ "\n"
+				+ "    filter '$5 > 30 && $3 == \"exon\"' .gtf\n"
+				+ "\n"
+				+ "* Using header variables::\n"
+				+ "\n"
+				+ "    filter '$MAPQ >= 30 && $CIGAR !\\~ \"S\"' .bam\n"
+				+ "\n"
+				+ "With no args, turn off filtering for all tracks.");
+		cmdList.add(cmd);
 		
 		cmd= new CommandHelp();
 		cmd.setName("featureColorForRegex"); cmd.setArgs("[-r/-R regex color] [-v] [track_regex = .*]..."); cmd.inSection= Section.DISPLAY; 
@@ -1171,6 +1215,19 @@ public class CommandList {
 				+ "");
 		cmdList.add(cmd);
 
+		cmd= new CommandHelp();
+		cmd.setName(Command.coverageTdf.getCmdDescr()); cmd.setArgs("[-v] [track_regex = .*]..."); cmd.inSection= Section.ALIGNMENTS; 
+		cmd.setBriefDescription("Precompute coverage of bam files for fast display of large windows.");
+		cmd.setAdditionalDescription("Coverage is computed over the whole bam file at multiple resolutions "
+				+ "and saved next to it as <bam>.asciigenome.tdf. Coverage tracks captured by the list of regexes "
+				+ "use this file instead of reading alignments when the window is larger than 1 Mb. "
+				+ "The file is used only as long as the track has the same mapq and flag filters set with "
+				+ "*samtools* at the time of computing it, no other filters are set and the bam file has not changed.\n"
+				+ "\n"
+				+ "* :code:`-v` Invert selection: apply changes to the tracks not selected by list of track_regex\n"
+				+ "");
+		cmdList.add(cmd);
+
 		cmd= new CommandHelp();
 		cmd.setName(Command.BSseq.getCmdDescr()); cmd.setArgs("[-on | -off] [-v] [track_regex = .*]..."); cmd.inSection= Section.ALIGNMENTS; 
 		cmd.setBriefDescription("Set bisulfite mode for read tracks matched by regex.");
@@ -1310,6 +1367,7 @@ public class CommandList {
 		paramList.add("bookmark");
 		paramList.add("grep");
 		paramList.add("awk");
+		paramList.add("filter");
 		paramList.add("filterVariantReads");
 		paramList.add("gffNameAttr");
 		paramList.add("gap");
@@ -1335,6 +1393,7 @@ public class CommandList {
 		paramList.add("history");
 		paramList.add(Command.rpm.getCmdDescr());
 		paramList.add("samtools");
+		paramList.add(Command.coverageTdf.getCmdDescr());
 		paramList.add(Command.BSseq.getCmdDescr());
 		paramList.add("save");
 		paramList.add("sys");
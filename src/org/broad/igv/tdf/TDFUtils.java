@@ -32,7 +32,7 @@ package org.broad.igv.tdf;
 import org.broad.igv.Globals;
 import org.broad.igv.track.WindowFunction;
 
-import samTextViewer.Utils;
+import samTextViewer.GenomicCoords;
 import tracks.ScreenWiggleLocusInfo;
 
 import java.io.BufferedOutputStream;
@@ -305,14 +305,14 @@ public class TDFUtils {
     
     /** Fetch data in tdf file in given range and puts it in a list of ScreenWiggleLocusInfo. 
      * a Adapted from dumpRange. Really it should implement iterator.
-     * @param genomeToScreenMapping Typically from GenomicCoords.getMapping() 
+     * @param gc Coordinates mapping genomic positions to screen columns 
      * 
      * @author berald01
      * */
-    public static List<ScreenWiggleLocusInfo> tdfRangeToScreen(String ibfFile, String chrom, int startLocation, int endLocation, List<Double> genomeToScreenMapping) {
+    public static List<ScreenWiggleLocusInfo> tdfRangeToScreen(String ibfFile, String chrom, int startLocation, int endLocation, GenomicCoords gc) {
         
     	List<ScreenWiggleLocusInfo> screenWiggleLocusInfoList= new ArrayList<ScreenWiggleLocusInfo>();
-		for(int i= 0; i < genomeToScreenMapping.size(); i++){
+		for(int i= 0; i < gc.getMapping().size(); i++){
 			screenWiggleLocusInfoList.add(new ScreenWiggleLocusInfo());
 		}
 		
@@ -352,7 +352,7 @@ public class TDFUtils {
 	                        if (end >= startLocation) {
 	                        	int tileStartPos= tile.getStartPosition(b); 
                             	float tileValue= tile.getValue(0, b);
-	                            int idx= Utils.getIndexOfclosestValue(tileStartPos+1, genomeToScreenMapping); // Where should this position be mapped on screen?
+	                            int idx= gc.getColumnOfPosition(tileStartPos+1); // Where should this position be mapped on screen?
 	                            screenWiggleLocusInfoList.get(idx).increment(tileValue);
 	                            	
 	                        }
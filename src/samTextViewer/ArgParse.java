@@ -76,6 +76,17 @@ public class ArgParse {
 					+ "If this file is missing use a built-in setting. "
 					+ "For examples of configuration files see https://github.com/dariober/ASCIIGenome/blob/master/resources/config/");
 		
+		parser.addArgument("--diffRedraw", "-dr")
+			.action(Arguments.storeTrue())
+			.help("After each command redraw only the lines of the screen that have changed "
+					+ "instead of the whole screen. This can make browsing faster over slow connections. "
+					+ "The whole screen is redrawn if the terminal is resized.");
+		
+		parser.addArgument("--noPrefetch", "-np")
+			.action(Arguments.storeTrue())
+			.help("Do not read ahead the regions left, right, zoomed in and out of the current one "
+					+ "while waiting for input. Reading ahead makes moving to these regions faster.");
+		
 		parser.addArgument("--showMem", "-sm")
 			.action(Arguments.storeTrue())
 			.help("Show memory usage. Typically used for debugging only.");
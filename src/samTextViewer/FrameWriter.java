@@ -0,0 +1,219 @@
+package samTextViewer;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Write a frame to the terminal one line at a time. Each line is padded with blanks up
+ * to the window width so that terminals like tmux do not show lines of mixed colours.
+ * The visible width of the current line is counted as text is appended, skipping ANSI
+ * escape sequences, so the frame does not need to be split and stripped of escapes
+ * once it has been built.
+ *
+ * In diff mode the lines are kept until close() and compared to the lines of the
+ * previous screen. Only the lines that differ are rewritten, each after moving the
+ * cursor to its row.
+ * */
+class FrameWriter {
+
+	/** Lines of a frame as shown on the terminal. Used as input to the next frame in diff mode.*/
+	protected static class Screen {
+		private final List<String> lines;
+		/** Formatting in effect at the start of each line*/
+		private final List<String> formats;
+		private Screen(List<String> lines, List<String> formats){
+			this.lines= lines;
+			this.formats= formats;
+		}
+	}
+
+	private final Writer out;
+	private final int width;
+	/** The current line, written out when a newline is appended*/
+	private final StringBuilder line= new StringBuilder();
+	/** Number of visible characters in the current line */
+	private int visible= 0;
+	/** Characters of a possible escape sequence not yet known to be one. 0 if not in
+	 * an escape sequence. These are counted as visible if the sequence turns out invalid.*/
+	private int pending= 0;
+	private boolean firstLine= true;
+	/** Copy of the whole frame, only if requested*/
+	private StringBuilder frame= null;
+
+	// Diff mode
+	private boolean diff= false;
+	private Screen previous;
+	private int height;
+	private List<String> lines;
+	private List<String> formats;
+	/** Escape sequences since the last one resetting the formatting*/
+	private final StringBuilder format= new StringBuilder();
+	private String lineFormat= "";
+	/** True if any line is wider than the window and therefore wraps*/
+	private boolean wraps= false;
+	private Screen screen= null;
+
+	/*   C o n s t r u c t o r s   */
+
+	/** Lines are padded to width characters and written to out.*/
+	protected FrameWriter(Writer out, int width){
+		this.out= out;
+		this.width= width;
+	}
+
+	/*   M e t h o d s   */
+
+	/** Also keep a copy of the frame to be returned by getFrame()*/
+	protected void keepFrame(){
+		this.frame= new StringBuilder();
+	}
+
+	/** Write only the lines that differ from the previous screen, drawn at the top of a
+	 * terminal of the given height. If previous is null, or if either frame does not
+	 * fit the terminal, clear the screen and write all lines.
+	 * */
+	protected void diffAgainst(Screen previous, int height){
+		this.diff= true;
+		this.previous= previous;
+		this.height= height;
+		this.lines= new ArrayList<String>();
+		this.formats= new ArrayList<String>();
+	}
+
+	protected FrameWriter append(CharSequence s) throws IOException{
+		for(int i= 0; i < s.length(); i++){
+			this.append(s.charAt(i));
+		}
+		return this;
+	}
+
+	protected FrameWriter append(char c) throws IOException{
+		if(c == '\n'){
+			this.endLine();
+			return this;
+		}
+		this.line.append(c);
+		// Escape sequences have the form \033[<digits and semicolons>m
+		if(this.pending > 0){
+			if(this.pending == 1 && c == '['){
+				this.pending++;
+				return this;
+			} else if(this.pending > 1 && ((c >= '0' && c <= '9') || c == ';')){
+				this.pending++;
+				return this;
+			} else if(this.pending > 1 && c == 'm'){
+				this.addFormat(this.pending + 1);
+				this.pending= 0;
+				return this;
+			}
+			// Not an escape sequence after all
+			this.visible += this.pending;
+			this.pending= 0;
+		}
+		if(c == '\033'){
+			this.pending= 1;
+		} else {
+			this.visible++;
+		}
+		return this;
+	}
+
+	/** Track the formatting from the escape sequence of length len at the end of the line*/
+	private void addFormat(int len){
+		if( ! this.diff){
+			return;
+		}
+		int start= this.line.length() - len;
+		char p= this.line.charAt(start + 2);
+		if(p == 'm' || (p == '0' && (this.line.charAt(start + 3) == ';' || this.line.charAt(start + 3) == 'm'))){
+			// Formatting is reset here
+			this.format.setLength(0);
+		}
+		this.format.append(this.line, start, this.line.length());
+	}
+
+	/** Pad and write out the current line*/
+	private void endLine() throws IOException{
+		this.visible += this.pending;
+		this.pending= 0;
+		if(this.visible > this.width){
+			this.wraps= true;
+		}
+		for(int i= this.visible; i < this.width; i++){
+			this.line.append(' ');
+		}
+		if(this.diff){
+			this.lines.add(this.line.toString());
+			this.formats.add(this.lineFormat);
+			this.lineFormat= this.format.toString();
+		} else {
+			if( ! this.firstLine){
+				this.out.write('\n');
+			}
+			this.out.append(this.line);
+		}
+		if(this.frame != null){
+			if( ! this.firstLine){
+				this.frame.append('\n');
+			}
+			this.frame.append(this.line);
+		}
+		this.firstLine= false;
+		this.line.setLength(0);
+		this.visible= 0;
+	}
+
+	/** Write out the last line, followed by a newline, and flush. The underlying writer
+	 * is not closed.*/
+	protected void close() throws IOException{
+		this.endLine();
+		if(this.diff){
+			this.writeDiff();
+		} else {
+			this.out.write('\n');
+		}
+		this.out.flush();
+	}
+
+	private void writeDiff() throws IOException{
+		// Leave a row for the command prompt
+		boolean fits= ! this.wraps && this.lines.size() < this.height - 1;
+		if(this.previous == null || ! fits){
+			// Full redraw
+			this.out.write("\033[H\033[2J");
+			for(String x : this.lines){
+				this.out.write(x);
+				this.out.write('\n');
+			}
+		} else {
+			for(int i= 0; i < this.lines.size(); i++){
+				if(i < this.previous.lines.size() &&
+				   this.lines.get(i).equals(this.previous.lines.get(i)) &&
+				   this.formats.get(i).equals(this.previous.formats.get(i))){
+					continue;
+				}
+				this.out.write("\033[" + (i + 1) + ";1H\033[0m");
+				this.out.write(this.formats.get(i));
+				this.out.write(this.lines.get(i));
+			}
+			// Go below the frame and clear what is left of the previous screen
+			this.out.write("\033[" + (this.lines.size() + 1) + ";1H");
+			this.out.write(this.format.toString());
+			this.out.write("\033[J");
+		}
+		this.screen= fits ? new Screen(this.lines, this.formats) : null;
+	}
+
+	/** The lines written, without the trailing newline, or null if keepFrame() was not
+	 * called*/
+	protected String getFrame(){
+		return this.frame == null ? null : this.frame.toString();
+	}
+
+	/** In diff mode, the screen drawn by close() to be passed to the next frame. Null if
+	 * the next frame cannot be drawn as a diff of this one.*/
+	protected Screen getScreen(){
+		return this.screen;
+	}
+}
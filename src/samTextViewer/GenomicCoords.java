@@ -17,6 +17,7 @@ import java.util.Set;
 
 import org.apache.commons.lang3.StringUtils;
 
+import coloring.AnsiEncoder;
 import coloring.Config;
 import coloring.ConfigKey;
 import exceptions.InvalidColourException;
@@ -58,6 +59,10 @@ public class GenomicCoords implements Cloneable {
 	public boolean isSingleBaseResolution= false;
 	private int terminalWidth;
 	private List<Double> mapping;
+	/** Same as mapping, as array for fast access */
+	private double[] mappingArray;
+	/** First genomic position mapped to each screen column */
+	private int[] columnStart;
 	
 	/* Constructors */
 	public GenomicCoords(String region, int terminalWidth, SAMSequenceDictionary samSeqDict, String fastaFile, boolean verbose) throws InvalidGenomicCoordsException, IOException{
@@ -119,6 +124,7 @@ public class GenomicCoords implements Cloneable {
 		this.setSingleBaseResolution(); // True if one text character corresponds to 1 bp
 		this.setRefSeq();
 		this.mapping= this.seqFromToLenOut(this.getTerminalWidth());
+		this.setColumnIndex();
 	}
 	
 	/* Methods */
@@ -178,7 +184,8 @@ public class GenomicCoords implements Cloneable {
 		this.refSeq= this.getSequenceFromFasta();
 	}
 	
-	public byte[] getRefSeq() throws IOException, InvalidGenomicCoordsException {
+	/** Synchronized since tracks sharing this object may be updated concurrently*/
+	public synchronized byte[] getRefSeq() throws IOException, InvalidGenomicCoordsException {
 		if(this.refSeq == null){
 			this.setRefSeq();
 		}
@@ -675,24 +682,29 @@ public class GenomicCoords implements Cloneable {
 		if(noFormat){
 			return new String(refSeq) + "\n";
 		} else {
-			String faSeqStr= "";
-			for(byte c : refSeq){
+			int bg= Config.get256Color(ConfigKey.background);
+			int a= Config.get256Color(ConfigKey.seq_a);
+			int c= Config.get256Color(ConfigKey.seq_c);
+			int g= Config.get256Color(ConfigKey.seq_g);
+			int t= Config.get256Color(ConfigKey.seq_t);
+			int other= Config.get256Color(ConfigKey.seq_other);
+			AnsiEncoder enc= new AnsiEncoder(bg);
+			for(byte x : refSeq){
 				// For colour scheme see http://www.umass.edu/molvis/tutorials/dna/atgc.htm
-				char base= (char) c;
-				String prefix= "\033[48;5;" + Config.get256Color(ConfigKey.background) + ";38;5;";
+				char base= (char) x;
 				if(base == 'A' || base == 'a'){
-					faSeqStr += prefix + Config.get256Color(ConfigKey.seq_a) + "m" + base;
+					enc.append(base, a, bg, 0);
 				} else if(base == 'C' || base == 'c') {
-					faSeqStr += prefix + Config.get256Color(ConfigKey.seq_c) + "m" + base;
+					enc.append(base, c, bg, 0);
 				} else if(base == 'G' || base == 'g') {
-					faSeqStr += prefix + Config.get256Color(ConfigKey.seq_g) + "m" + base;
+					enc.append(base, g, bg, 0);
 				} else if(base == 'T' || base == 't') {
-					faSeqStr += prefix + Config.get256Color(ConfigKey.seq_t) + "m" + base;
+					enc.append(base, t, bg, 0);
 				} else {
-					faSeqStr += prefix + Config.get256Color(ConfigKey.seq_other) + "m" + base;
+					enc.append(base, other, bg, 0);
 				} 
 			}
-			return faSeqStr + "\n";
+			return enc.toString() + "\n";
 		}
 	}
 
@@ -925,6 +937,91 @@ public class GenomicCoords implements Cloneable {
 	public List<Double> getMapping() {
 		return this.mapping;
 	}
+
+	/** Prepare the arrays used by getColumnOfPosition() and getFirstPositionInColumn()
+	 * */
+	private void setColumnIndex(){
+		if(this.mapping == null){
+			this.mappingArray= null;
+			this.columnStart= null;
+			return;
+		}
+		this.mappingArray= new double[this.mapping.size()];
+		for(int i= 0; i < this.mappingArray.length; i++){
+			this.mappingArray[i]= this.mapping.get(i);
+		}
+		this.columnStart= new int[this.mappingArray.length];
+		this.columnStart[0]= Integer.MIN_VALUE;
+		for(int c= 1; c < this.columnStart.length; c++){
+			// The boundary between columns is about half way between the mapped positions.
+			// Adjust it so that it agrees exactly with getColumnOfPosition().
+			int pos= (int) Math.ceil((this.mappingArray[c-1] + this.mappingArray[c]) / 2);
+			while(this.getColumnOfPosition(pos - 1) >= c){
+				pos--;
+			}
+			while(this.getColumnOfPosition(pos) < c){
+				pos++;
+			}
+			this.columnStart[c]= pos;
+		}
+	}
+	
+	/** Index of the screen column where the genomic position pos is mapped. Same as 
+	 * Utils.getIndexOfclosestValue(pos, this.getMapping()) but in constant time.
+	 * */
+	public int getColumnOfPosition(double pos){
+		double[] m= this.mappingArray;
+		int last= m.length - 1;
+		if(pos <= m[0]){
+			return 0;
+		}
+		if(pos >= m[last]){
+			return last;
+		}
+		// Mapped positions are about evenly spaced so we can guess where pos is
+		// and then move to the right interval m[i] <= pos < m[i+1]
+		int i= (int) ((pos - m[0]) / ((m[last] - m[0]) / last));
+		i= Math.max(0, Math.min(i, last - 1));
+		while(i > 0 && m[i] > pos){
+			i--;
+		}
+		while(i < last - 1 && m[i+1] <= pos){
+			i++;
+		}
+		if(m[i] == pos){
+			return i;
+		}
+		if(pos - m[i] < m[i+1] - pos){
+			return i;
+		} else {
+			return i + 1;
+		}
+	}
+
+	/** First genomic position mapped to the given screen column. 
+	 * For column 0 this is Integer.MIN_VALUE since all positions before the 
+	 * start of the window are mapped to column 0. 
+	 * */
+	public int getFirstPositionInColumn(int column){
+		return this.columnStart[column];
+	}
+	
+	/** Count the positions in the genomic interval from-to that are mapped to each
+	 * screen column between getColumnOfPosition(from) and getColumnOfPosition(to). 
+	 * The count for the column getColumnOfPosition(from) + i is in counts[i].
+	 * This takes time proportional to the number of columns, not to the size of the interval.
+	 * */
+	public int[] countPositionsInColumns(int from, int to){
+		int colFrom= this.getColumnOfPosition(from);
+		int colTo= this.getColumnOfPosition(to);
+		int[] counts= new int[colTo - colFrom + 1];
+		for(int c= colFrom; c <= colTo; c++){
+			int first= (c == colFrom) ? from : this.columnStart[c];
+			int last= (c == colTo) ? to : this.columnStart[c+1] - 1;
+			counts[c - colFrom]= last - first + 1;
+		}
+		return counts;
+	}
 	
 	/** Map using this.getUserWindowSize() as window size. Consider using 
 	 * getMapping(int size) to avoid computing the terminal width for each call. */
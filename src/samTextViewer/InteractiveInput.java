@@ -351,6 +351,9 @@ public class InteractiveInput {
 				
 				} else if(cmdTokens.get(0).equals("awk")){
 					proc.getTrackSet().setAwkForTrack(cmdTokens);
+
+				} else if(cmdTokens.get(0).equals("filter")){
+					proc.getTrackSet().setColumnFilterForTrack(cmdTokens);
 					
 				} else if(cmdTokens.get(0).equals("filterVariantReads")){
 					proc.getTrackSet().setFilterVariantReads(cmdTokens);
@@ -360,6 +363,9 @@ public class InteractiveInput {
 
 				} else if(cmdTokens.get(0).equals("samtools")){
 					proc.getTrackSet().setSamFilterForRegex(cmdTokens);
+
+				} else if(cmdTokens.get(0).equals(Command.coverageTdf.getCmdDescr())){
+					messages += proc.getTrackSet().makeCoverageSidecarForRegex(cmdTokens);
 					
 				} else if(cmdTokens.get(0).equals("genotype")){
 					proc.getTrackSet().setGenotypeMatrix(cmdTokens);
@@ -448,8 +454,10 @@ public class InteractiveInput {
 				// Command has been parsed ok. Let's see if we can execute it without exceptions.
 				try{
 					if(this.interactiveInputExitCode.equals(ExitCode.CLEAN)){
-						console.clearScreen();
-						console.flush();
+						if( ! proc.isDiffRedraw()){
+							console.clearScreen();
+							console.flush();
+						}
 						proc.iterateTracks();
 					} else {
 						//
@@ -459,6 +467,7 @@ public class InteractiveInput {
 					String region= Main.initRegion(proc.getTrackSet().getFilenameList(), null, null, debug);
 					proc.getGenomicCoordsHistory().add(new GenomicCoords(region, terminalWidth, samSeqDict, fasta));
 					System.err.println(Utils.padEndMultiLine("Invalid genomic coordinates found. Resetting to "  + region, proc.getWindowSize()));
+					proc.forceFullRedraw();
 					if(debug > 0){
 						e.printStackTrace();
 					}
@@ -471,6 +480,10 @@ public class InteractiveInput {
 					}
 				}
 			}
+			if( ! this.interactiveInputExitCode.equals(ExitCode.CLEAN)){
+				// Output other than the frame may have moved the frame up
+				proc.forceFullRedraw();
+			}
 			if(this.interactiveInputExitCode.equals(ExitCode.ERROR)) {
 				// If something goes wrong or help is invoked, stop executing commands and restart asking for input
 				// Unless we are in non-interactive mode
@@ -482,6 +495,7 @@ public class InteractiveInput {
 		} // END OF LOOP THROUGH CHAIN OF INPUT COMMANDS
 		if( ! messages.isEmpty()){
 			System.err.println(Utils.padEndMultiLine(messages.trim(), proc.getWindowSize())); 
+			proc.forceFullRedraw();
 		}
 		messages= "";
 		return proc;
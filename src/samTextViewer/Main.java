@@ -2,6 +2,8 @@ package samTextViewer;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
@@ -38,6 +40,7 @@ import jline.console.history.History;
 import jline.console.history.History.Entry;
 import net.sourceforge.argparse4j.inf.Namespace;
 import tracks.IntervalFeature;
+import tracks.Prefetcher;
 import tracks.Track;
 import tracks.TrackFormat;
 import tracks.TrackPileup;
@@ -115,6 +118,7 @@ public class Main {
 		final TrackProcessor proc= new TrackProcessor(trackSet, gch);
 		proc.setShowMem(opts.getBoolean("showMem"));
 		proc.setShowTime(opts.getBoolean("showTime"));
+		proc.setDiffRedraw(opts.getBoolean("diffRedraw"));
 		
 		proc.setNoFormat(opts.getBoolean("noFormat"));
 		
@@ -189,7 +193,17 @@ public class Main {
 						StringUtils.repeat(' ', proc.getWindowSize()) + '\r' + "[h] for help: "
 						);
 
+				// Read ahead the windows around the current one while waiting for input
+				Prefetcher prefetcher= null;
+				if( ! opts.getBoolean("noPrefetch")){
+					prefetcher= new Prefetcher(trackSet.getTrackList(), gch.current(), 
+							Utils.getTerminalWidth(), Prefetcher.DEFAULT_MAX_BYTES);
+					prefetcher.start();
+				}
 				cmdConcatInput= console.readLine().trim();
+				if(prefetcher != null){
+					prefetcher.stop();
+				}
 				if (cmdConcatInput.isEmpty()) {
 					// Empty input: User only issued <ENTER> 
 					if( interactiveInput.getInteractiveInputExitCode().equals(ExitCode.CLEAN)){
@@ -480,7 +494,8 @@ public class Main {
 		    }
 		}));
 		
-		ConsoleReader console= new ConsoleReader(); 
+		// Reading ahead stops as soon as a key is pressed
+		ConsoleReader console= new ConsoleReader(Prefetcher.cancelOnInput(new FileInputStream(FileDescriptor.in)), System.out); 
 
 		try {
 			// Autcomplete commands with length > x 
@@ -0,0 +1,370 @@
+package samTextViewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMFileHeader.SortOrder;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.ValidationStringency;
+import htsjdk.samtools.util.BlockCompressedFilePointerUtil;
+
+/** Iterate through the records of a bam file overlapping a region, as
+ * SamReader.query(chrom, from, to, false) would do, with the BGZF blocks inflated
+ * ahead on a pool of threads while the calling thread parses records.
+ *
+ * The file chunks to read are taken from the bam index. Compressed blocks are read
+ * sequentially from file and handed to the pool. Up to READ_AHEAD blocks per
+ * thread are in flight at any time so memory use is bounded irrespective of the
+ * size of the region.
+ * */
+class ParallelBgzfIterator implements SAMRecordIterator {
+
+	private static final int BGZF_HEADER_SIZE= 18;
+	private static final int BGZF_FOOTER_SIZE= 8;
+	/** Blocks waiting to be consumed, per thread */
+	private static final int READ_AHEAD= 4;
+
+	private static ExecutorService pool= null;
+	private static int poolThreads= 0;
+
+	/** An inflated block*/
+	private static class Block {
+		long address;
+		long nextAddress;
+		byte[] data;
+	}
+
+	private final RandomAccessFile file;
+	private final int refIndex;
+	private final int from;
+	private final int to;
+	private final List<Chunk> chunks;
+	private final int maxInFlight;
+	private final ExecutorService executor;
+	private final BlockStream blockStream= new BlockStream();
+	private final BAMRecordCodec codec;
+
+	private int chunkIdx= -1;
+	/** Address of the next compressed block to read from file*/
+	private long nextAddress;
+	private final ArrayDeque<Future<Block>> inFlight= new ArrayDeque<Future<Block>>();
+	private SAMRecord nextRecord= null;
+	private boolean done= false;
+
+	/*   C o n s t r u c t o r s   */
+
+	/** Records in chrom:from-to of the local, indexed bam file opened by samReader.
+	 * nThreads is the number of threads used to inflate blocks.
+	 * */
+	protected ParallelBgzfIterator(SamReader samReader, String bam, String chrom, int from, int to, int nThreads) throws IOException{
+		this.file= new RandomAccessFile(new File(bam), "r");
+		this.refIndex= samReader.getFileHeader().getSequenceIndex(chrom);
+		this.from= from;
+		this.to= to;
+		this.maxInFlight= READ_AHEAD * nThreads;
+		this.executor= getPool(nThreads);
+		this.codec= new BAMRecordCodec(samReader.getFileHeader());
+		this.codec.setInputStream(this.blockStream, bam);
+		BAMFileSpan span= this.refIndex < 0 ? null : samReader.indexing().getIndex().getSpanOverlapping(this.refIndex, from, to);
+		this.chunks= span == null ? new BAMFileSpan().getChunks() : span.getChunks();
+		this.nextChunk();
+	}
+
+	/** True if records can be read this way from file, i.e. a local and indexed bam.
+	 * */
+	protected static boolean canRead(SamReader samReader, String bam){
+		return samReader.type() == SamReader.Type.BAM_TYPE && samReader.hasIndex() && new File(bam).isFile();
+	}
+
+	/*   M e t h o d s   */
+
+	@Override
+	public boolean hasNext() {
+		if(this.nextRecord == null && ! this.done){
+			this.nextRecord= this.advance();
+		}
+		return this.nextRecord != null;
+	}
+
+	@Override
+	public SAMRecord next() {
+		if( ! this.hasNext()){
+			throw new java.util.NoSuchElementException();
+		}
+		SAMRecord rec= this.nextRecord;
+		this.nextRecord= null;
+		return rec;
+	}
+
+	/** Next record overlapping the region or null if there are no more
+	 * */
+	private SAMRecord advance(){
+		try{
+			while(this.chunkIdx < this.chunks.size()){
+				if(BlockCompressedFilePointerUtil.compare(this.blockStream.getFilePointer(), this.chunks.get(this.chunkIdx).getChunkEnd()) >= 0){
+					this.nextChunk();
+					continue;
+				}
+				SAMRecord rec= this.codec.decode();
+				if(rec == null){
+					break;
+				}
+				rec.setValidationStringency(ValidationStringency.SILENT);
+				int start= rec.getAlignmentStart();
+				int end= rec.getReadUnmappedFlag() && start != 0 ? start : rec.getAlignmentEnd();
+				if(rec.getReferenceIndex() > this.refIndex || start > this.to){
+					break; // Past the region
+				}
+				if(rec.getReferenceIndex() < this.refIndex || end < this.from){
+					continue;
+				}
+				return rec;
+			}
+		} catch(IOException e){
+			throw new SAMException(e);
+		}
+		this.close();
+		return null;
+	}
+
+	/** Move to the start of the next chunk, reusing the blocks already read if the
+	 * next chunk starts where the current one ends.
+	 * */
+	private void nextChunk() throws IOException{
+		this.chunkIdx++;
+		if(this.chunkIdx >= this.chunks.size()){
+			return;
+		}
+		long start= this.chunks.get(this.chunkIdx).getChunkStart();
+		long startBlock= BlockCompressedFilePointerUtil.getBlockAddress(start);
+		if(this.blockStream.current != null &&
+				BlockCompressedFilePointerUtil.compare(this.blockStream.getFilePointer(), start) <= 0){
+			if(startBlock == this.blockStream.current.nextAddress){
+				this.blockStream.loadNext(); // Next block is already in flight
+			}
+			if(startBlock == this.blockStream.current.address){
+				this.blockStream.offset= BlockCompressedFilePointerUtil.getBlockOffset(start);
+				return;
+			}
+		}
+		this.cancelInFlight();
+		this.nextAddress= startBlock;
+		this.blockStream.current= null;
+		this.blockStream.loadNext();
+		this.blockStream.offset= BlockCompressedFilePointerUtil.getBlockOffset(start);
+	}
+
+	/** Read compressed blocks from file and submit them for inflation until
+	 * the read ahead is full. Blocks past the end of the current chunk are read
+	 * only when needed since the chunk might end there.
+	 * */
+	private void fillInFlight() throws IOException{
+		long chunkEndBlock= BlockCompressedFilePointerUtil.getBlockAddress(this.chunks.get(this.chunkIdx).getChunkEnd());
+		while(this.inFlight.size() < this.maxInFlight && this.nextAddress < this.file.length() &&
+				(this.inFlight.isEmpty() || this.nextAddress <= chunkEndBlock)){
+			final long address= this.nextAddress;
+			final byte[] compressed= this.readCompressedBlock(address);
+			this.nextAddress += compressed.length;
+			this.inFlight.add(this.executor.submit(new Callable<Block>(){
+				@Override
+				public Block call() throws IOException {
+					Block block= new Block();
+					block.address= address;
+					block.nextAddress= address + compressed.length;
+					block.data= inflate(compressed);
+					return block;
+				}
+			}));
+		}
+	}
+
+	private byte[] readCompressedBlock(long address) throws IOException{
+		byte[] header= new byte[BGZF_HEADER_SIZE];
+		this.file.seek(address);
+		this.file.readFully(header);
+		// Block size is in the BC subfield of the extra field.
+		int xlen= unpackShort(header, 10);
+		int blockSize= -1;
+		byte[] extra= new byte[xlen];
+		System.arraycopy(header, 12, extra, 0, Math.min(xlen, BGZF_HEADER_SIZE - 12));
+		if(xlen > BGZF_HEADER_SIZE - 12){
+			this.file.readFully(extra, BGZF_HEADER_SIZE - 12, xlen - (BGZF_HEADER_SIZE - 12));
+		}
+		for(int i= 0; i + 4 <= xlen; i += 4 + unpackShort(extra, i + 2)){
+			if(extra[i] == 'B' && extra[i + 1] == 'C'){
+				blockSize= unpackShort(extra, i + 4) + 1;
+				break;
+			}
+		}
+		if(blockSize < 0){
+			throw new IOException("Invalid BGZF block at " + address);
+		}
+		byte[] compressed= new byte[blockSize];
+		this.file.seek(address);
+		this.file.readFully(compressed);
+		return compressed;
+	}
+
+	private static byte[] inflate(byte[] compressed) throws IOException{
+		int xlen= unpackShort(compressed, 10);
+		int dataStart= 12 + xlen;
+		int uncompressedSize= unpackInt(compressed, compressed.length - 4);
+		byte[] data= new byte[uncompressedSize];
+		Inflater inflater= new Inflater(true);
+		try{
+			inflater.setInput(compressed, dataStart, compressed.length - dataStart - BGZF_FOOTER_SIZE);
+			int n= 0;
+			while(n < uncompressedSize){
+				int inflated= inflater.inflate(data, n, uncompressedSize - n);
+				if(inflated == 0 && (inflater.finished() || inflater.needsInput())){
+					throw new IOException("Truncated BGZF block");
+				}
+				n += inflated;
+			}
+		} catch (DataFormatException e) {
+			throw new IOException(e);
+		} finally {
+			inflater.end();
+		}
+		return data;
+	}
+
+	private static int unpackShort(byte[] b, int off){
+		return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8);
+	}
+
+	private static int unpackInt(byte[] b, int off){
+		return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) | ((b[off + 2] & 0xFF) << 16) | ((b[off + 3] & 0xFF) << 24);
+	}
+
+	private void cancelInFlight(){
+		for(Future<Block> f : this.inFlight){
+			f.cancel(false);
+		}
+		this.inFlight.clear();
+	}
+
+	@Override
+	public void close() {
+		this.done= true;
+		this.cancelInFlight();
+		try {
+			this.file.close();
+		} catch (IOException e) {
+			// Nothing to do
+		}
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public SAMRecordIterator assertSorted(SortOrder sortOrder) {
+		return this;
+	}
+
+	private static synchronized ExecutorService getPool(int nThreads){
+		if(pool == null || poolThreads != nThreads){
+			if(pool != null){
+				pool.shutdown();
+			}
+			pool= Executors.newFixedThreadPool(nThreads, new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t= new Thread(r, "bgzf-inflater");
+					t.setDaemon(true); // Don't prevent exit
+					return t;
+				}
+			});
+			poolThreads= nThreads;
+		}
+		return pool;
+	}
+
+	/** Uncompressed bytes of the consecutive blocks, in file order.
+	 * */
+	private class BlockStream extends InputStream {
+
+		Block current= null;
+		int offset= 0;
+
+		/** Replace current with the next inflated block. Return false at end of file. */
+		private boolean loadNext() throws IOException{
+			do {
+				fillInFlight();
+				if(inFlight.isEmpty()){
+					return false;
+				}
+				try {
+					this.current= inFlight.poll().get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException(e);
+				} catch (ExecutionException e) {
+					throw new IOException(e.getCause());
+				}
+				this.offset= 0;
+			} while(this.current.data.length == 0); // Skip empty blocks, e.g. EOF marker
+			return true;
+		}
+
+		/** Virtual file pointer of the next byte to be read, as in BlockCompressedInputStream
+		 * */
+		long getFilePointer(){
+			if(this.current == null){
+				return nextAddress << 16;
+			}
+			if(this.offset == this.current.data.length){
+				return this.current.nextAddress << 16;
+			}
+			return (this.current.address << 16) | this.offset;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] b= new byte[1];
+			return this.read(b, 0, 1) == -1 ? -1 : (b[0] & 0xFF);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(len == 0){
+				return 0;
+			}
+			if(this.current == null || this.offset == this.current.data.length){
+				if( ! this.loadNext()){
+					return -1;
+				}
+			}
+			int n= Math.min(len, this.current.data.length - this.offset);
+			System.arraycopy(this.current.data, this.offset, b, off, n);
+			this.offset += n;
+			return n;
+		}
+
+		@Override
+		public int available(){
+			return this.current == null ? 0 : this.current.data.length - this.offset;
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package samTextViewer;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import coloring.Config;
+import coloring.ConfigKey;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+
+/** Long lived SamReaders, one per work filename. Readers are opened on first request
+ * and kept open, together with their index, across navigation so that moving
+ * around the genome doesn't re-open files and re-load indexes.
+ *
+ * Readers obtained from the pool must not be closed by the caller. Close instead
+ * the iterators obtained from them. Use close(workFilename) when the file is no longer
+ * needed, e.g. after dropping its tracks.
+ *
+ * Threads reading the same file at the same time, each with its own iterator, borrow
+ * spare readers instead. These are returned with release() and kept for the next
+ * borrower until the file is closed.
+ * */
+public class SamReaderPool {
+
+	private static final Map<String, SamReader> readers= new LinkedHashMap<String, SamReader>();
+	/** Spare readers not currently borrowed, by work filename*/
+	private static final Map<String, List<SamReader>> spares= new LinkedHashMap<String, List<SamReader>>();
+
+	private SamReaderPool(){
+	}
+
+	/** Return the reader for workFilename, opening it if not already open.
+	 * */
+	public static synchronized SamReader get(String workFilename) throws MalformedURLException{
+		SamReader samReader= readers.get(workFilename);
+		if(samReader == null){
+			samReader= Utils.getSamReader(workFilename);
+			readers.put(workFilename, samReader);
+		}
+		return samReader;
+	}
+
+	/** Iterator over the records in chrom:from-to, as SamReader.query(chrom, from, to, false).
+	 * If configuration key bgzf_threads is above zero and workFilename is a local indexed bam,
+	 * blocks are inflated ahead on that many threads. The iterator must be closed by the caller.
+	 * */
+	public static SAMRecordIterator query(String workFilename, String chrom, int from, int to) throws IOException{
+		SamReader samReader= get(workFilename);
+		int nThreads= getBgzfThreads();
+		if(nThreads > 0 && ParallelBgzfIterator.canRead(samReader, workFilename)){
+			return new ParallelBgzfIterator(samReader, workFilename, chrom, from, to, nThreads);
+		}
+		return samReader.query(chrom, from, to, false);
+	}
+
+	/** Number of threads for inflating bam blocks as set in config. 0 if not valid.*/
+	private static int getBgzfThreads(){
+		try{
+			return Math.max(0, Integer.parseInt(Config.get(ConfigKey.bgzf_threads)));
+		} catch(NumberFormatException e){
+			return 0;
+		}
+	}
+
+	/** Return a reader for workFilename for the exclusive use of the caller, opening one if
+	 * no spare reader is available. Give it back with release(), not close.
+	 * */
+	public static synchronized SamReader borrow(String workFilename) throws MalformedURLException{
+		List<SamReader> idle= spares.get(workFilename);
+		if(idle == null){
+			idle= new ArrayList<SamReader>();
+			spares.put(workFilename, idle);
+		}
+		if( ! idle.isEmpty()){
+			return idle.remove(idle.size() - 1);
+		}
+		return Utils.getSamReader(workFilename);
+	}
+
+	/** Give back a reader obtained from borrow(). The reader is closed if workFilename has
+	 * been closed in the meantime.
+	 * */
+	public static synchronized void release(String workFilename, SamReader samReader) throws IOException{
+		List<SamReader> idle= spares.get(workFilename);
+		if(idle == null){
+			samReader.close();
+		} else {
+			idle.add(samReader);
+		}
+	}
+
+	/** Close and forget the readers for workFilename, if any.
+	 * */
+	public static synchronized void close(String workFilename) throws IOException{
+		SamReader samReader= readers.remove(workFilename);
+		if(samReader != null){
+			samReader.close();
+		}
+		List<SamReader> idle= spares.remove(workFilename);
+		if(idle != null){
+			for(SamReader x : idle){
+				x.close();
+			}
+		}
+	}
+
+	/** Close all the readers whose filename is not in keep.
+	 * */
+	public static synchronized void retainOnly(List<String> keep) throws IOException{
+		for(String workFilename : getOpenFilenames()){
+			if( ! keep.contains(workFilename)){
+				close(workFilename);
+			}
+		}
+	}
+
+	public static synchronized void closeAll() throws IOException{
+		for(String workFilename : getOpenFilenames()){
+			close(workFilename);
+		}
+	}
+
+	/** Filenames with a reader currently open, in order of opening.
+	 * */
+	public static synchronized List<String> getOpenFilenames(){
+		Set<String> open= new LinkedHashSet<String>(readers.keySet());
+		open.addAll(spares.keySet());
+		return new ArrayList<String>(open);
+	}
+}
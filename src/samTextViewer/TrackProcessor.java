@@ -4,15 +4,25 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.commons.lang3.StringUtils;
 
 import com.google.common.base.Joiner;
-import com.google.common.base.Splitter;
 import com.google.common.base.Stopwatch;
 import com.itextpdf.text.DocumentException;
 
@@ -23,7 +33,9 @@ import exceptions.InvalidColourException;
 import exceptions.InvalidCommandLineException;
 import exceptions.InvalidGenomicCoordsException;
 import exceptions.InvalidRecordException;
+import tracks.Filter;
 import tracks.Track;
+import tracks.TrackPileup;
 import tracks.TrackSet;
 
 /** Process a TrackSet given the necessary elements
@@ -41,6 +53,14 @@ public class TrackProcessor {
 	Stopwatch stopWatch= Stopwatch.createUnstarted();
 	private Boolean showMem;
 	private Boolean showTime;
+	/** Tracks updated at the same time*/
+	private static final int N_UPDATE_THREADS= Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors()));
+	private static ExecutorService updatePool= null;
+	private boolean diffRedraw= false;
+	/** Last frame drawn in diff mode and terminal size at that time*/
+	private FrameWriter.Screen screen= null;
+	private int screenWidth= -1;
+	private int screenHeight= -1;
 	
 	/* C O N S T R U C T O R S */
 	
@@ -57,30 +77,44 @@ public class TrackProcessor {
 
 		final GenomicCoords currentGC= this.genomicCoordsHistory.current();
 
-		StringBuilder outputString= new StringBuilder();
+		// Not closed, only flushed at the end of the frame 
+		Writer stdout= new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+		FrameWriter outputString= new FrameWriter(stdout, this.getWindowSize());
+		if(this.snapshotFile != null){
+			outputString.keepFrame();
+		}
+		FrameWriter.Screen previous= this.screen;
+		this.screen= null; // Until this frame is drawn
+		if(this.diffRedraw){
+			int width= Utils.getTerminalWidth();
+			int height= Utils.getTerminalHeight();
+			if(width != this.screenWidth || height != this.screenHeight){
+				// Terminal resized
+				previous= null;
+				this.screenWidth= width;
+				this.screenHeight= height;
+			}
+			outputString.diffAgainst(previous, height);
+		}
 
-		currentGC.getChromIdeogram(20, this.noFormat);
-		
-		if(currentGC.getChromIdeogram(20, this.noFormat) != null){
-			outputString.append(currentGC.getChromIdeogram(20, this.noFormat) + "\n");
-		}			
+		String ideogram= currentGC.getChromIdeogram(20, this.noFormat);
 		
 		// Update tracks to new genomic coords
-		for(Track track : trackSet.getTrackList()){
-			if( ! track.getGc().equalCoordsAndWindowSize(currentGC) && track.getyMaxLines() > 0 && !track.isHideTrack()){
-				track.setGc(currentGC);
-			}			
-		}
+		this.updateTracks(currentGC);
 		// Set new y limits as required. This step has to come after the positioning to new coordinates because
 		// we may need to autoscale to global min or max.
 		this.getTrackSet().setAutoYLimits();
 
+		if(ideogram != null){
+			outputString.append(ideogram).append('\n');
+		}			
+		
 		// Visualise as required
 		for(Track track : trackSet.getTrackList()){
 			
 			track.setNoFormat(this.noFormat);
 			if(track.getyMaxLines() > 0 && !track.isHideTrack()){
-				outputString.append(track.concatTitleAndTrack() + "\n");
+				outputString.append(track.concatTitleAndTrack()).append('\n');
 				// outputString.append(track.getPrintableConsensusSequence());
 				outputString.append(track.printLines());
 			}
@@ -90,10 +124,10 @@ public class TrackProcessor {
 		// ------------------
 		outputString.append(currentGC.printableRefSeq(noFormat));
 		if(this.isShowGruler()){
-			outputString.append(currentGC.printableGenomicRuler(10, noFormat) + "\n");
+			outputString.append(currentGC.printableGenomicRuler(10, noFormat)).append('\n');
 		}
 		if(this.isShowCruler()){
-			outputString.append(currentGC.printablePercentRuler(10, noFormat) + "\n");
+			outputString.append(currentGC.printablePercentRuler(10, noFormat)).append('\n');
 		}
 		
 		// Position, memory, etc
@@ -101,25 +135,25 @@ public class TrackProcessor {
 		String footer= this.getFooter(currentGC);
 		if(!noFormat){
 			outputString.append("\033[48;5;");
-			outputString.append(Config.get256Color(ConfigKey.background));
+			outputString.append(Integer.toString(Config.get256Color(ConfigKey.background)));
 			outputString.append(";38;5;");
-			outputString.append(Config.get256Color(ConfigKey.footer));
+			outputString.append(Integer.toString(Config.get256Color(ConfigKey.footer)));
 			outputString.append("m");
 			outputString.append(footer);
 			outputString.append("\033[38;5;");
-			outputString.append(Config.get256Color(ConfigKey.foreground));
+			outputString.append(Integer.toString(Config.get256Color(ConfigKey.foreground)));
 			outputString.append("m");
 		} else {
 			outputString.append(footer);
 		}
 
-		String printable= this.fillUpLines(outputString.toString());
-		
 		// Print to screen
-		System.out.println(printable);
+		outputString.close();
+		this.screen= outputString.getScreen();
 		
 		// Optionally save to file
 		// -----------------------
+		String printable= outputString.getFrame();
 		if(this.snapshotFile != null && this.snapshotFile.endsWith(".pdf")){
 			(new Pdf(printable)).convert(new File(this.snapshotFile), 10, this.appendToSnapshotFile);
 		
@@ -137,30 +171,124 @@ public class TrackProcessor {
 		this.stopWatch.reset();
 	}
 	
-	/** String screenshot is the string almost ready to be printed to screen or file.
-	 * What is missing is to fill up lines with whitespaces until the end of the screen so
-	 * that terminals like tmux do not show lines of mixed colours. 
-	 * @throws IOException 
-	 * @throws InvalidGenomicCoordsException 
+	/** Move the visible tracks to currentGC. Tracks are updated concurrently, except 
+	 * that tracks reading the same file are updated one after the other by the same 
+	 * worker since they share the file reader and the decoded alignments. Groups with 
+	 * a track with an awk filter are updated on this thread since awk redirects System.out. 
+	 * 
+	 * Returns when all tracks are done. Errors are reported for each track and the
+	 * first one, in track order, is thrown.
 	 * */
-	private String fillUpLines(String screenshot) throws InvalidGenomicCoordsException, IOException{
-		StringBuilder full= new StringBuilder();
-		Iterator<String> iter = Splitter.on("\n").split(screenshot).iterator();
-		int screenSize= this.getWindowSize();
+	private void updateTracks(final GenomicCoords currentGC) throws IOException, InvalidGenomicCoordsException, InvalidRecordException, ClassNotFoundException, SQLException{
+
+		// Group tracks by file, keeping track order
+		Map<Object, List<Track>> groups= new LinkedHashMap<Object, List<Track>>();
+		List<Track> onThisThread= new ArrayList<Track>();
+		for(Track track : trackSet.getTrackList()){
+			if(track.getGc().equalCoordsAndWindowSize(currentGC) || track.getyMaxLines() <= 0 || track.isHideTrack()){
+				continue;
+			}
+			Object key= track.getWorkFilename() != null ? track.getWorkFilename() : track;
+			if( ! groups.containsKey(key)){
+				groups.put(key, new ArrayList<Track>());
+			}
+			groups.get(key).add(track);
+		}
+		// Move whole groups, not single tracks, so that tracks of the same file stay together
+		Iterator<List<Track>> iter= groups.values().iterator();
 		while(iter.hasNext()){
-			String line= iter.next();
-			int npad= screenSize - Utils.stripAnsiCodes(line).length();
-			if(npad < 0){
-				npad= 0; // Nothing to be done.
+			List<Track> group= iter.next();
+			for(Track track : group){
+				if(track.getAwk() != null && ! track.getAwk().equals(Filter.DEFAULT_AWK.getValue())){
+					onThisThread.addAll(group);
+					iter.remove();
+					break;
+				}
 			}
-			String filler= StringUtils.repeat(' ', npad);
-			full.append(line);
-			full.append(filler);
-			if(iter.hasNext()){
-				full.append("\n");
+		}
+		if(groups.size() == 1){
+			// Nothing to run concurrently with
+			onThisThread.addAll(groups.values().iterator().next());
+			groups.clear();
+		}
+		
+		List<Future<Map<Track, Throwable>>> futures= new ArrayList<Future<Map<Track, Throwable>>>();
+		for(final List<Track> group : groups.values()){
+			futures.add(getUpdatePool().submit(new Callable<Map<Track, Throwable>>(){
+				@Override
+				public Map<Track, Throwable> call() {
+					return updateGroup(group, currentGC);
+				}
+			}));
+		}
+		Map<Track, Throwable> errors= updateGroup(onThisThread, currentGC);
+		int i= 0;
+		for(List<Track> group : groups.values()){
+			try {
+				errors.putAll(futures.get(i).get());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				for(Track track : group){
+					errors.put(track, e);
+				}
+			} catch (ExecutionException e) {
+				for(Track track : group){
+					errors.put(track, e.getCause());
+				}
 			}
+			i++;
+		}
+		if(errors.isEmpty()){
+			return;
 		}
-		return full.toString();
+		
+		// Report errors in track order and throw the first one
+		Throwable first= null;
+		for(Track track : trackSet.getTrackList()){
+			Throwable e= errors.get(track);
+			if(e == null){
+				continue;
+			}
+			System.err.println(Utils.padEndMultiLine("Error updating track " + track.getTrackTag() + ": " + e, this.getWindowSize()));
+			if(first == null){
+				first= e;
+			}
+		}
+		if(first instanceof IOException){ throw (IOException) first; }
+		if(first instanceof InvalidGenomicCoordsException){ throw (InvalidGenomicCoordsException) first; }
+		if(first instanceof InvalidRecordException){ throw (InvalidRecordException) first; }
+		if(first instanceof ClassNotFoundException){ throw (ClassNotFoundException) first; }
+		if(first instanceof SQLException){ throw (SQLException) first; }
+		if(first instanceof RuntimeException){ throw (RuntimeException) first; }
+		if(first instanceof Error){ throw (Error) first; }
+		throw new IOException(first);
+	}
+	
+	/** Update the tracks one after the other and return the error of each track that failed.*/
+	private static Map<Track, Throwable> updateGroup(List<Track> tracks, GenomicCoords currentGC){
+		Map<Track, Throwable> errors= new HashMap<Track, Throwable>();
+		for(Track track : tracks){
+			try{
+				track.setGc(currentGC);
+			} catch(Exception e){
+				errors.put(track, e);
+			}
+		}
+		return errors;
+	}
+
+	private static synchronized ExecutorService getUpdatePool(){
+		if(updatePool == null){
+			updatePool= Executors.newFixedThreadPool(N_UPDATE_THREADS, new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t= new Thread(r, "track-update");
+					t.setDaemon(true); // Don't prevent exit
+					return t;
+				}
+			});
+		}
+		return updatePool;
 	}
 	
 	private String getFooter(GenomicCoords currentGC) throws InvalidGenomicCoordsException, IOException {
@@ -190,6 +318,16 @@ public class TrackProcessor {
 	private String getMemoryStat() throws InvalidGenomicCoordsException, IOException{
 		float mem= (float) ((float)Runtime.getRuntime().totalMemory() / 1000000d);
 		String memStats= "Mem: " +  Math.round(mem * 10)/10 + " MB";
+		memStats += "; Open bam: " + SamReaderPool.getOpenFilenames().size();
+		long hits= 0;
+		long misses= 0;
+		for(Track track : this.getTrackSet().getTrackList()){
+			if(track instanceof TrackPileup){
+				hits += ((TrackPileup) track).getCacheHits();
+				misses += ((TrackPileup) track).getCacheMisses();
+			}
+		}
+		memStats += "; Pileup cache hit/miss: " + hits + "/" + misses;
 		return memStats;
 	}
 
@@ -267,6 +405,21 @@ public class TrackProcessor {
 		return this.showMem;
 	}
 	
+	/** If true, redraw only the lines that changed since the previous frame instead of 
+	 * clearing the screen and printing the whole frame.*/
+	public void setDiffRedraw(boolean diffRedraw) {
+		this.diffRedraw= diffRedraw;
+	}
+	public boolean isDiffRedraw() {
+		return this.diffRedraw;
+	}
+	
+	/** The next frame is printed in full. To be called when something else has been 
+	 * printed so that the screen no longer shows the last frame.*/
+	public void forceFullRedraw() {
+		this.screen= null;
+	}
+	
 	public void setShowTime(Boolean showTime) {
 		this.showTime= showTime;
 	}
@@ -97,6 +97,7 @@ import htsjdk.variant.vcf.VCFFileReader;
 import htsjdk.variant.vcf.VCFHeader;
 import htsjdk.variant.vcf.VCFHeaderLine;
 import htsjdk.variant.vcf.VCFHeaderVersion;
+import tracks.AwkProgram;
 import tracks.IntervalFeature;
 import tracks.Track;
 import tracks.TrackFormat;
@@ -171,7 +172,32 @@ public class Utils {
 		}
 		return readName;
 	}
-	
+
+	/** Hash of the template name of readName, as given by templateNameFromSamReadName,
+	 * mixed with seed. The name is hashed in place so nothing is allocated.
+	 * */
+	public static long templateNameHash(String readName, long seed){
+		int end= readName.indexOf(' ');
+		if(end < 0){
+			end= readName.length();
+		}
+		if(end >= 2 && readName.charAt(end - 2) == '/' && (readName.charAt(end - 1) == '1' || readName.charAt(end - 1) == '2')){
+			end -= 2;
+		}
+		// FNV-1a then the murmur3 finalizer to spread the bits
+		long h= 0xcbf29ce484222325L ^ seed;
+		for(int i= 0; i < end; i++){
+			h ^= readName.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
 	/** Returns true of the list of arguments argList contains the given flag
 	 * IMPORTANT SIDE EFFECT: If found, the argument flag is removed from the list. 
 	 * */
@@ -284,27 +310,13 @@ public class Utils {
 	
     public static long getAlignedReadCount(String bam) throws IOException{
 
-		/*  ------------------------------------------------------ */
-		/* This chunk prepares SamReader from local bam or URL bam */
-		UrlValidator urlValidator = new UrlValidator();
-		SamReaderFactory srf=SamReaderFactory.make();
-		srf.validationStringency(ValidationStringency.SILENT);
-		SamReader samReader;
-		if(urlValidator.isValid(bam)){
-			samReader = SamReaderFactory.makeDefault().open(
-					SamInputResource.of(new URL(bam)).index(new URL(bam + ".bai"))
-			);
-		} else {
-			samReader= srf.open(new File(bam));
-		}
-		/*  ------------------------------------------------------ */
+		SamReader samReader= SamReaderPool.get(bam);
 
 		List<SAMSequenceRecord> sequences = samReader.getFileHeader().getSequenceDictionary().getSequences();
 		long alnCount= 0;
 		for(SAMSequenceRecord x : sequences){
 			alnCount += samReader.indexing().getIndex().getMetaData(x.getSequenceIndex()).getAlignedRecordCount();
 		}
-		samReader.close();
 		return alnCount;
     }
 
@@ -1482,26 +1494,13 @@ public class Utils {
 	 * @param gc
 	 * @param filters List of filters to apply
 	 * @return
-	 * @throws MalformedURLException 
+	 * @throws IOException 
 	 */
-	public static long countReadsInWindow(String bam, GenomicCoords gc, List<SamRecordFilter> filters) throws MalformedURLException {
+	public static long countReadsInWindow(String bam, GenomicCoords gc, List<SamRecordFilter> filters) throws IOException {
 
-		/*  ------------------------------------------------------ */
-		/* This chunk prepares SamReader from local bam or URL bam */
-		UrlValidator urlValidator = new UrlValidator();
-		SamReaderFactory srf=SamReaderFactory.make();
-		srf.validationStringency(ValidationStringency.SILENT);
-		SamReader samReader;
-		if(urlValidator.isValid(bam)){
-			samReader = srf.open(SamInputResource.of(new URL(bam)).index(new URL(bam + ".bai")));
-		} else {
-			samReader= srf.open(new File(bam));
-		}
-		/*  ------------------------------------------------------ */
-		
 		long cnt= 0;
 		
-		Iterator<SAMRecord> sam= samReader.query(gc.getChrom(), gc.getFrom(), gc.getTo(), false);
+		SAMRecordIterator sam= SamReaderPool.query(bam, gc.getChrom(), gc.getFrom(), gc.getTo());
 		AggregateFilter aggregateFilter= new AggregateFilter(filters);
 		while(sam.hasNext()){
 			SAMRecord rec= sam.next();
@@ -1509,11 +1508,7 @@ public class Utils {
 				cnt++;
 			}
 		}
-		try {
-			samReader.close();
-		} catch (IOException e) {
-			e.printStackTrace();
-		}
+		sam.close();
 		return cnt;
 	}
 
@@ -1779,118 +1774,15 @@ public class Utils {
 	 * See tests for behaviour. 
 	 * */
 	public static Boolean passAwkFilter(String rawLine, String awkScript) throws IOException {
-		
-		awkScript= awkScript.trim();
-
-		if(awkScript.isEmpty()){
-			return true;
-		}
-		
-		// We need to separate the awk script from the arguments. The arguments could contain single quotes:
-		// -v var=foo '$1 == var && $2 == baz'
-		// For this, reverse the string and look for the first occurrence of "' " which corresponds to 
-		// the opening of the awk script.
-		int scriptStartsAt= awkScript.length() - new StringBuilder(awkScript).reverse().toString().indexOf("' ");
-		if(scriptStartsAt == awkScript.length() + 1){
-			scriptStartsAt= 1;
-		}
-		// Now add the functions to the script right at the start of the script, after the command args
-		awkScript= awkScript.substring(0, scriptStartsAt) + Track.awkFunc + awkScript.substring(scriptStartsAt);
-				
-		InputStream is= new ByteArrayInputStream(rawLine.getBytes(StandardCharsets.US_ASCII));
-		
-		String[] args= Utils.tokenize(awkScript, " ").toArray(new String[0]); 
-		
-		PrintStream stdout = System.out;
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		try{
-			PrintStream os= new PrintStream(baos);
-			new org.jawk.Main(args, is, os, System.err);
-		} catch(Exception e){
-			throw new IOException();
-		} finally{
-			System.setOut(stdout);
-			is.close();
-		}
-		String output = new String(baos.toByteArray(), StandardCharsets.UTF_8);
-		if(output.trim().isEmpty()){
-			return false;
-		} else if(output.trim().equals(rawLine.trim())){
-			return true;
-		} else {
-			// Awk output is not empty or equal to input line. Reset awk script and return null
-			// to signal this condition.
-			return null;
-		}
-		
+		return new AwkProgram(awkScript).pass(rawLine);
 	}
 
-	/** Stream the raw line through awk and return true if the output of awk is the same as the input
-	 * line. If awk returns empty output then the line didn't pass the awk filter.
-	 * If output is not empty and not equal to input, return null.
-	 * See tests for behaviour. 
+	/** Stream all the lines through a single run of awk. Element i of the returned array is true
+	 * if line i is in the output of awk. Return null if the output has lines not in input.
+	 * To filter many batches with the same script, prepare it once with AwkProgram. 
 	 * */
 	public static boolean[] passAwkFilter(String[] rawLines, String awkScript) throws IOException {
-		
-		boolean[] results= new boolean[rawLines.length];
-
-		awkScript= awkScript.trim();
-
-		if(awkScript.isEmpty()){
-			for(int i= 0; i < rawLines.length; i++){
-				results[i]= true;
-			}
-			return results;
-		}
-		
-		// We need to separate the awk script from the arguments. The arguments could contain single quotes:
-		// -v var=foo '$1 == var && $2 == baz'
-		// For this, reverse the string and look for the first occurrence of "' " which corresponds to 
-		// the opening of the awk script.
-		int scriptStartsAt= awkScript.length() - new StringBuilder(awkScript).reverse().toString().indexOf("' ");
-		if(scriptStartsAt == awkScript.length() + 1){
-			scriptStartsAt= 1;
-		}
-		// Now add the functions to the script right at the start of the script, after the command args
-		awkScript= awkScript.substring(0, scriptStartsAt) + Track.awkFunc + awkScript.substring(scriptStartsAt);
-		
-		ByteArrayOutputStream baosIn = new ByteArrayOutputStream();
-		for (String line : rawLines) {
-			baosIn.write((line+"\n").getBytes());
-		}
-		InputStream is= new ByteArrayInputStream(baosIn.toByteArray());
-		
-		String[] args= Utils.tokenize(awkScript, " ").toArray(new String[0]); 
-		
-		PrintStream stdout = System.out;
-		ByteArrayOutputStream baos = new ByteArrayOutputStream();
-		try{
-			PrintStream os= new PrintStream(baos);
-			new org.jawk.Main(args, is, os, System.err);
-		} catch(Exception e){
-			throw new IOException();
-		} finally{
-			System.setOut(stdout);
-			is.close();
-		}
-		
-		String output[] = new String(baos.toByteArray(), StandardCharsets.US_ASCII).split("\n");
-		int j= 0;
-		for(int i=0; i < rawLines.length; i++){
-			String inLine= rawLines[i];
-			if(output.length > j){
-				String outLine= output[j];				
-				if(inLine.equals(outLine)){
-					results[i]= true;
-					j++;
-				} else {
-					results[i]= false;
-				}
-			} else {
-				results[i]= false;
-			}
-		}
-		return results;
+		return new AwkProgram(awkScript).pass(rawLines);
 	}
 
 	
@@ -2008,6 +1900,14 @@ public class Utils {
 		return terminalWidth;
 	}
 
+	public static int getTerminalHeight() throws IOException {
+		int terminalHeight= jline.TerminalFactory.get().getHeight(); 
+		if(terminalHeight <= 0){
+			terminalHeight= 24;
+		}
+		return terminalHeight;
+	}
+
 	/**Get VCFHeader from the given source which could be URL or local file.*/
 	public static VCFHeader getVCFHeader(String source) throws MalformedURLException{
 		VCFHeader vcfHeader;
@@ -0,0 +1,331 @@
+package sortBgzipIndex;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import samTextViewer.Utils;
+import utils.IOUtils;
+
+/** Sort tab separated lines by chromosome, as string, then by start and end position,
+ * as integers. The order is the same as the sqlite <code>ORDER BY contig, pos, posEnd</code>
+ * used before, with ties kept in input order.
+ *
+ * The sort key is parsed once per line, when the line is added. Lines are collected in
+ * chunks of about chunkBytes. Full chunks are sorted on a thread pool and written to
+ * temporary run files. Sorted lines are then returned by merging the runs, so that only
+ * one chunk per thread needs to be in memory. Input fitting in one chunk is sorted in
+ * memory without writing anything.
+ * */
+public class ExternalSort {
+
+	public static final long DEFAULT_CHUNK_BYTES= 32 * 1024 * 1024;
+
+	private final int chromCol;
+	private final int posCol;
+	private final int endCol;
+	private final long chunkBytes;
+	private final int nThreads;
+
+	private List<Line> chunk= new ArrayList<Line>();
+	private long chunkSize= 0;
+	private long nLines= 0;
+	private ExecutorService pool= null;
+	/** Run files being written, in input order*/
+	private final List<Future<File>> runs= new ArrayList<Future<File>>();
+	private boolean sorted= false;
+	/** To share one string per chromosome between lines*/
+	private final Map<String, String> chroms= new HashMap<String, String>();
+
+	/*   C o n s t r u c t o r s   */
+
+	/** Sort on the given 0-based columns. endCol is -1 to sort on chromosome and
+	 * start only.*/
+	public ExternalSort(int chromCol, int posCol, int endCol){
+		this(chromCol, posCol, endCol, DEFAULT_CHUNK_BYTES, Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())));
+	}
+
+	protected ExternalSort(int chromCol, int posCol, int endCol, long chunkBytes, int nThreads){
+		this.chromCol= chromCol;
+		this.posCol= posCol;
+		this.endCol= endCol;
+		this.chunkBytes= chunkBytes;
+		this.nThreads= nThreads;
+	}
+
+	/*   M e t h o d s   */
+
+	/** Add a line to be sorted. Throw NumberFormatException or IndexOutOfBoundsException
+	 * if the line has not valid sort columns. Then the line is not added.
+	 * */
+	public void add(String line) throws IOException{
+		if(this.sorted){
+			throw new IllegalStateException("Lines cannot be added after sorting");
+		}
+		String[] tabs= line.split("\t", Math.max(this.posCol, this.endCol) + 2);
+		int pos= Integer.parseInt(tabs[this.posCol]);
+		int end= this.endCol < 0 ? 0 : Integer.parseInt(tabs[this.endCol]);
+		String chrom= this.chroms.get(tabs[this.chromCol]);
+		if(chrom == null){
+			chrom= tabs[this.chromCol];
+			this.chroms.put(chrom, chrom);
+		}
+		this.chunk.add(new Line(chrom, pos, end, this.nLines, line));
+		this.nLines++;
+		this.chunkSize += 2 * line.length() + 64; // Rough size in memory
+		if(this.chunkSize >= this.chunkBytes){
+			this.spill();
+		}
+	}
+
+	/** Sort the current chunk and write it to a run file in the background. Wait if all
+	 * threads are busy so that at most one chunk per thread is held in memory.
+	 * */
+	private void spill() throws IOException{
+		if(this.pool == null){
+			this.pool= Executors.newFixedThreadPool(this.nThreads, new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t= new Thread(r, "sort");
+					t.setDaemon(true); // Don't prevent exit
+					return t;
+				}
+			});
+		}
+		if(this.runs.size() >= this.nThreads){
+			waitFor(this.runs.get(this.runs.size() - this.nThreads));
+		}
+		final List<Line> toSort= this.chunk;
+		this.runs.add(this.pool.submit(new Callable<File>() {
+			@Override
+			public File call() throws IOException {
+				return writeRun(sortChunk(toSort));
+			}
+		}));
+		this.chunk= new ArrayList<Line>();
+		this.chunkSize= 0;
+	}
+
+	private static Line[] sortChunk(List<Line> lines){
+		Line[] x= lines.toArray(new Line[lines.size()]);
+		Arrays.sort(x); // Stable, with ties broken by input order anyway
+		return x;
+	}
+
+	private static File writeRun(Line[] lines) throws IOException{
+		File run= Utils.createTempFile(".asciigenome.", ".sort.run.tmp");
+		run.deleteOnExit();
+		DataOutputStream os= new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1 << 16));
+		try{
+			for(Line x : lines){
+				IOUtils.writeString(os, x.chrom);
+				os.writeInt(x.pos);
+				os.writeInt(x.end);
+				os.writeLong(x.idx);
+				IOUtils.writeString(os, x.line);
+			}
+		} finally {
+			os.close();
+		}
+		return run;
+	}
+
+	private static File waitFor(Future<File> run) throws IOException{
+		try {
+			return run.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException){
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/** Return the lines added so far in sorted order. The iterator must be closed to
+	 * delete the run files, if any.
+	 * */
+	public SortedLines sorted() throws IOException{
+		this.sorted= true;
+		if(this.runs.isEmpty()){
+			return new SortedLines(sortChunk(this.chunk));
+		}
+		if( ! this.chunk.isEmpty()){
+			this.spill();
+		}
+		List<File> files= new ArrayList<File>();
+		try{
+			for(Future<File> run : this.runs){
+				files.add(waitFor(run));
+			}
+		} finally {
+			this.pool.shutdown();
+		}
+		this.chunk= null;
+		return new SortedLines(files);
+	}
+
+	/*   S o r t e d   o u t p u t   */
+
+	/** Sorted lines, either from a sorted chunk in memory or merged from run files*/
+	public static class SortedLines implements Iterator<String> {
+
+		private final Line[] inMemory;
+		private int next= 0;
+		private final List<RunReader> readers= new ArrayList<RunReader>();
+		private final PriorityQueue<RunReader> queue;
+
+		private SortedLines(Line[] inMemory){
+			this.inMemory= inMemory;
+			this.queue= null;
+		}
+
+		private SortedLines(List<File> files) throws IOException{
+			this.inMemory= null;
+			this.queue= new PriorityQueue<RunReader>(Math.max(1, files.size()));
+			for(File f : files){
+				RunReader r= new RunReader(f);
+				this.readers.add(r);
+				if(r.head != null){
+					this.queue.add(r);
+				}
+			}
+		}
+
+		@Override
+		public boolean hasNext() {
+			if(this.inMemory != null){
+				return this.next < this.inMemory.length;
+			}
+			return ! this.queue.isEmpty();
+		}
+
+		@Override
+		public String next() {
+			if( ! this.hasNext()){
+				throw new NoSuchElementException();
+			}
+			if(this.inMemory != null){
+				String line= this.inMemory[this.next].line;
+				this.inMemory[this.next]= null;
+				this.next++;
+				return line;
+			}
+			RunReader r= this.queue.poll();
+			String line= r.head.line;
+			try {
+				r.advance();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+			if(r.head != null){
+				this.queue.add(r);
+			}
+			return line;
+		}
+
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/** Close and delete the run files*/
+		public void close() throws IOException{
+			for(RunReader r : this.readers){
+				r.close();
+			}
+		}
+	}
+
+	/** Sequential reader of a run file, ordered by its current line*/
+	private static class RunReader implements Comparable<RunReader> {
+		private final File file;
+		private final DataInputStream in;
+		private Line head;
+
+		RunReader(File file) throws IOException{
+			this.file= file;
+			this.in= new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+			this.advance();
+		}
+
+		void advance() throws IOException{
+			String chrom;
+			try{
+				chrom= IOUtils.readString(this.in);
+			} catch(EOFException e){
+				this.head= null;
+				return;
+			}
+			int pos= this.in.readInt();
+			int end= this.in.readInt();
+			long idx= this.in.readLong();
+			this.head= new Line(chrom, pos, end, idx, IOUtils.readString(this.in));
+		}
+
+		void close() throws IOException{
+			this.in.close();
+			this.file.delete();
+		}
+
+		@Override
+		public int compareTo(RunReader o) {
+			return this.head.compareTo(o.head);
+		}
+	}
+
+	/** A line with its sort key*/
+	private static class Line implements Comparable<Line> {
+		final String chrom;
+		final int pos;
+		final int end;
+		/** Position in input, to keep ties in input order across runs*/
+		final long idx;
+		final String line;
+
+		Line(String chrom, int pos, int end, long idx, String line){
+			this.chrom= chrom;
+			this.pos= pos;
+			this.end= end;
+			this.idx= idx;
+			this.line= line;
+		}
+
+		@Override
+		public int compareTo(Line o) {
+			int c= this.chrom.compareTo(o.chrom);
+			if(c != 0){
+				return c;
+			}
+			if(this.pos != o.pos){
+				return this.pos < o.pos ? -1 : 1;
+			}
+			if(this.end != o.end){
+				return this.end < o.end ? -1 : 1;
+			}
+			return this.idx < o.idx ? -1 : (this.idx == o.idx ? 0 : 1);
+		}
+	}
+}
@@ -1,32 +1,28 @@
 package sortBgzipIndex;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 import com.google.common.base.Joiner;
+import com.google.common.collect.Iterators;
 
 import exceptions.InvalidRecordException;
 import htsjdk.samtools.util.BlockCompressedOutputStream;
 import htsjdk.samtools.util.CloserUtil;
-import htsjdk.tribble.TribbleException.MalformedFeatureFile;
+import htsjdk.tribble.TribbleException;
 import htsjdk.tribble.index.Index;
 import htsjdk.tribble.index.tabix.TabixFormat;
 import htsjdk.tribble.index.tabix.TabixIndexCreator;
 import htsjdk.tribble.readers.LineIterator;
+import htsjdk.tribble.readers.LineIteratorImpl;
+import htsjdk.tribble.readers.SynchronousLineReader;
 import htsjdk.tribble.util.TabixUtils;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFCodec;
-import htsjdk.variant.vcf.VCFFileReader;
 import htsjdk.variant.vcf.VCFHeader;
 import samTextViewer.Utils;
 import utils.BedLine;
@@ -35,16 +31,12 @@ import utils.GtfLine;
 
 public class MakeTabixIndex {
 
-	private File sqliteFile;
-	
 	/** Sort, block compress and index the input with format fmt to the given output file.
 	 * Input is either a local file, possibly compressed, or a URL.
 	 * @throws InvalidRecordException 
 	 * @throws IOException 
-	 * @throws SQLException 
-	 * @throws ClassNotFoundException 
 	 * */
-	public MakeTabixIndex(String intab, File bgzfOut, TabixFormat fmt) throws IOException, InvalidRecordException, ClassNotFoundException, SQLException{
+	public MakeTabixIndex(String intab, File bgzfOut, TabixFormat fmt) throws IOException, InvalidRecordException{
 		
 		File tmp = Utils.createTempFile(".asciigenome", "makeTabixIndex.tmp.gz");
 		File tmpTbi= new File(tmp.getAbsolutePath() + TabixUtils.STANDARD_INDEX_EXTENSION);
@@ -53,14 +45,22 @@ public class MakeTabixIndex {
 		
 		try{
 			// Try to block compress and create index assuming the file is sorted
-			blockCompressAndIndex(intab, tmp, fmt);
+			LineIterator lin= utils.IOUtils.openURIForLineIterator(intab);
+			try{
+				blockCompressAndIndex(lin, tmp, fmt);
+			} finally {
+				CloserUtil.close(lin);
+			}
 		} catch(Exception e){
-			// If intab is not sorted, sort it first.
-			File sorted= Utils.createTempFile(".asciigenome.", ".sorted.tmp");
-			sorted.deleteOnExit();
-			sortByChromThenPos(intab, sorted, fmt);
-			blockCompressAndIndex(sorted.getAbsolutePath(), tmp, fmt);
-			sorted.delete();
+			// If intab is not sorted, sort it first. Sorted lines go straight to 
+			// compression and indexing as they are merged.
+			List<String> header= new ArrayList<String>();
+			ExternalSort.SortedLines sorted= sortByChromThenPos(intab, header, fmt).sorted();
+			try{
+				blockCompressAndIndex(Iterators.concat(header.iterator(), sorted), tmp, fmt);
+			} finally {
+				sorted.close();
+			}
 		}
 		
 		// This renaming and the use of File tmp allows to block compress and index an inout file in place.
@@ -72,14 +72,12 @@ public class MakeTabixIndex {
 	}
 
 	/**
-	 * Block compress input file and create associated tabix index. 
+	 * Block compress the lines and create associated tabix index. 
 	 * @throws IOException 
 	 * @throws InvalidRecordException 
 	 * */
-	private void blockCompressAndIndex(String intab, File bgzfOut, TabixFormat fmt) throws IOException, InvalidRecordException {
+	private void blockCompressAndIndex(Iterator<String> lin, File bgzfOut, TabixFormat fmt) throws IOException, InvalidRecordException {
 				
-		LineIterator lin= utils.IOUtils.openURIForLineIterator(intab);
-
 		BlockCompressedOutputStream writer = new BlockCompressedOutputStream(bgzfOut);
 		long filePosition= writer.getFilePointer();
 			
@@ -87,22 +85,12 @@ public class MakeTabixIndex {
 		
 		boolean first= true;
 		
-		// This is relevant to vcf files only: Prepare header and codec
+		// This is relevant to vcf files only: Header and codec are prepared from the 
+		// header lines once the first record is found
 		// ------------------------------------------------------------
+		List<String> vcfHeaderLines= new ArrayList<String>();
 		VCFHeader vcfHeader= null;
 		VCFCodec vcfCodec= null;
-		if(fmt.equals(TabixFormat.VCF)){
-			
-			try{
-				VCFFileReader vcfr= new VCFFileReader(new File(intab), false);
-			    vcfHeader= vcfr.getFileHeader(); // new VCFHeader();
-			    vcfr.close();
-			} catch(MalformedFeatureFile e){
-				vcfHeader= new VCFHeader();
-			}
-			vcfCodec= new VCFCodec();
-			vcfCodec.setVCFHeader(vcfHeader, Utils.getVCFHeaderVersion(vcfHeader));
-		}
 		// ------------------------------------------------------------
 
 		int nWarnings= 10;
@@ -115,6 +103,9 @@ public class MakeTabixIndex {
 					continue;
 				}
 				if(line.startsWith("#")){
+					if(fmt.equals(TabixFormat.VCF)){
+						vcfHeaderLines.add(line);
+					}
 					writer.write((line + "\n").getBytes());
 					filePosition = writer.getFilePointer();
 					continue;
@@ -122,6 +113,11 @@ public class MakeTabixIndex {
 				if(line.startsWith("##FASTA")){
 					break;
 				}			
+				if(fmt.equals(TabixFormat.VCF) && vcfCodec == null){
+					vcfHeader= this.makeVcfHeader(vcfHeaderLines);
+					vcfCodec= new VCFCodec();
+					vcfCodec.setVCFHeader(vcfHeader, Utils.getVCFHeaderVersion(vcfHeader));
+				}
 				
 				if(first && ! fmt.equals(TabixFormat.VCF)){
 					String dummy= this.makeDummyLine(line, fmt);
@@ -157,7 +153,19 @@ public class MakeTabixIndex {
 		Index index = indexCreator.finalizeIndex(writer.getFilePointer());
 		index.writeBasedOnFeatureFile(bgzfOut);
 		writer.close();
-		CloserUtil.close(lin);
+	}
+
+	/** Parse the vcf header from its lines. Return an empty header if lines do not make a 
+	 * valid header, e.g. there is no header at all.
+	 * */
+	private VCFHeader makeVcfHeader(List<String> headerLines){
+		try{
+			String header= Joiner.on("\n").join(headerLines);
+			LineIterator lin= new LineIteratorImpl(new SynchronousLineReader(new StringReader(header)));
+			return (VCFHeader) new VCFCodec().readActualHeader(lin);
+		} catch(TribbleException e){
+			return new VCFHeader();
+		}
 	}
 
 	/** Set vcfHeader and vcfCodec to null if reading non-vcf line.
@@ -185,64 +193,55 @@ public class MakeTabixIndex {
 		}	
 	}
 	
-	/** Sort file by columns chrom (text) and pos (int). chromIdx and posIdx are 1-based  
-	 * indexes for the chrom and pos column. For bed use 1 and 2 respectively. For use GTF/GFF  1 and 4.
-	 * Comment lines, starting with #, are returned as they are. Reading stops if the line ##FASTA is found.
+	/** Read the file into a sorter by columns chrom (text), pos (int) and, except for vcf,
+	 * end (int). Comment lines, starting with #, are added to header as they are. Reading 
+	 * stops if the line ##FASTA is found. Lines without valid positions are skipped.
 	 * */
-	private void sortByChromThenPos(String unsorted, File sorted, TabixFormat fmt) throws SQLException, InvalidRecordException, IOException, ClassNotFoundException{
+	private ExternalSort sortByChromThenPos(String unsorted, List<String> header, TabixFormat fmt) throws InvalidRecordException, IOException{
 
-		int chromIdx= 1;
-		int posIdx= 2;
+		ExternalSort sorter;
 		if(fmt.equals(TabixFormat.BED)){
-			//
+			sorter= new ExternalSort(0, 1, 2);
 		} else if(fmt.equals(TabixFormat.GFF)){
-			posIdx= 4;
+			sorter= new ExternalSort(0, 3, 4);
 		} else if(fmt.equals(TabixFormat.VCF)){
-			posIdx= 2;
+			sorter= new ExternalSort(0, 1, -1);
 		} else {
 			System.err.println("Invalid format found");
 			throw new InvalidRecordException();
 		}
 		
-		Connection conn= this.createSQLiteDb("data");
-		PreparedStatement stmtInsert= conn.prepareStatement("INSERT INTO data (contig, pos, posEnd, line) VALUES (?, ?, ?, ?)");
-	
 		BufferedReader br= Utils.reader(unsorted);
-		BufferedWriter wr= new BufferedWriter(new FileWriter(sorted));
 		String line;
-		while((line = br.readLine()) != null){
-			if(line.trim().startsWith("##FASTA")){
-				break;
-			}
-			if(line.trim().startsWith("#")){
-				wr.write(line + "\n");
-				continue;
-			}
-			String[] tabs= line.split("\t"); 
-			stmtInsert.setString(1, tabs[chromIdx-1]);
-			stmtInsert.setInt(2, Integer.parseInt(tabs[posIdx-1]));
-			if(fmt.equals(TabixFormat.VCF)){
-				stmtInsert.setInt(3, 0);
-			} else {
-				stmtInsert.setInt(3, Integer.parseInt(tabs[posIdx]));
+		int nWarnings= 10;
+		try{
+			while((line = br.readLine()) != null){
+				if(line.trim().startsWith("##FASTA")){
+					break;
+				}
+				if(line.trim().startsWith("#")){
+					header.add(line);
+					continue;
+				}
+				if(line.trim().isEmpty() || line.startsWith("track ")){
+					continue;
+				}
+				try{
+					sorter.add(line);
+				} catch(NumberFormatException | IndexOutOfBoundsException e){
+					if(nWarnings >= 0){
+						System.err.println("Warning: Invalid position. Skipping:\n" + line);
+					}
+					if(nWarnings == 0){
+						System.err.println("Additional warnings will not be show.");
+					}
+					nWarnings--;
+				}
 			}
-			stmtInsert.setString(4, line.replaceAll("\n$", ""));
-			stmtInsert.executeUpdate();
+		} finally {
+			br.close();
 		}
-		stmtInsert.close();
-		br.close();
-
-		PreparedStatement stmtSelect= conn.prepareStatement("SELECT * FROM data ORDER BY contig, pos, posEnd");
-		
-		ResultSet rs= stmtSelect.executeQuery();
-		
-		while(rs.next()){
-			wr.write(rs.getString("line") + "\n");
-		}
-		conn.commit();
-		stmtSelect.close();
-		wr.close();
-		this.sqliteFile.delete();
+		return sorter;
 	}
 
 	/** Create a dummy line overcome the problem of first line ignored by tabix idnex creator.
@@ -276,41 +275,5 @@ public class MakeTabixIndex {
 		
 		return Joiner.on("\t").join(dummy);
 	}
-			
-	/** Create a tmp sqlite db and return the connection to it. 
-	 */
-	private Connection createSQLiteDb(String tablename) throws IOException {
-		this.sqliteFile= Utils.createTempFile(".asciigenome.", ".tmp.sqlite");
-		this.sqliteFile.deleteOnExit();
-	    
-	    try {
-			Class.forName("org.sqlite.JDBC");
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
-		}
-	    try {
-			Connection conn = DriverManager.getConnection("jdbc:sqlite:" + this.sqliteFile);
-	        Statement stmt = conn.createStatement();
-	        String sql = "CREATE TABLE " + tablename +  
-	        		   " (" +
-	                   "contig text, " +
-	        		   "pos int," +
-	        		   "posEnd int," +
-	                   "line text" + // This is the row line as read from input file
-	                   ")"; 
-	        stmt.executeUpdate(sql);
-	        stmt= conn.createStatement();
-
-	        // http://stackoverflow.com/questions/1711631/improve-insert-per-second-performance-of-sqlite
-	        stmt.execute("PRAGMA journal_mode = OFF"); // This is not to leave tmp journal file o disk
-			conn.setAutoCommit(false); // This is important: By default each insert is committed 
-						     		   // as it is executed, which is slow. Let's commit in bulk at the end instead.
-			stmt.close();
-	        return conn;
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
-	    return null;
-	}
 	
 }
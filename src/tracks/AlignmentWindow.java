@@ -0,0 +1,214 @@
+package tracks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import samTextViewer.SamReaderPool;
+import samTextViewer.Utils;
+
+/** Decode the alignments of one bam file once per genomic window and hand them out
+ * to all the tracks reading from that file, typically a TrackPileup and a TrackReads.
+ * The records of the last window are kept in memory so that asking again for
+ * the same window, or for any interval inside it, does not touch the file.
+ * Records are cached as they come from the file. Filters are applied by each track
+ * since tracks of the same file can have different filters.
+ *
+ * Windows can also be read ahead of time by a Prefetcher. These are kept aside and
+ * become the current window once a query falls inside one of them.
+ * */
+class AlignmentWindow {
+
+	private final String workFilename;
+	private String chrom= null;
+	private int from= -1;
+	private int to= -1;
+	private List<SAMRecord> records= new ArrayList<SAMRecord>();
+	/** Iterator streaming a large window from file. Kept to close it before the next query 
+	 * since the pooled reader allows only one open iterator. */
+	private SAMRecordIterator streaming= null;
+	/** Windows read by prefetch() and not asked for yet*/
+	private List<Window> prefetched= new ArrayList<Window>();
+	/** The prefetcher that read the windows in prefetched*/
+	private Prefetcher prefetchedBy= null;
+
+	private static class Window {
+		String chrom;
+		int from;
+		int to;
+		List<SAMRecord> records;
+	}
+
+	/*   C o n s t r u c t o r s   */
+
+	protected AlignmentWindow(String workFilename){
+		this.workFilename= workFilename;
+	}
+
+	/** Prepare a window for the given sam or bam file. If the file is not indexed,
+	 * it is sorted and indexed to a temporary file which is then used as work file.
+	 * */
+	protected static AlignmentWindow fromSource(String bam) throws IOException{
+		if(!Utils.bamHasIndex(bam)){
+			File temp= Utils.createTempFile(".asciigenome.", ".bam");
+			Utils.sortAndIndexSamOrBam(bam, temp.getAbsolutePath(), true);
+			return new AlignmentWindow(temp.getAbsolutePath());
+		}
+		return new AlignmentWindow(bam);
+	}
+
+	/*   M e t h o d s   */
+
+	/** Return the records overlapping chrom:from-to. The interval from-to is expected
+	 * to be contained in the window winFrom-winTo typically corresponding to the current
+	 * genomic coordinates. If the window is smaller than Track.MAX_REGION_SIZE, the whole
+	 * window is decoded and cached so that other calls inside this window, from this or
+	 * other tracks, are served from memory. Larger windows are streamed from file
+	 * and not cached.
+	 * Records are returned as they are in the file, i.e. not filtered.
+	 * */
+	protected Iterator<SAMRecord> query(String chrom, int from, int to, int winFrom, int winTo) throws IOException{
+
+		this.closeStreaming();
+		if( ! this.contains(chrom, from, to) && ! this.usePrefetched(chrom, from, to)){
+			if(winFrom > from || winTo < to || (winTo - winFrom + 1) >= Track.MAX_REGION_SIZE){
+				// Window too large to be held in memory: Stream from file.
+				return this.streamFromFile(chrom, from, to);
+			}
+			this.fetch(chrom, winFrom, winTo);
+		}
+		if(from == this.from && to == this.to){
+			return this.records.iterator();
+		}
+		List<SAMRecord> overlapping= new ArrayList<SAMRecord>();
+		for(SAMRecord rec : this.records){
+			if(rec.getAlignmentStart() <= to && rec.getAlignmentEnd() >= from){
+				overlapping.add(rec);
+			}
+		}
+		return overlapping.iterator();
+	}
+
+	/** True if the cached window contains the interval chrom:from-to*/
+	private boolean contains(String chrom, int from, int to){
+		return this.chrom != null && this.chrom.equals(chrom) && this.from <= from && this.to >= to;
+	}
+
+	/** If a prefetched window contains chrom:from-to make it the current window and 
+	 * return true.*/
+	private boolean usePrefetched(String chrom, int from, int to){
+		for(Window w : this.prefetched){
+			if(w.chrom.equals(chrom) && w.from <= from && w.to >= to){
+				this.prefetched.remove(w);
+				this.records= w.records;
+				this.chrom= w.chrom;
+				this.from= w.from;
+				this.to= w.to;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Read the records in chrom:from-to ahead of time and keep them aside for query(). 
+	 * Windows read by a previous prefetcher are dropped. Return the records of the window, 
+	 * or null if the prefetcher is cancelled or the records do not fit its memory budget.
+	 * */
+	protected List<SAMRecord> prefetch(String chrom, int from, int to, Prefetcher prefetcher) throws IOException{
+		if(this.prefetchedBy != prefetcher){
+			this.prefetched.clear();
+			this.prefetchedBy= prefetcher;
+		}
+		if(this.contains(chrom, from, to)){
+			return this.records;
+		}
+		for(Window w : this.prefetched){
+			if(w.chrom.equals(chrom) && w.from <= from && w.to >= to){
+				return w.records;
+			}
+		}
+		this.closeStreaming();
+		List<SAMRecord> fetched= new ArrayList<SAMRecord>();
+		SAMRecordIterator iter= SamReaderPool.query(this.workFilename, chrom, from, to);
+		try{
+			while(iter.hasNext()){
+				SAMRecord rec= iter.next();
+				if(prefetcher.isCancelled() || ! prefetcher.reserve(getBytes(rec))){
+					return null;
+				}
+				fetched.add(rec);
+			}
+		} finally {
+			iter.close();
+		}
+		Window w= new Window();
+		w.chrom= chrom;
+		w.from= from;
+		w.to= to;
+		w.records= fetched;
+		this.prefetched.add(w);
+		return fetched;
+	}
+
+	/** Rough size in bytes of a record in memory*/
+	private static long getBytes(SAMRecord rec){
+		return 2 * rec.getReadLength() + 16 * rec.getCigarLength() + 300;
+	}
+
+	/** Read all the records in chrom:from-to and cache them, replacing the current window.
+	 * */
+	private void fetch(String chrom, int from, int to) throws IOException{
+		List<SAMRecord> fetched= new ArrayList<SAMRecord>();
+		SAMRecordIterator iter= SamReaderPool.query(this.workFilename, chrom, from, to);
+		while(iter.hasNext()){
+			fetched.add(iter.next());
+		}
+		iter.close();
+		this.records= fetched;
+		this.chrom= chrom;
+		this.from= from;
+		this.to= to;
+	}
+
+	private Iterator<SAMRecord> streamFromFile(String chrom, int from, int to) throws IOException{
+		this.streaming= SamReaderPool.query(this.workFilename, chrom, from, to);
+		final SAMRecordIterator iter= this.streaming;
+		// Close as soon as exhausted so the reader is free for other windows on the same file
+		return new Iterator<SAMRecord>(){
+			@Override
+			public boolean hasNext() {
+				if(iter == streaming && iter.hasNext()){
+					return true;
+				}
+				closeStreaming();
+				return false;
+			}
+			@Override
+			public SAMRecord next() {
+				return iter.next();
+			}
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	/** Close the streaming iterator, if still open. Closing twice is not allowed
+	 * by htsjdk once another iterator is open on the same reader.
+	 * */
+	private void closeStreaming(){
+		if(this.streaming != null){
+			this.streaming.close();
+			this.streaming= null;
+		}
+	}
+
+	protected String getWorkFilename(){
+		return this.workFilename;
+	}
+}
@@ -0,0 +1,128 @@
+package tracks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+import samTextViewer.Utils;
+
+/** An awk filter prepared once, when the script is set, rather than for every line
+ * to filter. The command line arguments are separated from the script, the functions
+ * in Track.awkFunc are added to it and the result is tokenized into the arguments for jawk.
+ *
+ * A line passes the filter if awk prints it unchanged and fails if awk prints nothing.
+ * Lines can be filtered in batches, e.g. all the features in the current window, so that
+ * awk is started and the script parsed once per batch instead of once per line.
+ * */
+public class AwkProgram {
+
+	private final String script;
+	/** Arguments to jawk. Null if the script is empty, i.e. no filter*/
+	private final String[] args;
+
+	/*   C o n s t r u c t o r s   */
+
+	public AwkProgram(String awkScript){
+		this.script= awkScript;
+		awkScript= awkScript.trim();
+		if(awkScript.isEmpty()){
+			this.args= null;
+			return;
+		}
+		// We need to separate the awk script from the arguments. The arguments could contain single quotes:
+		// -v var=foo '$1 == var && $2 == baz'
+		// For this, reverse the string and look for the first occurrence of "' " which corresponds to
+		// the opening of the awk script.
+		int scriptStartsAt= awkScript.length() - new StringBuilder(awkScript).reverse().toString().indexOf("' ");
+		if(scriptStartsAt == awkScript.length() + 1){
+			scriptStartsAt= 1;
+		}
+		// Now add the functions to the script right at the start of the script, after the command args
+		awkScript= awkScript.substring(0, scriptStartsAt) + Track.awkFunc + awkScript.substring(scriptStartsAt);
+		this.args= Utils.tokenize(awkScript, " ").toArray(new String[0]);
+	}
+
+	/*   M e t h o d s   */
+
+	/** True if there is no script, so all lines pass*/
+	public boolean isEmpty(){
+		return this.args == null;
+	}
+
+	/** Filter one line. Return true if the output of awk is the same as the line, false if
+	 * awk returns empty output and null if output is not empty and not equal to the line.
+	 * Throw IOException if the script is invalid.
+	 * */
+	public Boolean pass(String rawLine) throws IOException{
+		if(this.isEmpty()){
+			return true;
+		}
+		String output= this.run(new ByteArrayInputStream(rawLine.getBytes(StandardCharsets.US_ASCII)));
+		if(output.trim().isEmpty()){
+			return false;
+		} else if(output.trim().equals(rawLine.trim())){
+			return true;
+		} else {
+			return null;
+		}
+	}
+
+	/** Filter all the lines with a single run of awk. The i-th element of the returned array
+	 * is true if line i passes the filter. Return null if the output of awk contains lines not
+	 * found in input, i.e. the script does more than filtering.
+	 * Throw IOException if the script is invalid.
+	 * */
+	public boolean[] pass(String[] rawLines) throws IOException{
+		boolean[] results= new boolean[rawLines.length];
+		if(this.isEmpty()){
+			for(int i= 0; i < rawLines.length; i++){
+				results[i]= true;
+			}
+			return results;
+		}
+		ByteArrayOutputStream baosIn = new ByteArrayOutputStream();
+		for (String line : rawLines) {
+			baosIn.write((line+"\n").getBytes());
+		}
+		String out= this.run(new ByteArrayInputStream(baosIn.toByteArray()));
+		String output[]= out.isEmpty() ? new String[0] : out.split("\n");
+
+		// Output lines are the input lines passing the filter, in the same order
+		int j= 0;
+		for(int i=0; i < rawLines.length; i++){
+			if(j < output.length && rawLines[i].equals(output[j])){
+				results[i]= true;
+				j++;
+			}
+		}
+		if(j < output.length){
+			return null;
+		}
+		return results;
+	}
+
+	/** Run awk on the given input and return its output. awk redirects System.out so this
+	 * must not be run by more than one thread at a time. */
+	private String run(InputStream is) throws IOException{
+		PrintStream stdout = System.out;
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try{
+			PrintStream os= new PrintStream(baos);
+			new org.jawk.Main(this.args, is, os, System.err);
+		} catch(Exception e){
+			throw new IOException();
+		} finally{
+			System.setOut(stdout);
+			is.close();
+		}
+		return new String(baos.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/** The script as given*/
+	public String getScript(){
+		return this.script;
+	}
+}
@@ -0,0 +1,476 @@
+package tracks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import htsjdk.samtools.SAMRecord;
+
+/** Filter records on the values in their columns with an expression in a subset of
+ * the awk syntax, e.g. <code>$5 > 30 && ($3 == "exon" || $3 ~ "_codon$")</code>.
+ * The expression is compiled once into a tree of predicates evaluated directly on the
+ * tab separated fields, without going through awk.
+ *
+ * Supported are fields <code>$0</code>, <code>$1</code>, ..., number and string constants,
+ * regular expressions in slashes, the comparison operators ==, !=, <, <=, >, >=, ~, !~,
+ * the boolean operators &&, || and !, and parentheses. As in awk, two values are compared
+ * as numbers if both look like numbers and as strings otherwise, and a value on its own is
+ * true if it is a non-zero number or a non-empty string.
+ * */
+class ColumnFilter {
+
+	/** Access to the fields of a record. Field 0 is the whole record. Fields past the
+	 * last one are null.*/
+	protected interface Fields {
+		String get(int i);
+	}
+
+	private final String expression;
+	private final Node root;
+
+	/*   C o n s t r u c t o r s   */
+
+	private ColumnFilter(String expression, Node root){
+		this.expression= expression;
+		this.root= root;
+	}
+
+	/** Compile the expression. Return null if the expression uses syntax not supported
+	 * here, e.g. arithmetic or functions. Then the expression can be run through awk instead.
+	 * */
+	protected static ColumnFilter compile(String expression){
+		try{
+			Parser parser= new Parser(expression);
+			Node root= parser.parseOr();
+			if( ! parser.atEnd()){
+				return null;
+			}
+			return new ColumnFilter(expression, root);
+		} catch(ParseException | PatternSyntaxException e){
+			return null;
+		}
+	}
+
+	/*   M e t h o d s   */
+
+	/** True if the tab separated line passes the filter*/
+	protected boolean test(final String line){
+		return this.root.test(new LineFields(line));
+	}
+
+	/** True if the record, as a line of sam, passes the filter. Only the fields used by the
+	 * expression are formatted.
+	 * */
+	protected boolean test(final SAMRecord rec){
+		return this.root.test(new SamFields(rec));
+	}
+
+	protected String getExpression(){
+		return this.expression;
+	}
+
+	/*   F i e l d s   */
+
+	/** Fields of a tab separated line, split on first use*/
+	private static class LineFields implements Fields {
+		private final String line;
+		private String[] fields= null;
+		LineFields(String line){
+			this.line= line;
+		}
+		@Override
+		public String get(int i){
+			if(i == 0){
+				return this.line;
+			}
+			if(this.fields == null){
+				this.fields= this.line.split("\t", -1);
+			}
+			return i <= this.fields.length ? this.fields[i - 1] : null;
+		}
+	}
+
+	/** Fields of a sam record. The mandatory fields are taken from the record, the tags
+	 * from the sam string, made only if needed.*/
+	private static class SamFields implements Fields {
+		private final SAMRecord rec;
+		private LineFields line= null;
+		SamFields(SAMRecord rec){
+			this.rec= rec;
+		}
+		@Override
+		public String get(int i){
+			String field= samField(this.rec, i);
+			if(field != null){
+				return field;
+			}
+			if(this.line == null){
+				this.line= new LineFields(this.rec.getSAMString().trim());
+			}
+			return this.line.get(i);
+		}
+	}
+
+	/** Mandatory field i, 1 to 11, of the record as written in sam format. Null for other
+	 * fields.*/
+	protected static String samField(SAMRecord rec, int i){
+		switch(i){
+		case 1: return rec.getReadName();
+		case 2: return Integer.toString(rec.getFlags());
+		case 3: return rec.getReferenceName();
+		case 4: return Integer.toString(rec.getAlignmentStart());
+		case 5: return Integer.toString(rec.getMappingQuality());
+		case 6: return rec.getCigarString();
+		case 7: return rec.getMateReferenceName().equals(rec.getReferenceName()) &&
+				! rec.getMateReferenceName().equals(SAMRecord.NO_ALIGNMENT_REFERENCE_NAME) ? "=" : rec.getMateReferenceName();
+		case 8: return Integer.toString(rec.getMateAlignmentStart());
+		case 9: return Integer.toString(rec.getInferredInsertSize());
+		case 10: return rec.getReadString();
+		case 11: return rec.getBaseQualityString();
+		default: return null;
+		}
+	}
+
+	/*   V a l u e s   */
+
+	/** A value as seen by awk: a number, a string or a "strnum", i.e. input that looks
+	 * like a number*/
+	private static class Value {
+		final String str;
+		final boolean isNumber;
+		final double num;
+		Value(String str, boolean isNumber, double num){
+			this.str= str;
+			this.isNumber= isNumber;
+			this.num= num;
+		}
+		boolean isTrue(){
+			return this.isNumber ? this.num != 0 : ! this.str.isEmpty();
+		}
+	}
+
+	private static final Pattern NUMBER= Pattern.compile("^\\s*[-+]?(\\d+\\.?\\d*|\\.\\d+)([eE][-+]?\\d+)?\\s*$");
+
+	private static Value fromInput(String s){
+		if(s == null){
+			// As an uninitialized variable: Empty string and zero
+			return new Value("", true, 0);
+		}
+		if(NUMBER.matcher(s).matches()){
+			return new Value(s, true, Double.parseDouble(s.trim()));
+		}
+		return new Value(s, false, 0);
+	}
+
+	/** String form of a number constant, as awk prints it*/
+	private static String numberToString(double x){
+		if(x == Math.rint(x) && Math.abs(x) < 1e16){
+			return Long.toString((long) x);
+		}
+		return String.format("%.6g", x).replaceAll("0+$", "").replaceAll("\\.$", "");
+	}
+
+	/*   N o d e s   */
+
+	private static abstract class Node {
+		abstract boolean test(Fields fields);
+	}
+
+	private static abstract class Operand {
+		abstract Value eval(Fields fields);
+	}
+
+	private static class Field extends Operand {
+		final int idx;
+		Field(int idx){
+			this.idx= idx;
+		}
+		@Override
+		Value eval(Fields fields){
+			return fromInput(fields.get(this.idx));
+		}
+	}
+
+	private static class Constant extends Operand {
+		final Value value;
+		Constant(Value value){
+			this.value= value;
+		}
+		@Override
+		Value eval(Fields fields){
+			return this.value;
+		}
+	}
+
+	private static class And extends Node {
+		final Node left, right;
+		And(Node left, Node right){
+			this.left= left;
+			this.right= right;
+		}
+		@Override
+		boolean test(Fields fields){
+			return this.left.test(fields) && this.right.test(fields);
+		}
+	}
+
+	private static class Or extends Node {
+		final Node left, right;
+		Or(Node left, Node right){
+			this.left= left;
+			this.right= right;
+		}
+		@Override
+		boolean test(Fields fields){
+			return this.left.test(fields) || this.right.test(fields);
+		}
+	}
+
+	private static class Not extends Node {
+		final Node node;
+		Not(Node node){
+			this.node= node;
+		}
+		@Override
+		boolean test(Fields fields){
+			return ! this.node.test(fields);
+		}
+	}
+
+	private static class IsTrue extends Node {
+		final Operand operand;
+		IsTrue(Operand operand){
+			this.operand= operand;
+		}
+		@Override
+		boolean test(Fields fields){
+			return this.operand.eval(fields).isTrue();
+		}
+	}
+
+	private static class Compare extends Node {
+		final Operand left, right;
+		final String op;
+		Compare(Operand left, String op, Operand right){
+			this.left= left;
+			this.op= op;
+			this.right= right;
+		}
+		@Override
+		boolean test(Fields fields){
+			Value x= this.left.eval(fields);
+			Value y= this.right.eval(fields);
+			int cmp;
+			if(x.isNumber && y.isNumber){
+				cmp= x.num < y.num ? -1 : (x.num > y.num ? 1 : 0);
+			} else {
+				cmp= x.str.compareTo(y.str);
+			}
+			switch(this.op){
+			case "==": return cmp == 0;
+			case "!=": return cmp != 0;
+			case "<": return cmp < 0;
+			case "<=": return cmp <= 0;
+			case ">": return cmp > 0;
+			default: return cmp >= 0;
+			}
+		}
+	}
+
+	private static class Match extends Node {
+		final Operand operand;
+		final Pattern pattern;
+		final boolean negate;
+		Match(Operand operand, Pattern pattern, boolean negate){
+			this.operand= operand;
+			this.pattern= pattern;
+			this.negate= negate;
+		}
+		@Override
+		boolean test(Fields fields){
+			return this.pattern.matcher(this.operand.eval(fields).str).find() != this.negate;
+		}
+	}
+
+	/*   P a r s e r   */
+
+	/** Thrown by the parser on syntax it cannot compile, so that awk is used instead*/
+	private static class ParseException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+	}
+
+	/** Recursive descent parser. Throws ParseException on anything it
+	 * does not understand.*/
+	private static class Parser {
+
+		private final List<String> tokens;
+		private int pos= 0;
+
+		Parser(String expression){
+			this.tokens= tokenize(expression);
+		}
+
+		boolean atEnd(){
+			return this.pos == this.tokens.size();
+		}
+
+		private String peek(){
+			return this.atEnd() ? null : this.tokens.get(this.pos);
+		}
+
+		private String next(){
+			if(this.atEnd()){
+				throw new ParseException();
+			}
+			return this.tokens.get(this.pos++);
+		}
+
+		Node parseOr(){
+			Node node= this.parseAnd();
+			while("||".equals(this.peek())){
+				this.next();
+				node= new Or(node, this.parseAnd());
+			}
+			return node;
+		}
+
+		private Node parseAnd(){
+			Node node= this.parseUnary();
+			while("&&".equals(this.peek())){
+				this.next();
+				node= new And(node, this.parseUnary());
+			}
+			return node;
+		}
+
+		private Node parseUnary(){
+			String tok= this.peek();
+			if("!".equals(tok)){
+				this.next();
+				return new Not(this.parseUnary());
+			}
+			if(tok != null && tok.startsWith("/")){
+				// A regex on its own matches the whole line
+				this.next();
+				return new Match(new Field(0), Pattern.compile(tok.substring(1)), false);
+			}
+			if("(".equals(tok)){
+				this.next();
+				Node node= this.parseOr();
+				if( ! ")".equals(this.next())){
+					throw new ParseException();
+				}
+				return node;
+			}
+			Operand left= this.parseOperand();
+			String op= this.peek();
+			if(op == null || ! (op.equals("==") || op.equals("!=") || op.equals("<") || op.equals("<=") ||
+					op.equals(">") || op.equals(">=") || op.equals("~") || op.equals("!~"))){
+				return new IsTrue(left);
+			}
+			this.next();
+			if(op.equals("~") || op.equals("!~")){
+				String re= this.next();
+				Pattern pattern;
+				if(re.startsWith("/") || re.startsWith("\"")){
+					pattern= Pattern.compile(re.substring(1));
+				} else {
+					throw new ParseException();
+				}
+				return new Match(left, pattern, op.equals("!~"));
+			}
+			return new Compare(left, op, this.parseOperand());
+		}
+
+		private Operand parseOperand(){
+			String tok= this.next();
+			if(tok.startsWith("$")){
+				try{
+					return new Field(Integer.parseInt(tok.substring(1)));
+				} catch(NumberFormatException e){
+					throw new ParseException();
+				}
+			}
+			if(tok.startsWith("\"")){
+				return new Constant(new Value(tok.substring(1), false, 0));
+			}
+			if(NUMBER.matcher(tok).matches()){
+				double x= Double.parseDouble(tok);
+				return new Constant(new Value(numberToString(x), true, x));
+			}
+			throw new ParseException();
+		}
+
+		/** Split the expression in tokens. Strings and regexes are returned with the
+		 * opening quote or slash and without the closing one, escapes resolved.*/
+		private static List<String> tokenize(String x){
+			List<String> tokens= new ArrayList<String>();
+			int i= 0;
+			while(i < x.length()){
+				char c= x.charAt(i);
+				if(Character.isWhitespace(c)){
+					i++;
+				} else if(c == '"' || (c == '/' && isRegexStart(tokens))){
+					StringBuilder sb= new StringBuilder().append(c);
+					i++;
+					while(i < x.length() && x.charAt(i) != c){
+						if(x.charAt(i) == '\\' && i + 1 < x.length()){
+							char e= x.charAt(i + 1);
+							if(c == '/' && e != '/'){
+								sb.append('\\'); // Keep regex escapes, e.g. \. or \t
+								sb.append(e);
+							} else if(e == 't'){
+								sb.append('\t');
+							} else if(e == 'n'){
+								sb.append('\n');
+							} else {
+								sb.append(e);
+							}
+							i += 2;
+						} else {
+							sb.append(x.charAt(i));
+							i++;
+						}
+					}
+					if(i == x.length()){
+						throw new ParseException(); // Not closed
+					}
+					i++;
+					tokens.add(sb.toString());
+				} else if(c == '$' || Character.isDigit(c) || c == '.'){
+					int j= i + 1;
+					while(j < x.length() && (Character.isLetterOrDigit(x.charAt(j)) || x.charAt(j) == '.')){
+						j++;
+					}
+					tokens.add(x.substring(i, j));
+					i= j;
+				} else {
+					String two= i + 1 < x.length() ? x.substring(i, i + 2) : "";
+					if(two.equals("==") || two.equals("!=") || two.equals("<=") || two.equals(">=") ||
+					   two.equals("&&") || two.equals("||") || two.equals("!~")){
+						tokens.add(two);
+						i += 2;
+					} else if("<>!~()".indexOf(c) >= 0){
+						tokens.add(String.valueOf(c));
+						i++;
+					} else {
+						// E.g. arithmetic, functions, variables, assignments
+						throw new ParseException();
+					}
+				}
+			}
+			return tokens;
+		}
+
+		/** A slash starts a regex only where an operand is expected, not as division*/
+		private static boolean isRegexStart(List<String> tokens){
+			if(tokens.isEmpty()){
+				return true;
+			}
+			String last= tokens.get(tokens.size() - 1);
+			return last.equals("~") || last.equals("!~") || last.equals("(") || last.equals("!") ||
+				   last.equals("&&") || last.equals("||");
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package tracks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.broad.igv.tdf.Accumulator;
+import org.broad.igv.tdf.TDFDataset;
+import org.broad.igv.tdf.TDFFixedTile;
+import org.broad.igv.tdf.TDFReader;
+import org.broad.igv.tdf.TDFTile;
+import org.broad.igv.tdf.TDFWriter;
+import org.broad.igv.track.TrackType;
+import org.broad.igv.track.WindowFunction;
+
+import com.google.common.base.Joiner;
+
+import filter.FlagToFilter;
+import htsjdk.samtools.BAMFileSpan;
+import htsjdk.samtools.BAMIndex;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.filter.MappingQualityFilter;
+import htsjdk.samtools.filter.SamRecordFilter;
+import samTextViewer.GenomicCoords;
+import samTextViewer.Utils;
+
+/** Read depth of a bam file precomputed at multiple resolutions and stored in a tdf
+ * file next to the bam. The layout is the one of igvtools count: A raw dataset of
+ * 25 bp bins and zoom levels z0, z1, ... where level z splits the chromosome in
+ * about 2^z tiles of 700 bins. Bins hold the mean depth of the covered positions.
+ *
+ * The sidecar is computed with the mapq and flag filters of the track and it is used
+ * only while the track has the same filters and no other filter.
+ * */
+public class CoverageSidecar {
+
+	public static final String SUFFIX= ".asciigenome.tdf";
+	/** Root attribute with the filters used to build the sidecar*/
+	private static final String FILTER_ATTR= "asciigenomeFilters";
+	private static final int BINS_PER_TILE= 700;
+	private static final int RAW_BIN_SIZE= 25;
+	/** Zoom levels are added until bins are smaller than this */
+	private static final int MIN_ZOOM_BIN_SIZE= 1000;
+	/** Depth is computed in windows of this size */
+	private static final int BUILD_WINDOW= DepthEngine.CHUNK_SIZE * 256;
+
+	private final TDFReader reader;
+
+	/*   C o n s t r u c t o r s   */
+
+	private CoverageSidecar(TDFReader reader){
+		this.reader= reader;
+	}
+
+	/*   M e t h o d s   */
+
+	/** Name of the sidecar for this bam file*/
+	public static String getFilename(String bam){
+		return bam + SUFFIX;
+	}
+
+	private static String filterString(int mapq, int f_flag, int F_flag){
+		return "-q " + mapq + " -f " + f_flag + " -F " + F_flag;
+	}
+
+	/** Open the sidecar of bam if it exists, is newer than bam and has been built
+	 * with the given filters. Return null otherwise.
+	 * */
+	protected static CoverageSidecar open(String bam, int mapq, int f_flag, int F_flag){
+		File tdf= new File(getFilename(bam));
+		if( ! tdf.isFile() || tdf.lastModified() < new File(bam).lastModified()){
+			return null;
+		}
+		TDFReader reader= TDFReader.getReader(tdf.getAbsolutePath());
+		String filters= reader.getGroup("/").getAttribute(FILTER_ATTR);
+		if( ! filterString(mapq, f_flag, F_flag).equals(filters)){
+			reader.close();
+			return null;
+		}
+		return new CoverageSidecar(reader);
+	}
+
+	protected void close(){
+		this.reader.close();
+	}
+
+	/** Compute the sidecar of bam, read from workFilename, using the given filters.
+	 * Return the sidecar file.
+	 * */
+	public static File build(String bam, String workFilename, int mapq, int f_flag, int F_flag) throws IOException{
+
+		List<SamRecordFilter> filters= new ArrayList<SamRecordFilter>();
+		filters.addAll(FlagToFilter.flagToFilterList(f_flag, F_flag));
+		filters.add(new MappingQualityFilter(mapq));
+
+		// Reader used only to skip regions without alignments, as per index
+		SamReader samReader= Utils.getSamReader(workFilename);
+		BAMIndex index= samReader.indexing().getIndex();
+		List<SAMSequenceRecord> sequences= samReader.getFileHeader().getSequenceDictionary().getSequences();
+
+		// Write to temp file first so that an interrupted build doesn't leave a partial sidecar
+		File tdf= new File(getFilename(bam));
+		File tmp= new File(tdf.getAbsolutePath() + ".tmp.tdf");
+		List<WindowFunction> wf= new ArrayList<WindowFunction>();
+		wf.add(WindowFunction.mean);
+		TDFWriter writer= new TDFWriter(tmp, "", TrackType.COVERAGE, "", new String[] {new File(bam).getName()}, wf, true);
+
+		List<String> chroms= new ArrayList<String>();
+		int maxZoom= 0;
+		for(SAMSequenceRecord seq : sequences){
+			int len= seq.getSequenceLength();
+			List<Level> levels= new ArrayList<Level>();
+			levels.add(new Level(writer, "/" + seq.getSequenceName() + "/raw", RAW_BIN_SIZE, len));
+			for(int z= 0; ; z++){
+				int binSize= zoomBinSize(len, z);
+				levels.add(new Level(writer, "/" + seq.getSequenceName() + "/z" + z + "/mean", binSize, len));
+				maxZoom= Math.max(maxZoom, z);
+				if(binSize <= MIN_ZOOM_BIN_SIZE){
+					break;
+				}
+			}
+			for(int from= 1; from <= len; from += BUILD_WINDOW){
+				BAMFileSpan span= index.getSpanOverlapping(seq.getSequenceIndex(), from, Math.min(from + BUILD_WINDOW - 1, len));
+				if(span == null || span.isEmpty()){
+					continue;
+				}
+				PileupAccumulator acc= new PileupAccumulator(seq.getSequenceName(), from, Math.min(from + BUILD_WINDOW - 1, len), false);
+				DepthEngine.collect(workFilename, filters, acc);
+				// Pass runs of equal depth to each level. Positions in levels are 0-based
+				int runStart= acc.getFrom();
+				for(int pos= acc.getFrom() + 1; pos <= acc.getTo() + 1; pos++){
+					if(pos > acc.getTo() || acc.getDepth(pos) != acc.getDepth(runStart)){
+						int depth= acc.getDepth(runStart);
+						if(depth > 0){
+							for(Level level : levels){
+								level.add(runStart - 1, pos - 1, depth);
+							}
+						}
+						runStart= pos;
+					}
+				}
+			}
+			for(Level level : levels){
+				level.finish();
+			}
+			chroms.add(seq.getSequenceName());
+		}
+		samReader.close();
+		writer.getRootGroup().setAttribute("maxZoom", String.valueOf(maxZoom));
+		writer.getRootGroup().setAttribute("chromosomes", Joiner.on(",").join(chroms));
+		writer.getRootGroup().setAttribute("totalCount", String.valueOf(Utils.getAlignedReadCount(workFilename)));
+		writer.getRootGroup().setAttribute(FILTER_ATTR, filterString(mapq, f_flag, F_flag));
+		writer.closeFile();
+
+		if(tdf.exists()){
+			tdf.delete();
+		}
+		if( ! tmp.renameTo(tdf)){
+			throw new IOException("Cannot write " + tdf);
+		}
+		return tdf;
+	}
+
+	/** Bin size at zoom level z. Tiles are made of BINS_PER_TILE bins of this size.*/
+	private static int zoomBinSize(int chromLength, int z){
+		int tileWidth= (int) Math.ceil((double) chromLength / (1 << z));
+		return Math.max(1, (int) Math.ceil((double) tileWidth / BINS_PER_TILE));
+	}
+
+	/** Mean score in each screen column of gc, averaged over the covered positions.
+	 * Use the coarsest resolution giving at least one bin per column.
+	 * */
+	protected List<Float> getScreenScores(GenomicCoords gc){
+
+		List<ScreenWiggleLocusInfo> screenInfo= new ArrayList<ScreenWiggleLocusInfo>();
+		for(int i= 0; i < gc.getMapping().size(); i++){
+			screenInfo.add(new ScreenWiggleLocusInfo());
+		}
+		TDFDataset ds= this.getDataset(gc.getChrom(), (double) (gc.getTo() - gc.getFrom() + 1) / screenInfo.size());
+		if(ds != null){
+			// Bins are 0-based, half open. Screen positions are 1-based.
+			int from= gc.getFrom();
+			int to= gc.getTo();
+			for(TDFTile tile : ds.getTiles(from - 1, to)){
+				for(int b= 0; b < tile.getSize(); b++){
+					float value= tile.getValue(0, b);
+					int start= Math.max(tile.getStartPosition(b) + 1, from);
+					int end= Math.min(tile.getEndPosition(b), to);
+					if(value == 0 || Float.isNaN(value) || start > end){
+						continue;
+					}
+					int col= gc.getColumnOfPosition(start);
+					for(int n : gc.countPositionsInColumns(start, end)){
+						screenInfo.get(col).increment(value, n);
+						col++;
+					}
+				}
+			}
+		}
+		List<Float> screenScores= new ArrayList<Float>();
+		for(ScreenWiggleLocusInfo x : screenInfo){
+			screenScores.add(x.getMeanScore());
+		}
+		return screenScores;
+	}
+
+	/** Coarsest dataset for chrom with bins no larger than bpPerColumn. Null if
+	 * chrom is not in the sidecar.
+	 * */
+	private TDFDataset getDataset(String chrom, double bpPerColumn){
+		for(int z= 0; ; z++){
+			TDFDataset ds= this.reader.getDataset("/" + chrom + "/z" + z + "/mean");
+			if(ds == null){
+				break;
+			}
+			if(ds.getTileWidth() / BINS_PER_TILE <= bpPerColumn){
+				return ds;
+			}
+		}
+		return this.reader.getDataset("/" + chrom + "/raw");
+	}
+
+	/** One resolution level of the sidecar, written tile by tile as runs of depth
+	 * are added in order of position.
+	 * */
+	private static class Level {
+
+		private final TDFWriter writer;
+		private final String name;
+		private final int binSize;
+		private final int tileWidth;
+		private int currentBin= -1;
+		private Accumulator acc;
+		private int currentTile= -1;
+		private float[] tileData= new float[BINS_PER_TILE];
+		private boolean tileHasData= false;
+
+		Level(TDFWriter writer, String name, int binSize, int chromLength){
+			this.writer= writer;
+			this.name= name;
+			this.binSize= binSize;
+			this.tileWidth= binSize * BINS_PER_TILE;
+			int nTiles= (int) Math.ceil((double) chromLength / this.tileWidth);
+			writer.createDataset(name, TDFDataset.DataType.FLOAT, this.tileWidth, Math.max(1, nTiles));
+		}
+
+		/** Add depth over the 0-based, half open interval start-end */
+		void add(int start, int end, float depth) throws IOException{
+			while(start < end){
+				int bin= start / this.binSize;
+				if(bin != this.currentBin){
+					this.closeBin();
+					this.currentBin= bin;
+					this.acc= new Accumulator(WindowFunction.mean);
+				}
+				int pieceEnd= Math.min(end, (bin + 1) * this.binSize);
+				this.acc.add(pieceEnd - start, depth, null);
+				start= pieceEnd;
+			}
+		}
+
+		private void closeBin() throws IOException{
+			if(this.currentBin < 0){
+				return;
+			}
+			int tile= this.currentBin / BINS_PER_TILE;
+			if(tile != this.currentTile){
+				this.writeTile();
+				this.currentTile= tile;
+			}
+			this.tileData[this.currentBin % BINS_PER_TILE]= this.acc.getValue();
+			this.tileHasData= true;
+			this.currentBin= -1;
+		}
+
+		private void writeTile() throws IOException{
+			if(this.tileHasData){
+				int tileStart= this.currentTile * this.tileWidth;
+				this.writer.writeTile(this.name, this.currentTile, new TDFFixedTile(tileStart, tileStart, this.binSize, new float[][] {this.tileData}));
+			}
+			this.tileData= new float[BINS_PER_TILE];
+			this.tileHasData= false;
+		}
+
+		void finish() throws IOException{
+			this.closeBin();
+			this.writeTile();
+		}
+	}
+}
@@ -0,0 +1,144 @@
+package tracks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.filter.SamRecordFilter;
+import samTextViewer.SamReaderPool;
+
+/** Read depth over large regions computed in parallel. The region is split in chunks
+ * aligned to the smallest bins of the bam index so that each chunk maps to few index
+ * bins and no block of the file is decoded by more than two workers. Each worker reads
+ * its chunks with a SamReader borrowed from SamReaderPool, so that readers and their
+ * index are reused across calls, applies the filters of the track and adds
+ * to the accumulator only the positions inside the chunk. Reads spanning two chunks are
+ * therefore counted once at each position.
+ *
+ * This replaces piping samtools view into samtools depth: Same -q/-f/-F semantics,
+ * given by the track filters, and also grep, awk and variant read filters.
+ * */
+class DepthEngine {
+
+	/** Size of the smallest bins in the bai index, 2^14*/
+	protected static final int CHUNK_SIZE= 16384;
+	protected static final int N_THREADS= Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+	private static ExecutorService pool= null;
+
+	private DepthEngine(){
+	}
+
+	/** Add to acc the depth from the alignments in workFilename passing the filters of track.
+	 * */
+	protected static void collect(String workFilename, Track track, PileupAccumulator acc) throws IOException{
+		collect(workFilename, track, null, acc);
+	}
+
+	/** Add to acc the depth from the alignments in workFilename passing only the given
+	 * sam flag and mapq filters.
+	 * */
+	protected static void collect(String workFilename, List<SamRecordFilter> samRecordFilter, PileupAccumulator acc) throws IOException{
+		collect(workFilename, null, samRecordFilter, acc);
+	}
+
+	/** Filter with track if not null, otherwise with samRecordFilter*/
+	private static void collect(final String workFilename, final Track track, final List<SamRecordFilter> samRecordFilter, final PileupAccumulator acc) throws IOException{
+
+		List<int[]> chunks= new ArrayList<int[]>();
+		for(int start= chunkStart(acc.getFrom()); start <= acc.getTo(); start += CHUNK_SIZE){
+			chunks.add(new int[] {Math.max(start, acc.getFrom()), Math.min(start + CHUNK_SIZE - 1, acc.getTo())});
+		}
+
+		boolean hasAwk= track != null && track.getAwk() != null && ! track.getAwk().equals(Filter.DEFAULT_AWK.getValue());
+		if(chunks.size() == 1 || hasAwk){
+			// awk redirects System.out so it must not run on more than one thread
+			collectChunks(workFilename, track, samRecordFilter, acc, chunks);
+			return;
+		}
+		// Deal chunks to workers round robin so that each worker moves forward in the file
+		int nWorkers= Math.min(N_THREADS, chunks.size());
+		List<Future<Void>> futures= new ArrayList<Future<Void>>();
+		for(int w= 0; w < nWorkers; w++){
+			final List<int[]> workerChunks= new ArrayList<int[]>();
+			for(int i= w; i < chunks.size(); i += nWorkers){
+				workerChunks.add(chunks.get(i));
+			}
+			futures.add(getPool().submit(new Callable<Void>(){
+				@Override
+				public Void call() throws IOException {
+					collectChunks(workFilename, track, samRecordFilter, acc, workerChunks);
+					return null;
+				}
+			}));
+		}
+		IOException error= null;
+		for(Future<Void> future : futures){
+			try {
+				future.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				error= new IOException(e);
+			} catch (ExecutionException e) {
+				if(e.getCause() instanceof IOException){
+					error= (IOException) e.getCause();
+				} else {
+					error= new IOException(e.getCause());
+				}
+			}
+		}
+		if(error != null){
+			throw error;
+		}
+	}
+
+	/** Read the given chunks in order with a reader private to the caller
+	 * */
+	private static void collectChunks(String workFilename, Track track, List<SamRecordFilter> samRecordFilter, PileupAccumulator acc, List<int[]> chunks) throws IOException{
+		SamReader samReader= SamReaderPool.borrow(workFilename);
+		try{
+			for(int[] chunk : chunks){
+				SAMRecordIterator iter= samReader.query(acc.getChrom(), chunk[0], chunk[1], false);
+				try{
+					FilteredSamIterator sam= track != null ? new FilteredSamIterator(iter, track) : new FilteredSamIterator(iter, samRecordFilter);
+					SAMRecord rec;
+					while((rec= sam.next()) != null){
+						acc.add(rec, chunk[0], chunk[1]);
+					}
+				} finally {
+					iter.close();
+				}
+			}
+		} finally {
+			SamReaderPool.release(workFilename, samReader);
+		}
+	}
+
+	/** First position of the chunk containing pos*/
+	protected static int chunkStart(int pos){
+		return ((pos - 1) / CHUNK_SIZE) * CHUNK_SIZE + 1;
+	}
+
+	private static synchronized ExecutorService getPool(){
+		if(pool == null){
+			pool= Executors.newFixedThreadPool(N_THREADS, new ThreadFactory(){
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t= new Thread(r, "depth-engine");
+					t.setDaemon(true); // Don't prevent exit
+					return t;
+				}
+			});
+		}
+		return pool;
+	}
+}
@@ -1,5 +1,6 @@
 package tracks;
 
+import coloring.AnsiEncoder;
 import coloring.Config;
 import coloring.ConfigKey;
 import coloring.Xterm256;
@@ -49,11 +50,29 @@ class FeatureChar {
 		sb.append(text);
 		// Reset formatting
 		sb.append("\033[0;48;5;");
-		sb.append(Xterm256.colorNameToXterm256(Config.get(ConfigKey.background)));
+		sb.append(Config.get256Color(ConfigKey.background));
 		sb.append("m");
 		return sb.toString();
 	}
 	
+	/** Add this character to the line being encoded, formatted unless noFormat is set.
+	 * @throws InvalidColourException 
+	 * */
+	protected void appendTo(AnsiEncoder enc, boolean noFormat) throws InvalidColourException{
+		if(noFormat){
+			enc.appendPlain(this.getText(), 0);
+			return;
+		}
+		int attr= 0;
+		if(this.invertFgBgColor){
+			attr |= AnsiEncoder.INVERT;
+		}
+		if(this.isUnderline()){
+			attr |= AnsiEncoder.UNDERLINE;
+		}
+		enc.append(this.text, Xterm256.colorNameToXterm256(this.getFgColor()), Xterm256.colorNameToXterm256(this.getBgColor()), attr);
+	}
+	
 	/**Add format to this instance according to input and default configuration.
 	 * */
 	protected void addFormatGFF(char txt, char strand) {
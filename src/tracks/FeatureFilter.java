@@ -17,7 +17,13 @@ class FeatureFilter {
 	// Grep & Awk
 	protected Pattern hideRegex= Pattern.compile(Filter.DEFAULT_HIDE_REGEX.getValue());
 	protected Pattern showRegex= Pattern.compile(Filter.DEFAULT_SHOW_REGEX.getValue());
+	/** The grep regexes prepared for sam records*/
+	private ReadGrep showGrep= new ReadGrep(this.showRegex, null);
+	private ReadGrep hideGrep= new ReadGrep(this.hideRegex, null);
 	private String awk= Filter.DEFAULT_AWK.getValue();
+	private AwkProgram awkProgram= new AwkProgram(this.awk);
+	/** Compiled filter expression, null if not set*/
+	private ColumnFilter columnFilter= null;
 	private int f_flag= Integer.valueOf(Filter.DEFAULT_f_FLAG.getValue());
 	private int F_flag= Integer.valueOf(Filter.DEFAULT_F_FLAG.getValue());
 	private int mapq= Integer.valueOf(Filter.DEFAULT_MAPQ.getValue());
@@ -40,8 +46,15 @@ class FeatureFilter {
 	//   S E T T E R S    A N D    G E T T E R S
 	
 	public void setShowHideRegex(Pattern showRegex, Pattern hideRegex) {
+		this.setShowHideRegex(showRegex, hideRegex, null);
+	}
+
+	/** Set grep regexes applied, for sam records, only to the given field. See ReadGrep.*/
+	public void setShowHideRegex(Pattern showRegex, Pattern hideRegex, String grepField) {
 		this.showRegex= showRegex;
 		this.hideRegex= hideRegex;
+		this.showGrep= new ReadGrep(showRegex, grepField);
+		this.hideGrep= new ReadGrep(hideRegex, grepField);
 	}
 
 	public Pattern getHideRegex() { 
@@ -52,12 +65,39 @@ class FeatureFilter {
 		return this.showRegex; 
 	}
 
+	protected ReadGrep getShowGrep() {
+		return this.showGrep;
+	}
+
+	protected ReadGrep getHideGrep() {
+		return this.hideGrep;
+	}
+
+	/** Field of sam records searched by grep, null for the whole record*/
+	public String getGrepField() {
+		return this.showGrep.getScope();
+	}
+
 	public String getAwk() {
 		return awk;
 	}
 
 	public void setAwk(String awk) {
 		this.awk = awk;
+		this.awkProgram= new AwkProgram(awk);
+	}
+
+	/** The awk script prepared for filtering */
+	protected AwkProgram getAwkProgram() {
+		return this.awkProgram;
+	}
+
+	protected ColumnFilter getColumnFilter() {
+		return this.columnFilter;
+	}
+
+	protected void setColumnFilter(ColumnFilter columnFilter) {
+		this.columnFilter= columnFilter;
 	}
 
 	/** This int is just a setting but is NOT translated to a filter! */
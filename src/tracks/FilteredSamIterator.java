@@ -0,0 +1,140 @@
+package tracks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.filter.AggregateFilter;
+import htsjdk.samtools.filter.SamRecordFilter;
+
+/** Stream of the sam records passing the filters of a track. Records are pulled
+ * from the source iterator one at a time and tested in order against the sam flags
+ * and mapq (AggregateFilter), the variant read filter, the compiled column filter,
+ * the grep patterns (see ReadGrep) and finally awk. Only records that passed all filters are returned.
+ *
+ * Nothing is held in memory except the records waiting to be sent to awk. These are
+ * collected in chunks of AWK_CHUNK_SIZE so that awk is called once per chunk rather than
+ * once per record.
+ * */
+class FilteredSamIterator {
+
+	private static final int AWK_CHUNK_SIZE= 10000;
+
+	private final Iterator<SAMRecord> source;
+	private final Track track;
+	private final AggregateFilter aggregateFilter;
+	private final boolean hasVariantFilter;
+	private final boolean hasShowRegex;
+	private final boolean hasHideRegex;
+	private final boolean hasAwk;
+	private final ColumnFilter columnFilter;
+
+	/** Records that passed the awk filter and are ready to be returned */
+	private List<SAMRecord> awkPassed= new ArrayList<SAMRecord>();
+	private int awkPassedIdx= 0;
+
+	/*   C o n s t r u c t o r s   */
+
+	/** Filter the records from source using the filters set in track
+	 * */
+	protected FilteredSamIterator(Iterator<SAMRecord> source, Track track){
+		this.source= source;
+		this.track= track;
+		FeatureFilter ff= track.getFeatureFilter();
+		this.aggregateFilter= new AggregateFilter(ff.getSamRecordFilter());
+		this.hasVariantFilter= ! ff.getVariantChrom().equals(Filter.DEFAULT_VARIANT_CHROM.getValue());
+		this.hasShowRegex= ! ff.getShowRegex().pattern().equals(Filter.DEFAULT_SHOW_REGEX.getValue());
+		this.hasHideRegex= ! ff.getHideRegex().pattern().equals(Filter.DEFAULT_HIDE_REGEX.getValue());
+		this.hasAwk= track.getAwk() != null && ! track.getAwk().equals(Filter.DEFAULT_AWK.getValue());
+		this.columnFilter= ff.getColumnFilter();
+	}
+
+	/** Filter the records from source using only the given sam flag and mapq filters
+	 * */
+	protected FilteredSamIterator(Iterator<SAMRecord> source, List<SamRecordFilter> samRecordFilter){
+		this.source= source;
+		this.track= null;
+		this.aggregateFilter= new AggregateFilter(samRecordFilter);
+		this.hasVariantFilter= false;
+		this.hasShowRegex= false;
+		this.hasHideRegex= false;
+		this.hasAwk= false;
+		this.columnFilter= null;
+	}
+
+	/*   M e t h o d s   */
+
+	/** Return the next record passing all the filters or null if there are no more records.
+	 * */
+	protected SAMRecord next() throws IOException{
+		if( ! this.hasAwk){
+			while(this.source.hasNext()){
+				SAMRecord rec= this.source.next();
+				if(this.passFilters(rec)){
+					return rec;
+				}
+			}
+			return null;
+		}
+		while(this.awkPassedIdx >= this.awkPassed.size()){
+			if( ! this.source.hasNext()){
+				return null;
+			}
+			this.fillAwkChunk();
+		}
+		SAMRecord rec= this.awkPassed.get(this.awkPassedIdx);
+		this.awkPassed.set(this.awkPassedIdx, null); // Release as we go
+		this.awkPassedIdx++;
+		return rec;
+	}
+
+	/** Collect up to AWK_CHUNK_SIZE records passing the non-awk filters and
+	 * keep the ones also passing awk.
+	 * */
+	private void fillAwkChunk() throws IOException{
+		List<SAMRecord> chunk= new ArrayList<SAMRecord>();
+		List<String> rawLines= new ArrayList<String>();
+		while(this.source.hasNext() && chunk.size() < AWK_CHUNK_SIZE){
+			SAMRecord rec= this.source.next();
+			if(this.passFilters(rec)){
+				chunk.add(rec);
+				rawLines.add(rec.getSAMString().trim());
+			}
+		}
+		boolean[] awkResults= this.track.getFeatureFilter().getAwkProgram().pass(rawLines.toArray(new String[rawLines.size()]));
+		this.awkPassed= new ArrayList<SAMRecord>();
+		this.awkPassedIdx= 0;
+		for(int i= 0; i < chunk.size(); i++){
+			// Null if awk does more than filtering: Then no record passes
+			if(awkResults != null && awkResults[i]){
+				this.awkPassed.add(chunk.get(i));
+			}
+		}
+	}
+
+	/** True if the record passes sam flags, mapq, variant and grep filters.
+	 * The tests are ordered from cheapest to most expensive.
+	 * */
+	private boolean passFilters(SAMRecord rec){
+		if(rec.getReadUnmappedFlag() ||
+				rec.getAlignmentEnd() < rec.getAlignmentStart() ||
+				this.aggregateFilter.filterOut(rec)){
+			return false;
+		}
+		if(this.hasVariantFilter && ! this.track.isSNVRead(rec, this.track.getFeatureFilter().isVariantOnly())){
+			return false;
+		}
+		if(this.columnFilter != null && ! this.columnFilter.test(rec)){
+			return false;
+		}
+		if(this.hasShowRegex && ! this.track.getFeatureFilter().getShowGrep().find(rec)){
+			return false;
+		}
+		if(this.hasHideRegex && this.track.getFeatureFilter().getHideGrep().find(rec)){
+			return false;
+		}
+		return true;
+	}
+}
@@ -23,7 +23,7 @@ public class FormatGTF {
 
 	/* G E T T E R S */
 	
-	public static HashMap<Character, HashMap<String, Character>> getFeatureToTextCharDict(){
+	static {
 		
 		/* Map GTF features to characters. Forward capital LETTERS, reverse small letters  
 		 * Feature names are case insensitive */
@@ -62,8 +62,10 @@ public class FormatGTF {
 		featureToTextCharDict.put('+', fwdFeature);
 		featureToTextCharDict.put('-', revFeature);
 		featureToTextCharDict.put('.', unstrFeature);
-		
-		return featureToTextCharDict; 
+	}
+
+	public static HashMap<Character, HashMap<String, Character>> getFeatureToTextCharDict(){
+		return featureToTextCharDict;
 	}
 	
 	/* M E T H O D S */
@@ -110,7 +112,7 @@ public class FormatGTF {
 //		return sb.toString();
 //	}
 
-	protected static Set<String> getTxSuperFeatures() {
+	static {
 
 		// Features that define a record as a transcript:
 		// Manually extracted from ensembl Homo_sapiens.GRCh38.86.chromosome.7.gff3.gz  
@@ -121,11 +123,13 @@ public class FormatGTF {
 		txSuperFeatures.add("NMD_transcript_variant");
 		txSuperFeatures.add("pseudogenic_transcript");
 		txSuperFeatures.add("lincrna");
+	}
 
+	protected static Set<String> getTxSuperFeatures(){
 		return txSuperFeatures;
 	}
 
-	protected static Set<String> getTxSubFeatures() {
+	static {
 		
 		// Features that make part of a transcript.
 		// Order matters: Put first the features that should be overwritten on screen by later features. 
@@ -139,7 +143,9 @@ public class FormatGTF {
 		txSubFeatures.add("cds");
 		txSubFeatures.add("start_codon");
 		txSubFeatures.add("stop_codon");
-		
+	}
+
+	protected static Set<String> getTxSubFeatures(){
 		return txSubFeatures;
 	}
 }
@@ -21,6 +21,9 @@ import org.apache.commons.io.FilenameUtils;
 import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 
+import coloring.AnsiEncoder;
+import coloring.Config;
+import coloring.ConfigKey;
 import exceptions.InvalidColourException;
 import exceptions.InvalidGenomicCoordsException;
 import htsjdk.variant.variantcontext.Allele;
@@ -429,18 +432,23 @@ class GenotypeMatrix {
     		String printName= cleanNames.get(j).replaceAll(this.subSampleRegex.get("pattern"), this.subSampleRegex.get("replacement"));
     		List<FeatureChar> fmtName = this.formatName(printName); 
     		List<FeatureChar> row = this.matrix.get(sample);
+    		AnsiEncoder enc= new AnsiEncoder(noFormat ? 0 : Config.get256Color(ConfigKey.background));
     		for(int i= 0; i < row.size(); i++){
     			if(i < fmtName.size()){
-    				sb.append(fmtName.get(i).format(noFormat));
+    				fmtName.get(i).appendTo(enc, noFormat);
     			} else {
     				FeatureChar gt = this.matrix.get(sample).get(i);
-        			sb.append(gt.format(noFormat));	
+        			gt.appendTo(enc, noFormat);	
     			}
     		}
+    		sb.append(enc.toString()); // Reset formatting at the end of the row
     		sb.append("\n");
     		// Limit by number of samples.
     	}
-    	return sb.toString().replaceAll("\n$", "");
+    	if(sb.length() > 0){
+    		sb.setLength(sb.length() - 1); // Trailing newline
+    	}
+    	return sb.toString();
     }
     
     private List<FeatureChar> formatName(String name){
@@ -0,0 +1,301 @@
+package tracks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import htsjdk.tribble.index.tabix.TabixFormat;
+import samTextViewer.Utils;
+
+/** Interval index held in memory for small bed, gtf and gff files without a tabix index.
+ * The file is read once and nothing is written to disk. Queries return the same lines,
+ * in the same order, as a TabixReader on the file sorted and indexed by MakeTabixIndex.
+ *
+ * The intervals of each chromosome are arranged in a nested containment list
+ * (Alekseyenko and Lee, Bioinformatics 2007): Intervals contained in another one are
+ * moved to the sublist of their parent so that each list is sorted by both start and end
+ * and can be binary searched.
+ * */
+class MemoryIntervalIndex {
+
+	private final Map<String, ChromIndex> chroms= new LinkedHashMap<String, ChromIndex>();
+
+	private MemoryIntervalIndex(){
+
+	}
+
+	/*   C o n s t r u c t o r s   */
+
+	/** Read and index the local file filename, possibly gzipped, in format BED or GFF. Return
+	 * null, having read at most maxBytes characters, if the file is larger than that.
+	 * Like MakeTabixIndex, empty lines, track lines and comments are skipped, reading stops
+	 * at ##FASTA and lines with invalid coordinates are skipped with a warning.
+	 * */
+	protected static MemoryIntervalIndex load(String filename, TabixFormat fmt, long maxBytes) throws IOException{
+
+		if( ! filename.endsWith(".gz") && ! filename.endsWith(".bgz") && new File(filename).length() > maxBytes){
+			return null;
+		}
+		int begCol= fmt.equals(TabixFormat.BED) ? 1 : 3;
+
+		Map<String, Builder> builders= new LinkedHashMap<String, Builder>();
+		boolean sorted= true;
+		Builder last= null;
+		long nBytes= 0;
+		int nWarnings= 10;
+
+		BufferedReader br= Utils.reader(filename);
+		try{
+			String line;
+			while((line= br.readLine()) != null){
+				nBytes += line.length() + 1;
+				if(nBytes > maxBytes){
+					return null;
+				}
+				line= line.trim();
+				if(line.isEmpty() || line.startsWith("track ")){
+					continue;
+				}
+				if(line.startsWith("##FASTA")){
+					break;
+				}
+				if(line.startsWith("#")){
+					continue;
+				}
+				String[] tabs= line.split("\t", begCol + 3);
+				int beg;
+				int end;
+				try{
+					if(tabs.length < begCol + 2){
+						throw new NumberFormatException("Expected at least " + (begCol + 2) + " columns");
+					}
+					// As TabixReader: 0-based start and exclusive end
+					beg= Integer.parseInt(tabs[begCol]);
+					end= Integer.parseInt(tabs[begCol + 1]);
+				} catch(NumberFormatException e){
+					if(nWarnings >= 0){
+						System.err.println("Warning: " + e.getMessage() + ". Skipping:\n" + line);
+					}
+					if(nWarnings == 0){
+						System.err.println("Additional warnings will not be show.");
+					}
+					nWarnings--;
+					continue;
+				}
+				if( ! fmt.equals(TabixFormat.BED)){
+					beg--;
+				}
+				beg= Math.max(0, beg);
+				end= Math.max(1, end);
+
+				Builder b= builders.get(tabs[0]);
+				if(b == null){
+					b= new Builder();
+					builders.put(tabs[0], b);
+				} else if(b != last || beg < b.lastBeg){
+					// Chromosome not contiguous or positions decreasing
+					sorted= false;
+				}
+				b.add(line, beg, end);
+				last= b;
+			}
+		} finally {
+			br.close();
+		}
+
+		MemoryIntervalIndex index= new MemoryIntervalIndex();
+		for(Map.Entry<String, Builder> x : builders.entrySet()){
+			index.chroms.put(x.getKey(), x.getValue().build(sorted));
+		}
+		return index;
+	}
+
+	/*   M e t h o d s   */
+
+	/** Lines overlapping the interval [beg, end) with beg 0-based, as TabixReader.query().*/
+	protected List<String> query(String chrom, int beg, int end){
+		ChromIndex idx= this.chroms.get(chrom);
+		if(idx == null){
+			return new ArrayList<String>();
+		}
+		return idx.query(Math.max(0, beg), end);
+	}
+
+	protected Set<String> getChromosomes(){
+		return new LinkedHashSet<String>(this.chroms.keySet());
+	}
+
+	/*   I n d e x   o f   o n e   c h r o m o s o m e   */
+
+	/** Lines of one chromosome in input order, before indexing*/
+	private static class Builder {
+		private final List<String> lines= new ArrayList<String>();
+		private int[] begs= new int[16];
+		private int[] ends= new int[16];
+		private int lastBeg= 0;
+
+		void add(String line, int beg, int end){
+			int n= this.lines.size();
+			if(n == this.begs.length){
+				this.begs= Arrays.copyOf(this.begs, 2 * n);
+				this.ends= Arrays.copyOf(this.ends, 2 * n);
+			}
+			this.lines.add(line);
+			this.begs[n]= beg;
+			this.ends[n]= end;
+			this.lastBeg= beg;
+		}
+
+		/** If the file is not sorted, order lines by start then end as MakeTabixIndex does.
+		 * Otherwise keep them in input order.*/
+		ChromIndex build(boolean sorted){
+			final int n= this.lines.size();
+			Integer[] order= new Integer[n];
+			for(int i= 0; i < n; i++){
+				order[i]= i;
+			}
+			if( ! sorted){
+				final int[] b= this.begs;
+				final int[] e= this.ends;
+				// Stable sort
+				Arrays.sort(order, new Comparator<Integer>() {
+					@Override
+					public int compare(Integer i, Integer j) {
+						if(b[i] != b[j]){
+							return b[i] < b[j] ? -1 : 1;
+						}
+						return e[i] < e[j] ? -1 : (e[i] == e[j] ? 0 : 1);
+					}
+				});
+			}
+			ChromIndex idx= new ChromIndex(n);
+			for(int i= 0; i < n; i++){
+				idx.lines[i]= this.lines.get(order[i]);
+				idx.begs[i]= this.begs[order[i]];
+				idx.ends[i]= this.ends[order[i]];
+			}
+			idx.nest();
+			return idx;
+		}
+	}
+
+	/** Intervals of one chromosome. Arrays are in output order and the containment lists
+	 * hold indexes into them.*/
+	private static class ChromIndex {
+		private final String[] lines;
+		private final int[] begs;
+		private final int[] ends;
+		/** Intervals not contained in any other*/
+		private int[] top;
+		/** Intervals directly contained in interval i, null if none*/
+		private final int[][] sub;
+
+		ChromIndex(int n){
+			this.lines= new String[n];
+			this.begs= new int[n];
+			this.ends= new int[n];
+			this.sub= new int[n][];
+		}
+
+		/** Build the containment lists. Intervals are visited by start ascending and end
+		 * descending, so that each one comes after the intervals containing it, and
+		 * attached to the innermost one.*/
+		void nest(){
+			int n= this.lines.length;
+			Integer[] order= new Integer[n];
+			for(int i= 0; i < n; i++){
+				order[i]= i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer i, Integer j) {
+					if(begs[i] != begs[j]){
+						return begs[i] < begs[j] ? -1 : 1;
+					}
+					if(ends[i] != ends[j]){
+						return ends[i] > ends[j] ? -1 : 1;
+					}
+					return i < j ? -1 : (i == j ? 0 : 1);
+				}
+			});
+			List<Integer> top= new ArrayList<Integer>();
+			List<List<Integer>> children= new ArrayList<List<Integer>>(n);
+			for(int i= 0; i < n; i++){
+				children.add(null);
+			}
+			int[] stack= new int[n];
+			int depth= 0;
+			for(int i : order){
+				while(depth > 0 && this.ends[stack[depth - 1]] < this.ends[i]){
+					depth--;
+				}
+				if(depth == 0){
+					top.add(i);
+				} else {
+					int parent= stack[depth - 1];
+					if(children.get(parent) == null){
+						children.set(parent, new ArrayList<Integer>());
+					}
+					children.get(parent).add(i);
+				}
+				stack[depth++]= i;
+			}
+			this.top= toArray(top);
+			for(int i= 0; i < n; i++){
+				if(children.get(i) != null){
+					this.sub[i]= toArray(children.get(i));
+				}
+			}
+		}
+
+		List<String> query(int beg, int end){
+			List<Integer> hits= new ArrayList<Integer>();
+			this.collect(this.top, beg, end, hits);
+			Collections.sort(hits);
+			List<String> out= new ArrayList<String>(hits.size());
+			for(int i : hits){
+				out.add(this.lines[i]);
+			}
+			return out;
+		}
+
+		/** Add to hits the intervals in list, and in their sublists, overlapping [beg, end)*/
+		private void collect(int[] list, int beg, int end, List<Integer> hits){
+			// In a list ends are increasing: Find the first one past beg
+			int lo= 0;
+			int hi= list.length;
+			while(lo < hi){
+				int mid= (lo + hi) >>> 1;
+				if(this.ends[list[mid]] > beg){
+					hi= mid;
+				} else {
+					lo= mid + 1;
+				}
+			}
+			for(int k= lo; k < list.length && this.begs[list[k]] < end; k++){
+				int i= list[k];
+				hits.add(i);
+				if(this.sub[i] != null){
+					this.collect(this.sub[i], beg, end, hits);
+				}
+			}
+		}
+
+		private static int[] toArray(List<Integer> x){
+			int[] a= new int[x.size()];
+			for(int i= 0; i < a.length; i++){
+				a[i]= x.get(i);
+			}
+			return a;
+		}
+	}
+}
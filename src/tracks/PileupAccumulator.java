@@ -0,0 +1,235 @@
+package tracks;
+
+import htsjdk.samtools.CigarElement;
+import htsjdk.samtools.CigarOperator;
+import htsjdk.samtools.SAMRecord;
+
+/** Base counts over a contiguous interval of a chromosome, stored as primitive arrays
+ * indexed by offset from the start of the interval. There is one array of counters
+ * for each combination of base (A, C, G, T, N and D for deletion), strand and mate,
+ * plus one array for the total depth. Adding a base does not allocate.
+ *
+ * Per-base counters are needed only for the consensus sequence so they can be omitted
+ * to save memory when only the depth is wanted.
+ * */
+class PileupAccumulator {
+
+	protected static final int A= 0;
+	protected static final int C= 1;
+	protected static final int G= 2;
+	protected static final int T= 3;
+	protected static final int N= 4;
+	protected static final int D= 5;
+	private static final char[] BASES= {'A', 'C', 'G', 'T', 'N', 'D'};
+	/** Order used to break ties between bases with the same count. This is the order in
+	 * which the previous Locus class, based on a HashMap, happened to return the bases. */
+	private static final int[] TIE_ORDER= {A, C, T, D, G, N};
+	/** Map read base to base index. Anything other than ACGT is N*/
+	private static final int[] BASE_INDEX= new int[256];
+	static {
+		for(int i= 0; i < BASE_INDEX.length; i++){
+			BASE_INDEX[i]= N;
+		}
+		BASE_INDEX['A']= A; BASE_INDEX['a']= A;
+		BASE_INDEX['C']= C; BASE_INDEX['c']= C;
+		BASE_INDEX['G']= G; BASE_INDEX['g']= G;
+		BASE_INDEX['T']= T; BASE_INDEX['t']= T;
+	}
+
+	private static final int MIN_DEPTH_ALT= 3; // Min read depth for alternative allele to be taken into account
+	private static final double MIN_PCT_ALT= 0.01; // Min % of alternative allele to be taken into account
+	private static final double MIN_PCT_TOT= 0.98; // % (Reference + Alternative) must be above this otherwise set consensus to N.
+
+	private final String chrom;
+	private final int from;
+	private final int to;
+	private final int[] depth;
+	/** counts[base * 4 + strand * 2 + mate][offset] */
+	private final int[][] counts;
+
+	/*   C O N S T R U C T O R   */
+
+	/** Accumulator for chrom:from-to, 1-based and inclusive. If withBaseCounts is false only
+	 * the depth is collected.
+	 * */
+	protected PileupAccumulator(String chrom, int from, int to, boolean withBaseCounts){
+		this.chrom= chrom;
+		this.from= from;
+		this.to= to;
+		int len= to - from + 1;
+		this.depth= new int[len];
+		if(withBaseCounts){
+			this.counts= new int[BASES.length * 4][len];
+		} else {
+			this.counts= null;
+		}
+	}
+
+	/*  M E T H O D S  */
+
+	/** Index of the given read base, e.g. as returned by SAMRecord.getReadBases().
+	 * */
+	protected static int baseIndex(byte base){
+		return BASE_INDEX[base & 0xFF];
+	}
+
+	/** Count base, one of A, C, G, T, N, D, at position pos.
+	 * */
+	protected void add(int pos, int base, boolean isReverse, boolean isFirstOfPair){
+		int offset= pos - this.from;
+		this.depth[offset]++;
+		if(this.counts != null){
+			this.counts[(base << 2) | ((isReverse ? 1 : 0) << 1) | (isFirstOfPair ? 1 : 0)][offset]++;
+		}
+	}
+
+	/** Add the bases in this record, including deletions. Only positions between qryFrom
+	 * and qryTo are counted. Records added to disjoint qryFrom-qryTo intervals touch disjoint
+	 * counters so they can be added from different threads.
+	 * */
+	protected void add(SAMRecord samRecord, int qryFrom, int qryTo){
+		
+		// Is this read forward or reverse? First or second in pair?
+		boolean isFirstOFPair= ! (samRecord.getReadPairedFlag() && samRecord.getFirstOfPairFlag());
+		boolean isReverse= samRecord.getReadNegativeStrandFlag();
+		
+		byte[] readBases= samRecord.getReadBases();
+		int readPos= 0; // 0-based position on the read
+		int refPos= samRecord.getAlignmentStart(); 
+		for(CigarElement el : samRecord.getCigar().getCigarElements()){
+			if(refPos > qryTo){
+				break; // We have passed the user's endpoint, no need to process this record anymore
+			}
+			CigarOperator op= el.getOperator();
+			int len= el.getLength();
+			if(op == CigarOperator.M || op == CigarOperator.EQ || op == CigarOperator.X){
+				int start= Math.max(refPos, qryFrom);
+				int end= Math.min(refPos + len - 1, qryTo);
+				for(int pos= start; pos <= end; pos++){
+					int base= readBases.length == 0 ? N : baseIndex(readBases[readPos + pos - refPos]);
+					this.add(pos, base, isReverse, isFirstOFPair);
+				}
+			} else if(op == CigarOperator.DELETION){
+				// Deletion does not consume read bases. It consumes reference bases:
+				// ref  NNNNNNNN
+				// read NNN---NN
+				int start= Math.max(refPos, qryFrom);
+				int end= Math.min(refPos + len - 1, qryTo);
+				for(int pos= start; pos <= end; pos++){
+					this.add(pos, D, isReverse, isFirstOFPair);
+				}
+			}
+			if(op.consumesReadBases()){
+				readPos += len;
+			}
+			if(op.consumesReferenceBases()){
+				refPos += len;
+			}
+		}
+	}
+
+	protected int getDepth(int pos){
+		return this.depth[pos - this.from];
+	}
+
+	/** Copy the counts in the overlap between this and other accumulator into this one.
+	 * Return true if anything has been copied.
+	 * */
+	protected boolean copyOverlap(PileupAccumulator other){
+		if( ! this.chrom.equals(other.chrom) || (this.counts != null && other.counts == null)){
+			return false;
+		}
+		int ovFrom= Math.max(this.from, other.from);
+		int ovTo= Math.min(this.to, other.to);
+		if(ovFrom > ovTo){
+			return false;
+		}
+		int len= ovTo - ovFrom + 1;
+		System.arraycopy(other.depth, ovFrom - other.from, this.depth, ovFrom - this.from, len);
+		if(this.counts != null){
+			for(int i= 0; i < this.counts.length; i++){
+				System.arraycopy(other.counts[i], ovFrom - other.from, this.counts[i], ovFrom - this.from, len);
+			}
+		}
+		return true;
+	}
+
+	private int getBaseCount(int offset, int base){
+		int b= base << 2;
+		return this.counts[b][offset] + this.counts[b | 1][offset] + this.counts[b | 2][offset] + this.counts[b | 3][offset];
+	}
+
+	/** Call consensus base at position pos. Return ' ' if there is no coverage.
+	 * Requires the accumulator to have been created with base counts.
+	 * */
+	protected char getConsensus(int pos){
+
+		int offset= pos - this.from;
+		int depth= this.depth[offset];
+		if(depth == 0){
+			return ' ';
+		}
+		// Find the two most frequent bases
+		int allele1= -1;
+		int allele2= -1;
+		int count1= -1;
+		int count2= -1;
+		for(int base : TIE_ORDER){
+			int n= this.getBaseCount(offset, base);
+			if(n > count1){
+				allele2= allele1; count2= count1;
+				allele1= base; count1= n;
+			} else if(n > count2){
+				allele2= base; count2= n;
+			}
+		}
+		// Is allele2 supported by at least n calls?
+		// Is allele2 making up more than x % of the total?
+		char consensus;
+		if(count1 == 0){
+			consensus= ' ';
+		}
+		else if((float)(count1 + count2)/depth < MIN_PCT_TOT){
+			consensus= 'N';
+		} else if(count2 >= MIN_DEPTH_ALT
+				&& (float)count2/depth >= MIN_PCT_ALT ){
+			consensus= this.iupacAmbiguity(BASES[allele1], BASES[allele2]);
+		} else {
+			consensus= BASES[allele1];
+		}
+		return consensus;
+	}
+
+	private char iupacAmbiguity(char x, char y){
+
+		if((x == 'A' && y == 'G') || (x == 'G' && y == 'A')){ return 'R'; }
+		if((x == 'C' && y == 'T') || (x == 'T' && y == 'C')){ return 'Y'; }
+		if((x == 'G' && y == 'C') || (x == 'C' && y == 'G')){ return 'S'; }
+		if((x == 'A' && y == 'T') || (x == 'T' && y == 'A')){ return 'W'; }
+		if((x == 'G' && y == 'T') || (x == 'T' && y == 'G')){ return 'K'; }
+		if((x == 'A' && y == 'C') || (x == 'C' && y == 'A')){ return 'M'; }
+		return 'N';
+	}
+
+	protected String getChrom(){
+		return this.chrom;
+	}
+
+	protected int getFrom(){
+		return this.from;
+	}
+
+	protected int getTo(){
+		return this.to;
+	}
+
+	protected boolean hasBaseCounts(){
+		return this.counts != null;
+	}
+
+	/** Approximate memory used by the counters, in bytes*/
+	protected long getBytes(){
+		long len= this.depth.length;
+		return this.counts == null ? 4 * len : 4 * len * (1 + this.counts.length);
+	}
+}
@@ -0,0 +1,191 @@
+package tracks;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Cache of pileup counts in fixed size genomic tiles. A tile is cached once computed,
+ * also if it has no coverage at all, so that moving back to a region already visited
+ * doesn't require to read alignments again. Tiles are evicted in least recently used
+ * order once their estimated size exceeds the memory budget, except the tiles of the
+ * window being computed.
+ * */
+class PileupTileCache {
+
+	protected static final int TILE_SIZE= 1000;
+	/** Default memory budget in bytes*/
+	protected static final long DEFAULT_MAX_BYTES= 64 * 1024 * 1024;
+
+	/** A computed tile. acc is null if the tile has no coverage.*/
+	private static class Tile {
+		String chrom;
+		int start;
+		PileupAccumulator acc;
+		boolean hasBaseCounts;
+		long bytes;
+	}
+
+	private final long maxBytes;
+	private long bytes= 0;
+	private long hits= 0;
+	private long misses= 0;
+	/** Key: chrom and tile index. Iteration order is from least to most recently used. */
+	private final LinkedHashMap<String, Tile> tiles= new LinkedHashMap<String, Tile>(16, 0.75f, true);
+
+	/*   C o n s t r u c t o r s   */
+
+	protected PileupTileCache(long maxBytes){
+		this.maxBytes= maxBytes;
+	}
+
+	/*   M e t h o d s   */
+
+	/** First position of the tile containing pos*/
+	protected static int tileStart(int pos){
+		return ((pos - 1) / TILE_SIZE) * TILE_SIZE + 1;
+	}
+
+	/** Last position of the tile containing pos*/
+	protected static int tileEnd(int pos){
+		return tileStart(pos) + TILE_SIZE - 1;
+	}
+
+	private String key(String chrom, int pos){
+		return chrom + ":" + ((pos - 1) / TILE_SIZE);
+	}
+
+	/** Copy the cached tiles overlapping acc into acc and return the intervals, aligned to
+	 * tile boundaries, that still need to be computed. Adjacent missing tiles are merged
+	 * in a single interval. Tiles without per-base counts are treated as missing if acc
+	 * wants them.
+	 * */
+	protected List<int[]> fill(PileupAccumulator acc){
+		List<int[]> missing= new ArrayList<int[]>();
+		int[] current= null;
+		for(int start= tileStart(acc.getFrom()); start <= acc.getTo(); start += TILE_SIZE){
+			Tile tile= this.tiles.get(this.key(acc.getChrom(), start));
+			if(tile != null && (tile.hasBaseCounts || ! acc.hasBaseCounts())){
+				this.hits++;
+				if(tile.acc != null){
+					acc.copyOverlap(tile.acc);
+				}
+				current= null;
+			} else {
+				this.misses++;
+				if(current == null){
+					current= new int[] {start, start + TILE_SIZE - 1};
+					missing.add(current);
+				} else {
+					current[1]= start + TILE_SIZE - 1;
+				}
+			}
+		}
+		return missing;
+	}
+
+	/** Start of the tiles in chrom:from-to that are not cached, or cached without per-base
+	 * counts if hasBaseCounts. Unlike fill(), hits and misses are not counted.
+	 * */
+	protected List<Integer> missing(String chrom, int from, int to, boolean hasBaseCounts){
+		List<Integer> missing= new ArrayList<Integer>();
+		for(int start= tileStart(from); start <= to; start += TILE_SIZE){
+			Tile tile= this.tiles.get(this.key(chrom, start));
+			if(tile == null || (hasBaseCounts && ! tile.hasBaseCounts)){
+				missing.add(start);
+			}
+		}
+		return missing;
+	}
+
+	/** True if a tile of the given size can be added without evicting any other*/
+	protected boolean fits(long tileBytes){
+		return this.bytes + tileBytes + 64 <= this.maxBytes;
+	}
+
+	/** Split the computed counts into tiles and cache them. The interval of computed must
+	 * be aligned to tile boundaries, as returned by fill().
+	 * */
+	protected void put(PileupAccumulator computed){
+		this.put(computed, computed.getFrom(), computed.getTo());
+	}
+
+	/** As put(computed) but tiles of the window chrom:winFrom-winTo, the chromosome of 
+	 * computed, are not evicted to make room. Nothing is cached if computed alone is larger 
+	 * than the budget, and tiles stop being added when there is no more room.
+	 * */
+	protected void put(PileupAccumulator computed, int winFrom, int winTo){
+		if(computed.getBytes() > this.maxBytes){
+			return;
+		}
+		for(int start= computed.getFrom(); start <= computed.getTo(); start += TILE_SIZE){
+			int end= start + TILE_SIZE - 1;
+			Tile tile= new Tile();
+			tile.chrom= computed.getChrom();
+			tile.start= start;
+			tile.hasBaseCounts= computed.hasBaseCounts();
+			boolean hasCoverage= false;
+			for(int pos= start; pos <= end && pos <= computed.getTo(); pos++){
+				if(computed.getDepth(pos) > 0){
+					hasCoverage= true;
+					break;
+				}
+			}
+			if(hasCoverage){
+				tile.acc= new PileupAccumulator(computed.getChrom(), start, end, computed.hasBaseCounts());
+				tile.acc.copyOverlap(computed);
+				tile.bytes= tile.acc.getBytes();
+			}
+			tile.bytes += 64; // Rough overhead of key, entry and tile objects
+			String key= this.key(computed.getChrom(), start);
+			Tile old= this.tiles.remove(key);
+			if(old != null){
+				this.bytes -= old.bytes;
+			}
+			if( ! this.evict(tile.bytes, tile.chrom, winFrom, winTo)){
+				return;
+			}
+			this.tiles.put(key, tile);
+			this.bytes += tile.bytes;
+		}
+	}
+
+	/** Remove least recently used tiles, not in chrom:winFrom-winTo, until there is room for 
+	 * tileBytes. Return false if there is not enough room even so.*/
+	private boolean evict(long tileBytes, String chrom, int winFrom, int winTo){
+		Iterator<Map.Entry<String, Tile>> iter= this.tiles.entrySet().iterator();
+		while(this.bytes + tileBytes > this.maxBytes && iter.hasNext()){
+			Tile tile= iter.next().getValue();
+			if(tile.chrom.equals(chrom) && tile.start >= winFrom && tile.start <= winTo){
+				continue;
+			}
+			this.bytes -= tile.bytes;
+			iter.remove();
+		}
+		return this.bytes + tileBytes <= this.maxBytes;
+	}
+
+	protected void clear(){
+		this.tiles.clear();
+		this.bytes= 0;
+	}
+
+	/** Number of tiles served from cache*/
+	protected long getHits(){
+		return this.hits;
+	}
+
+	/** Number of tiles requested and not found in cache*/
+	protected long getMisses(){
+		return this.misses;
+	}
+
+	protected long getBytes(){
+		return this.bytes;
+	}
+
+	protected int size(){
+		return this.tiles.size();
+	}
+}
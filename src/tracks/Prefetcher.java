@@ -0,0 +1,168 @@
+package tracks;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import samTextViewer.GenomicCoords;
+
+/** Read ahead, while waiting for user input, the data of the windows the user is likely
+ * to move to next. Panning right and left is the most common move so these windows come
+ * first, then zoom in and zoom out. Tracks keep what is read in their own caches, see
+ * Track.prefetch().
+ * Reading runs on a background thread and stops as soon as input arrives. The data read
+ * in one idle period is capped to a memory budget.
+ * */
+public class Prefetcher {
+
+	/** Default memory budget in bytes for the data read in one idle period*/
+	public static final long DEFAULT_MAX_BYTES= 128 * 1024 * 1024;
+
+	/** Prefetcher reading at the moment, cancelled by input*/
+	private static volatile Prefetcher running= null;
+
+	private final List<Track> tracks;
+	private final List<GenomicCoords> windows;
+	private final long maxBytes;
+	private long bytes= 0;
+	private volatile boolean cancelled= false;
+	private Thread thread= null;
+
+	/*   C o n s t r u c t o r s   */
+
+	/** Prepare to read ahead the windows reached from current by the commands r, l, zi and zo,
+	 * as these commands compute them for the given terminal width.
+	 * */
+	public Prefetcher(List<Track> tracks, GenomicCoords current, int terminalWidth, long maxBytes){
+		this.tracks= new ArrayList<Track>(tracks);
+		this.windows= nextWindows(current, terminalWidth);
+		this.maxBytes= maxBytes;
+	}
+
+	/*   M e t h o d s   */
+
+	/** Windows reached from current by the commands r, l, zi, zo, in this order. Windows
+	 * equal to current, e.g. when zoomed in to the maximum, are skipped.
+	 * */
+	protected static List<GenomicCoords> nextWindows(GenomicCoords current, int terminalWidth){
+		List<GenomicCoords> windows= new ArrayList<GenomicCoords>();
+		for(String move : new String[] {"r", "l", "zi", "zo"}){
+			GenomicCoords gc= (GenomicCoords) current.clone();
+			try{
+				gc.setTerminalWidth(terminalWidth);
+				if(move.equals("r")){
+					gc.right();
+				} else if(move.equals("l")){
+					gc.left();
+				} else if(move.equals("zi")){
+					gc.zoomIn();
+				} else {
+					gc.zoomOut();
+				}
+			} catch(Exception e){
+				// Not a valid window: Nothing to read ahead
+				continue;
+			}
+			if( ! gc.equalCoords(current)){
+				windows.add(gc);
+			}
+		}
+		return windows;
+	}
+
+	/** Start reading on a background thread. Tracks must not be updated until stop() returns.*/
+	public void start(){
+		running= this;
+		this.thread= new Thread(new Runnable() {
+			@Override
+			public void run() {
+				prefetchAll();
+			}
+		}, "prefetch");
+		this.thread.setDaemon(true);
+		this.thread.setPriority(Thread.MIN_PRIORITY);
+		this.thread.start();
+	}
+
+	private void prefetchAll(){
+		for(GenomicCoords gc : this.windows){
+			for(Track track : this.tracks){
+				if(this.cancelled){
+					return;
+				}
+				try{
+					track.prefetch(gc, this);
+				} catch(Exception e){
+					// Reading ahead is best effort: The track reads again on update
+				}
+			}
+		}
+	}
+
+	/** Ask the reading thread to stop as soon as possible. Return immediately.*/
+	public void cancel(){
+		this.cancelled= true;
+	}
+
+	/** Cancel and wait for the reading thread to finish. Then tracks can be updated.*/
+	public void stop(){
+		this.cancel();
+		if(this.thread != null){
+			try {
+				this.thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if(running == this){
+			running= null;
+		}
+	}
+
+	protected boolean isCancelled(){
+		return this.cancelled;
+	}
+
+	/** Add n bytes to the data read so far. Return false, without adding, if this exceeds
+	 * the memory budget.*/
+	protected boolean reserve(long n){
+		if(this.bytes + n > this.maxBytes){
+			return false;
+		}
+		this.bytes += n;
+		return true;
+	}
+
+	protected List<GenomicCoords> getWindows(){
+		return this.windows;
+	}
+
+	/** Wrap the input stream of the console so that reading ahead is cancelled as soon as
+	 * a key is pressed.
+	 * */
+	public static InputStream cancelOnInput(InputStream in){
+		return new FilterInputStream(in) {
+			@Override
+			public int read() throws IOException {
+				int c= super.read();
+				cancelRunning();
+				return c;
+			}
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				int n= super.read(b, off, len);
+				cancelRunning();
+				return n;
+			}
+		};
+	}
+
+	private static void cancelRunning(){
+		Prefetcher p= running;
+		if(p != null){
+			p.cancel();
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package tracks;
+
+import java.util.regex.Pattern;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecord.SAMTagAndValue;
+import htsjdk.samtools.TextTagCodec;
+
+/** A grep pattern for sam records. The pattern can be restricted to one field of the
+ * record, e.g. the read name, the cigar or a tag, so that only that field is formatted
+ * instead of the whole sam line.
+ *
+ * Patterns without regex metacharacters, or compiled with Pattern.LITERAL, are searched
+ * as plain strings without going through java.util.regex. A plain string without tabs
+ * is also searched in the whole record one field at a time, stopping at the first match.
+ * */
+class ReadGrep {
+
+	/** Names of the mandatory sam fields, in order, accepted as scope*/
+	private static final String[] FIELDS= {"qname", "flag", "rname", "pos", "mapq", "cigar",
+			"rnext", "pnext", "tlen", "seq", "qual"};
+	private static final Pattern TAG= Pattern.compile("[A-Za-z][A-Za-z0-9]");
+	private static final String REGEX_META= "\\^$.|?*+()[]{}";
+
+	private final Pattern pattern;
+	private final String scope;
+	/** Mandatory field to search, 1 to 11, or 0 for the whole record or -1 for a tag*/
+	private final int field;
+	/** String to search, null if the pattern must be run as regex*/
+	private final String literal;
+	private final boolean caseInsensitive;
+	/** Shifts of the Boyer-Moore-Horspool search for case insensitive literals*/
+	private int[] shift;
+	private final TextTagCodec tagCodec= new TextTagCodec();
+
+	/*   C o n s t r u c t o r s   */
+
+	/** Search pattern in the given scope: Null for the whole sam line, the name
+	 * of a mandatory field, e.g. qname, cigar, or a tag, e.g. NM, RG.
+	 * */
+	protected ReadGrep(Pattern pattern, String scope){
+		if( ! isValidScope(scope)){
+			throw new IllegalArgumentException("Invalid field for grep: " + scope);
+		}
+		this.pattern= pattern;
+		this.scope= scope;
+		if(scope == null){
+			this.field= 0;
+		} else if(TAG.matcher(scope).matches()){
+			this.field= -1;
+		} else {
+			this.field= fieldIndex(scope);
+		}
+		this.caseInsensitive= (pattern.flags() & Pattern.CASE_INSENSITIVE) != 0;
+		this.literal= asLiteral(pattern);
+		if(this.literal != null && this.caseInsensitive){
+			this.shift= shiftTable(this.literal);
+		}
+	}
+
+	/*   M e t h o d s   */
+
+	/** True if scope is null, the name of a mandatory sam field or a tag name.*/
+	protected static boolean isValidScope(String scope){
+		return scope == null || TAG.matcher(scope).matches() || fieldIndex(scope) > 0;
+	}
+
+	private static int fieldIndex(String scope){
+		for(int i= 0; i < FIELDS.length; i++){
+			if(FIELDS[i].equalsIgnoreCase(scope)){
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	/** The string to search if the pattern has no regex syntax, null otherwise. Case
+	 * insensitive literals must be ASCII as the search folds only ASCII letters, like
+	 * java.util.regex does without UNICODE_CASE.*/
+	private static String asLiteral(Pattern pattern){
+		int flags= pattern.flags() & ~(Pattern.LITERAL | Pattern.CASE_INSENSITIVE);
+		if(flags != 0){
+			return null;
+		}
+		String p= pattern.pattern();
+		if((pattern.flags() & Pattern.LITERAL) == 0){
+			for(int i= 0; i < p.length(); i++){
+				if(REGEX_META.indexOf(p.charAt(i)) >= 0){
+					return null;
+				}
+			}
+		}
+		if((pattern.flags() & Pattern.CASE_INSENSITIVE) != 0){
+			for(int i= 0; i < p.length(); i++){
+				if(p.charAt(i) > 127){
+					return null;
+				}
+			}
+			return fold(p);
+		}
+		return p;
+	}
+
+	private static int[] shiftTable(String needle){
+		int m= needle.length();
+		int[] shift= new int[128];
+		for(int c= 0; c < shift.length; c++){
+			shift[c]= m;
+		}
+		for(int i= 0; i < m - 1; i++){
+			shift[needle.charAt(i)]= m - 1 - i;
+		}
+		return shift;
+	}
+
+	private static char fold(char c){
+		return c >= 'A' && c <= 'Z' ? (char)(c + 'a' - 'A') : c;
+	}
+
+	private static String fold(String s){
+		StringBuilder sb= new StringBuilder(s.length());
+		for(int i= 0; i < s.length(); i++){
+			sb.append(fold(s.charAt(i)));
+		}
+		return sb.toString();
+	}
+
+	/** True if the pattern is found in the scope of the record. False if the scope is
+	 * a tag missing from the record.*/
+	protected boolean find(SAMRecord rec){
+		if(this.field > 0){
+			return this.find(ColumnFilter.samField(rec, this.field));
+		}
+		if(this.field < 0){
+			Object value= rec.getAttribute(this.scope);
+			if(value == null){
+				return false;
+			}
+			// Skip the "XX:t:" prefix
+			return this.find(this.encodeTag(rec, this.scope, value).substring(5));
+		}
+		if(this.literal == null || this.literal.contains("\t") || this.literal.contains("\n")){
+			return this.find(rec.getSAMString().trim());
+		}
+		for(int i= 1; i <= FIELDS.length; i++){
+			if(this.find(ColumnFilter.samField(rec, i))){
+				return true;
+			}
+		}
+		for(SAMTagAndValue tag : rec.getAttributes()){
+			if(this.find(this.encodeTag(rec, tag.tag, tag.value))){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** True if the pattern is found in the string*/
+	protected boolean find(String text){
+		if(this.literal == null){
+			return this.pattern.matcher(text).find();
+		}
+		if( ! this.caseInsensitive){
+			return text.indexOf(this.literal) >= 0;
+		}
+		int m= this.literal.length();
+		int n= text.length();
+		if(m == 0){
+			return true;
+		}
+		int i= 0;
+		while(i <= n - m){
+			int j= m - 1;
+			while(j >= 0 && fold(text.charAt(i + j)) == this.literal.charAt(j)){
+				j--;
+			}
+			if(j < 0){
+				return true;
+			}
+			char last= fold(text.charAt(i + m - 1));
+			i += last < 128 ? this.shift[last] : m;
+		}
+		return false;
+	}
+
+	/** Tag as written in the sam line, e.g. NM:i:0*/
+	private String encodeTag(SAMRecord rec, String tag, Object value){
+		if(rec.isUnsignedArrayAttribute(tag)){
+			// Rare: Take it from the sam line as the codec method is not public
+			for(String x : rec.getSAMString().trim().split("\t")){
+				if(x.startsWith(tag + ":")){
+					return x;
+				}
+			}
+		}
+		return this.tagCodec.encode(tag, value);
+	}
+
+	protected Pattern getPattern(){
+		return this.pattern;
+	}
+
+	/** Null if the pattern applies to the whole record*/
+	protected String getScope(){
+		return this.scope;
+	}
+}
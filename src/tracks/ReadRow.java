@@ -0,0 +1,139 @@
+package tracks;
+
+import java.util.Arrays;
+
+import coloring.AnsiEncoder;
+import coloring.Config;
+import coloring.ConfigKey;
+import exceptions.InvalidColourException;
+
+/** One line of text of the read track. Reads write their characters, colours and
+ * attributes straight into these arrays so that no object is created per base. Colours
+ * are xterm256 codes, resolved from the configuration once when the row is created.
+ * The row can be cleared and reused for the next line.
+ *
+ * Cells never written are printed as unformatted blanks.
+ * */
+class ReadRow {
+
+	protected static final byte INVERT= AnsiEncoder.INVERT;
+	protected static final byte UNDERLINE= AnsiEncoder.UNDERLINE;
+	protected static final byte FORMATTED= 8;
+
+	// Colours from the configuration
+	protected final int foreground;
+	protected final int background;
+	protected final int shadeLowMapq;
+	protected final int shadeStructuralVariant;
+	protected final int methylatedBackground;
+	protected final int methylatedForeground;
+	protected final int unmethylatedBackground;
+	protected final int unmethylatedForeground;
+	protected final int seqA;
+	protected final int seqC;
+	protected final int seqG;
+	protected final int seqT;
+	protected final int positiveStrand;
+	protected final int negativeStrand;
+	protected final int shadeBaseq;
+
+	private char[] text= new char[0];
+	private byte[] fg= new byte[0];
+	private byte[] bg= new byte[0];
+	private byte[] attr= new byte[0];
+	/** Number of cells up to the last one written*/
+	private int length= 0;
+
+	/*   C o n s t r u c t o r s   */
+
+	protected ReadRow(int width) throws InvalidColourException{
+		this.foreground= xterm(ConfigKey.foreground);
+		this.background= xterm(ConfigKey.background);
+		this.shadeLowMapq= xterm(ConfigKey.shade_low_mapq);
+		this.shadeStructuralVariant= xterm(ConfigKey.shade_structural_variant);
+		this.methylatedBackground= xterm(ConfigKey.methylated_background);
+		this.methylatedForeground= xterm(ConfigKey.methylated_foreground);
+		this.unmethylatedBackground= xterm(ConfigKey.unmethylated_background);
+		this.unmethylatedForeground= xterm(ConfigKey.unmethylated_foreground);
+		this.seqA= xterm(ConfigKey.seq_a);
+		this.seqC= xterm(ConfigKey.seq_c);
+		this.seqG= xterm(ConfigKey.seq_g);
+		this.seqT= xterm(ConfigKey.seq_t);
+		this.positiveStrand= xterm(ConfigKey.feature_background_positive_strand);
+		this.negativeStrand= xterm(ConfigKey.feature_background_negative_strand);
+		this.shadeBaseq= Integer.parseInt(Config.get(ConfigKey.shade_baseq));
+		this.ensureCapacity(width);
+	}
+
+	/*   M e t h o d s   */
+
+	private static int xterm(ConfigKey key) throws InvalidColourException{
+		return Config.get256Color(key);
+	}
+
+	private void ensureCapacity(int n){
+		if(n > this.text.length){
+			int size= Math.max(n, 2 * this.text.length);
+			int old= this.text.length;
+			this.text= Arrays.copyOf(this.text, size);
+			this.fg= Arrays.copyOf(this.fg, size);
+			this.bg= Arrays.copyOf(this.bg, size);
+			this.attr= Arrays.copyOf(this.attr, size);
+			Arrays.fill(this.text, old, size, ' ');
+		}
+	}
+
+	/** Blank all cells */
+	protected void clear(){
+		Arrays.fill(this.text, 0, this.length, ' ');
+		Arrays.fill(this.attr, 0, this.length, (byte)0);
+		this.length= 0;
+	}
+
+	/** Set the cell at 0-based column col to a formatted character*/
+	protected void set(int col, char c, int fgColor, int bgColor, byte attributes){
+		this.ensureCapacity(col + 1);
+		this.text[col]= c;
+		this.fg[col]= (byte) fgColor;
+		this.bg[col]= (byte) bgColor;
+		this.attr[col]= (byte) (attributes | FORMATTED);
+		this.length= Math.max(this.length, col + 1);
+	}
+
+	protected char getText(int col){
+		return this.text[col];
+	}
+
+	protected void setText(int col, char c){
+		this.text[col]= c;
+	}
+
+	protected void addAttribute(int col, byte attributes){
+		this.attr[col] |= attributes;
+	}
+
+	protected int length(){
+		return this.length;
+	}
+
+	/** Printable string of the cells from 0-based column from (included) to to (excluded).
+	 * Cells past the last one written are blanks. If highlight is a column inside the
+	 * range and not blank, the character in it is shown in bold and reverse video.
+	 * */
+	protected String format(int from, int to, boolean noFormat, int highlight){
+		this.ensureCapacity(to);
+		if(noFormat){
+			return new String(this.text, from, to - from);
+		}
+		AnsiEncoder enc= new AnsiEncoder(this.background);
+		for(int i= from; i < to; i++){
+			int hl= (i == highlight && this.text[i] != ' ') ? AnsiEncoder.HIGHLIGHT : 0;
+			if((this.attr[i] & FORMATTED) == 0){
+				enc.appendPlain(this.text[i], hl);
+			} else {
+				enc.append(this.text[i], this.fg[i] & 0xFF, this.bg[i] & 0xFF, this.attr[i] | hl);
+			}
+		}
+		return enc.toString();
+	}
+}
@@ -0,0 +1,99 @@
+package tracks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import htsjdk.samtools.SAMRecord;
+import samTextViewer.Utils;
+
+/** Sample of at most maxReads records chosen in a single pass without knowing the number
+ * of records in advance. Each record gets the hash of its template name and the records
+ * with the smallest hashes are kept (bottom-k sampling). Mates have the same hash so they
+ * are kept or dropped together.
+ *
+ * Once the sample is full, records hashing above the largest hash in the sample are
+ * rejected straight away, so most records of a deep window cost only the hash of their name.
+ * */
+class ReadSampler {
+
+	/** A sampled record with its hash and its position in input order*/
+	private static class Sampled {
+		final SAMRecord rec;
+		final long hash;
+		final long order;
+		Sampled(SAMRecord rec, long hash, long order){
+			this.rec= rec;
+			this.hash= hash;
+			this.order= order;
+		}
+	}
+
+	private final int maxReads;
+	private final long seed;
+	/** Largest hash on top*/
+	private final PriorityQueue<Sampled> sample;
+	/** Records with hash greater or equal to this are not in the sample*/
+	private long threshold= Long.MAX_VALUE;
+	private long nRecs= 0;
+
+	/*   C o n s t r u c t o r s   */
+
+	/** Different seeds give different samples*/
+	protected ReadSampler(int maxReads, long seed){
+		this.maxReads= maxReads;
+		this.seed= seed;
+		this.sample= new PriorityQueue<Sampled>(Math.max(1, Math.min(maxReads, 1024)) + 1, new Comparator<Sampled>(){
+			@Override
+			public int compare(Sampled a, Sampled b) {
+				return Long.compare(b.hash, a.hash);
+			}
+		});
+	}
+
+	/*   M e t h o d s   */
+
+	protected void add(SAMRecord rec){
+		this.nRecs++;
+		if(this.maxReads <= 0){
+			return;
+		}
+		// Non-negative hash so that the initial threshold is above any of them
+		long hash= Utils.templateNameHash(rec.getReadName(), this.seed) >>> 1;
+		if(hash >= this.threshold){
+			return;
+		}
+		this.sample.add(new Sampled(rec, hash, this.nRecs));
+		while(this.sample.size() > this.maxReads){
+			// Drop all the records of the template with the largest hash
+			long drop= this.sample.peek().hash;
+			while( ! this.sample.isEmpty() && this.sample.peek().hash == drop){
+				this.sample.poll();
+			}
+			this.threshold= drop;
+		}
+	}
+
+	/** Number of records seen by add*/
+	protected long getCount(){
+		return this.nRecs;
+	}
+
+	/** The sampled records in the order they were added*/
+	protected List<SAMRecord> getSample(){
+		List<Sampled> sorted= new ArrayList<Sampled>(this.sample);
+		Collections.sort(sorted, new Comparator<Sampled>(){
+			@Override
+			public int compare(Sampled a, Sampled b) {
+				return Long.compare(a.order, b.order);
+			}
+		});
+		List<SAMRecord> recs= new ArrayList<SAMRecord>(sorted.size());
+		for(Sampled x : sorted){
+			recs.add(x.rec);
+		}
+		return recs;
+	}
+}
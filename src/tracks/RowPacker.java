@@ -0,0 +1,78 @@
+package tracks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Pack items on text rows so that items on the same row don't overlap. Items are taken
+ * in input order and each one goes to the first row where it fits, i.e. where it starts
+ * more than gap characters after the end of the last item in the row. A new row is
+ * opened if no row has space.
+ *
+ * This is the same layout given by filling the first row with as many items as
+ * possible, then the second row with the remaining items and so on. Here the end of each
+ * row is kept in a tree of minimum row ends so that the first row with space is found in
+ * log time rather than by scanning the remaining items once per row.
+ * */
+class RowPacker {
+
+	/** Text coordinates of an item. */
+	protected interface Extent<T> {
+		int getStart(T item);
+		int getEnd(T item);
+	}
+
+	private RowPacker(){
+	}
+
+	protected static <T> List<List<T>> pack(List<T> items, int gap, Extent<T> extent){
+		return pack(items, gap, extent, Integer.MAX_VALUE);
+	}
+
+	/** Pack items on at most maxRows rows. Items that would go on the following rows 
+	 * are left out. The rows returned are the same as the first maxRows rows of the 
+	 * full layout.
+	 * */
+	protected static <T> List<List<T>> pack(List<T> items, int gap, Extent<T> extent, int maxRows){
+
+		List<List<T>> rows= new ArrayList<List<T>>();
+		if(items.size() == 0 || maxRows <= 0){
+			return rows;
+		}
+		// Leaves are rows, each internal node holds the minimum end of the rows below it.
+		// Rows not opened yet never have space.
+		int nRows= Math.min(items.size(), maxRows);
+		int nLeaves= Integer.highestOneBit(nRows);
+		if(nLeaves < nRows){
+			nLeaves *= 2;
+		}
+		int[] minEnd= new int[2 * nLeaves];
+		Arrays.fill(minEnd, Integer.MAX_VALUE);
+
+		for(T item : items){
+			// A row has space if its end is less than this
+			long limit= (long)extent.getStart(item) - gap;
+			int row;
+			if(minEnd[1] < limit){
+				int node= 1;
+				while(node < nLeaves){
+					node= minEnd[2 * node] < limit ? 2 * node : 2 * node + 1;
+				}
+				row= node - nLeaves;
+			} else if(rows.size() < nRows){
+				row= rows.size();
+				rows.add(new ArrayList<T>());
+			} else {
+				continue;
+			}
+			rows.get(row).add(item);
+
+			int node= row + nLeaves;
+			minEnd[node]= extent.getEnd(item);
+			for(node /= 2; node >= 1; node /= 2){
+				minEnd[node]= Math.min(minEnd[2 * node], minEnd[2 * node + 1]);
+			}
+		}
+		return rows;
+	}
+}
@@ -1,10 +1,7 @@
 package tracks;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
 
-import exceptions.InvalidColourException;
 import exceptions.InvalidGenomicCoordsException;
 
 /** Model a sequenced fragment typically represented by a pair of 
@@ -69,9 +66,11 @@ class SamSequenceFragment {
 		return this.rightRead;
 	}
 
-	protected String getPrintableFragment(boolean bs, boolean noFormat) throws IOException, InvalidGenomicCoordsException, InvalidColourException {
+	/** Write this fragment to row at the columns given by its text start and end. 
+	 * */
+	protected void render(ReadRow row, boolean bs) throws IOException, InvalidGenomicCoordsException {
 		if(this.getRightRead() == null || this.isSingleton){
-			return this.getLeftRead().getPrintableTextRead(bs, noFormat, false);
+			this.getLeftRead().render(row, this.getLeftRead().getTextStart() - 1, bs);
 		} else {
 			// We need a string that goes from start to end and fills up the bit
 			// in the middle or make pairs overlap:
@@ -83,30 +82,12 @@ class SamSequenceFragment {
 			// AAAAAAAtttttttttt
 			// 
 			// Prepare chars:
-			List<FeatureChar> lst= new ArrayList<FeatureChar>();
-			int len= this.getTextEnd() - this.getTextStart() + 1; // MEMO: Start is 1-based 
-			for(int i= 0; i < len; i++){
-				FeatureChar x= new FeatureChar();
-				x.setText('~');
-				lst.add(x);
-			}
-			int i= 0;
-			for(FeatureChar x : this.getLeftRead().getTextReadAsFeatureChars(bs)){
-				lst.set(i, x);
-				i++;
+			for(int col= this.getTextStart() - 1; col < this.getTextEnd(); col++){
+				row.set(col, '~', row.foreground, row.background, (byte)0);
 			}
+			this.getLeftRead().render(row, this.getLeftRead().getTextStart() - 1, bs);
 			// Fill up with the right read. NB: Reads might be fully contained one into the other
-			// Where does the right read starts from?
-			int from= this.getRightRead().getTextStart() - this.getLeftRead().getTextStart(); 
-			for(FeatureChar x :  this.getRightRead().getTextReadAsFeatureChars(bs)){
-				lst.set(from, x);
-				from++;
-			}
-			StringBuilder sb= new StringBuilder();
-			for(FeatureChar x : lst){
-				sb.append(x.format(noFormat));
-			}
-			return sb.toString();
+			this.getRightRead().render(row, this.getRightRead().getTextStart() - 1, bs);
 		}
 	}
 
@@ -16,6 +16,12 @@ public class ScreenWiggleLocusInfo {
 		sumScore += score;
 	}
 
+	/** Increment attributes as if score was added nLoci times */
+	public void increment(float score, int nLoci){
+		cntGenomicLoci += nLoci;
+		sumScore += score * nLoci;
+	}
+
 	public String toString(){
 		String str= "cntGenomicLoci: " + this.cntGenomicLoci + "; sumScores: " + this.sumScore;
 		return str;
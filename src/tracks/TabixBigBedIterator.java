@@ -13,6 +13,7 @@ public class TabixBigBedIterator {
 
 	Iterator tabixIterator;
 	BigBedIterator bigBedIterator;
+	java.util.Iterator<String> memoryIterator;
 	
 	protected TabixBigBedIterator(TabixReader reader, String chrom, int start, int end){
 		this.tabixIterator= reader.query(chrom, start, end);
@@ -21,6 +22,10 @@ public class TabixBigBedIterator {
 	protected TabixBigBedIterator(BBFileReader reader, String chrom, int start, int end){
 		this.bigBedIterator= reader.getBigBedIterator(chrom, start, chrom, end, false);
 	}
+
+	protected TabixBigBedIterator(MemoryIntervalIndex index, String chrom, int start, int end){
+		this.memoryIterator= index.query(chrom, start, end).iterator();
+	}
 	
 	protected String next() throws IOException{
 		
@@ -46,6 +51,8 @@ public class TabixBigBedIterator {
 				sb.append(field);
 			}
 			return sb.toString();
+		} else if(this.memoryIterator != null) {
+			return this.memoryIterator.hasNext() ? this.memoryIterator.next() : null;
 		} else {
 			throw new RuntimeException();
 		}
@@ -12,6 +12,7 @@ public class TabixBigBedReader {
 
 	private TabixReader tabixReader; 
 	private BBFileReader bigBedReader;
+	private MemoryIntervalIndex memoryIndex;
 	
 	protected TabixBigBedReader(TabixReader tabixReader){
 		this.tabixReader= tabixReader;
@@ -21,6 +22,10 @@ public class TabixBigBedReader {
 		this.bigBedReader = bigBedReader;
 	};
 	
+	protected TabixBigBedReader(MemoryIntervalIndex memoryIndex){
+		this.memoryIndex = memoryIndex;
+	};
+	
 	protected TabixBigBedIterator query(String chrom, int start, int end){
 
 		if(this.tabixReader != null){
@@ -29,6 +34,9 @@ public class TabixBigBedReader {
 		} else if(this.bigBedReader != null){
 			return new TabixBigBedIterator(this.bigBedReader, chrom, start, end);
 		
+		} else if(this.memoryIndex != null){
+			return new TabixBigBedIterator(this.memoryIndex, chrom, start, end);
+		
 		} else {
 			throw new RuntimeException();
 		}
@@ -36,6 +44,9 @@ public class TabixBigBedReader {
 
 	public Set<String> getChromosomes() {
 
+		if(this.memoryIndex != null){
+			return this.memoryIndex.getChromosomes();
+		}
 		if(this.tabixReader != null && this.bigBedReader == null){
 		return this.tabixReader.getChromosomes();		
 	
@@ -2,18 +2,14 @@ package tracks;
 
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
-import coloring.Config;
-import coloring.ConfigKey;
 import exceptions.InvalidColourException;
 import exceptions.InvalidGenomicCoordsException;
 import htsjdk.samtools.CigarElement;
 import htsjdk.samtools.CigarOperator;
 import htsjdk.samtools.SAMRecord;
 import samTextViewer.GenomicCoords;
-import samTextViewer.Utils;
 
 /** Class holding features of a read necessary to represent the read in text
  * format.
@@ -106,12 +102,9 @@ class TextRead extends IntervalFeature{
 	 * @throws InvalidColourException 
 	 */
 	public String getPrintableTextRead(boolean bs, boolean noFormat, boolean withReadName) throws IOException, InvalidGenomicCoordsException, InvalidColourException{
-		List<FeatureChar> fmt = this.getTextReadAsFeatureChars(bs);
-		StringBuilder sb= new StringBuilder();
-		for(FeatureChar x : fmt){
-			sb.append(x.format(noFormat));
-		}
-		return sb.toString();
+		ReadRow row= new ReadRow(this.textEnd - this.textStart + 1);
+		this.render(row, 0, bs);
+		return row.format(0, row.length(), noFormat, -1);
 //		if(withReadName){ // Replace bases with read name. As long as it fits
 //			int upTo= (unformatted.size() < this.samRecord.getReadName().length()) 
 //					? unformatted.size() 
@@ -140,12 +133,12 @@ class TextRead extends IntervalFeature{
 			this.textStart= 1;
 			return;
 		}		
-		this.textStart= Utils.getIndexOfclosestValue(samRecord.getAlignmentStart(), gc.getMapping()) + 1;
+		this.textStart= gc.getColumnOfPosition(samRecord.getAlignmentStart()) + 1;
 		return;
 	}
 	
 	private void setTextEnd() throws InvalidGenomicCoordsException, IOException{
-		this.textEnd= Utils.getIndexOfclosestValue(samRecord.getAlignmentEnd(), gc.getMapping()) + 1;
+		this.textEnd= gc.getColumnOfPosition(samRecord.getAlignmentEnd()) + 1;
 		return;
 	}
 	
@@ -160,8 +153,8 @@ class TextRead extends IntervalFeature{
 			if(el.getOperator().equals(CigarOperator.SKIPPED_REGION)){
 				int[] textPositions= new int[2];
 				// +1 because textPosition is 1-based
-				textPositions[0]= Utils.getIndexOfclosestValue(genomicPosition, this.gc.getMapping()) + 1; 
-				textPositions[1]= Utils.getIndexOfclosestValue(genomicPosition + el.getLength(), this.gc.getMapping()) + 1;
+				textPositions[0]= this.gc.getColumnOfPosition(genomicPosition) + 1; 
+				textPositions[1]= this.gc.getColumnOfPosition(genomicPosition + el.getLength()) + 1;
 				this.textPositionsOfSkippedBases.add(textPositions);
 			};
 			if(el.getOperator().consumesReferenceBases()){
@@ -171,41 +164,36 @@ class TextRead extends IntervalFeature{
 	}
 
 	/** If the windowSize and genomic span are not mapped 1:1, i.e. 1 bp : 1 char, then
-	 * represent reads as simplified bases */
-	private List<FeatureChar> getSquashedRead(){
+	 * represent reads as simplified bases. Write them to row starting at column col.*/
+	private void renderSquashedRead(ReadRow row, int col){
 		
-		ArrayList<FeatureChar> squashedRead= new ArrayList<FeatureChar>();
 		char xc;
 		if(this.samRecord.getReadNegativeStrandFlag()){
 			xc= charRev;
 		} else {
 			xc= charFwd;
 		}
+		// Set formatting
+		int fg= row.foreground;
+		int bg= row.background;
+		if(this.samRecord.getMappingQuality() < SHADE_MAPQ){
+			bg= row.shadeLowMapq;
+		}
+		else if(this.isStructuralVariantRead()){
+			bg= row.shadeStructuralVariant;
+		}
+		else if(!this.samRecord.getReadNegativeStrandFlag()){
+			fg= row.positiveStrand;
+		} 
+		else if(this.samRecord.getReadNegativeStrandFlag()){
+			fg= row.negativeStrand;
+		} 
 		for(int i= this.textStart; i <= this.textEnd; i++){
-			FeatureChar sq= new FeatureChar();
 			// Set char to print
-			if(this.textPositionIsSkipped(i)){
-				sq.setText(this.SKIP);
-			} else {
-				sq.setText(xc);
-			}
-			// Set formatting
-			if(this.samRecord.getMappingQuality() < SHADE_MAPQ){
-				sq.setBgColor(Config.get(ConfigKey.shade_low_mapq));
-			}
-			else if(this.isStructuralVariantRead()){
-				sq.setBgColor(Config.get(ConfigKey.shade_structural_variant));
-			}
-			else if(!this.samRecord.getReadNegativeStrandFlag()){
-				sq.setFgColor(Config.get(ConfigKey.feature_background_positive_strand));
-			} 
-			else if(this.samRecord.getReadNegativeStrandFlag()){
-				sq.setFgColor(Config.get(ConfigKey.feature_background_negative_strand));
-			} 
-
-			squashedRead.add(sq);
+			char c= this.textPositionIsSkipped(i) ? this.SKIP : xc;
+			row.set(col, c, fg, bg, (byte)0);
+			col++;
 		}
-		return squashedRead;
 	}
 	
 	private boolean textPositionIsSkipped(int textPos){
@@ -230,29 +218,31 @@ class TextRead extends IntervalFeature{
 	}
 
 	
-	/** Get a representation of the read as it appears aligned to the reference. 
+	/** Write the read as it appears aligned to the reference to row, starting at column col.
 	 * I.e. clipped ends omitted and deletions appearing as gaps (empty byte).
-	 * Only the portion contained between the genomic coords from:to is returned.
-	 * @return
+	 * Only the portion contained between the genomic coords from:to is written.
 	 * @throws IOException 
 	 * @throws InvalidGenomicCoordsException 
 	 */
-	protected List<FeatureChar> getTextReadAsFeatureChars(boolean bs) throws InvalidGenomicCoordsException, IOException {
+	protected void render(ReadRow row, int col, boolean bs) throws InvalidGenomicCoordsException, IOException {
 
 		if( ! this.gc.isSingleBaseResolution){
-			return this.getSquashedRead();
+			this.renderSquashedRead(row, col);
+			return;
 		}
 		
-		// Accumulate here the read bases inside the window 
-		ArrayList<FeatureChar> dnaRead= new ArrayList<FeatureChar>();
+		// Count of chars written to row 
+		int n= 0;
 		byte[] readBases= samRecord.getReadBases();
 		byte[] baseQual= this.samRecord.getBaseQualities();
+		boolean isNegative= this.samRecord.getReadNegativeStrandFlag();
+		boolean isLowMapq= this.samRecord.getMappingQuality() < SHADE_MAPQ;
+		boolean isStructuralVariant= this.isStructuralVariantRead();
+		byte underline= this.samRecord.getSecondOfPairFlag() ? ReadRow.UNDERLINE : 0;
 		
-		byte[] ref= null;
-		if(this.gc.getRefSeq() != null){
-			ref= Arrays.copyOfRange(this.gc.getRefSeq(), this.textStart-1, this.textEnd);
-		}
-		int SHADE_BASEQ= Integer.parseInt(Config.get(ConfigKey.shade_baseq));
+		// Reference bases from textStart onwards
+		byte[] ref= this.gc.getRefSeq();
+		int refOffset= this.textStart - 1;
 		
 		// Walk along the aligned read and append bases to textRead as long as
 		// the genomic position of the base is inside the genomic coords of the window
@@ -265,63 +255,64 @@ class TextRead extends IntervalFeature{
 			   el.getOperator().equals(CigarOperator.X)){
 				// Add nucleotide chars to growing read
 				for(int i= 0; i < el.getLength(); i++){
-					FeatureChar xc= new FeatureChar();
 					if(curBaseGenomicPos >= gc.getFrom() && curBaseGenomicPos <= gc.getTo()){
 						// If base is inside window:
+						char xc;
 						if(readBases.length > 0){
-							xc.setText((char)readBases[curBaseReadPos]);
+							xc= (char)readBases[curBaseReadPos];
 						} else { // If sam record has no read seq stored put N
-							xc.setText('N');
+							xc= 'N';
 						}
 						
 						if(ref != null){
-							char refBase= Character.toUpperCase((char) ref[dnaRead.size()]);
+							char refBase= Character.toUpperCase((char) ref[refOffset + n]);
 							if(bs){
-								this.convertDnaBaseToTextBS(xc, refBase);
+								xc= this.convertDnaBaseToTextBS(xc, refBase);
 							}
-							if(Character.toUpperCase(xc.getText()) == refBase){
-								if(this.samRecord.getReadNegativeStrandFlag()){
-									xc.setText(',');
+							if(Character.toUpperCase(xc) == refBase){
+								if(isNegative){
+									xc= ',';
 								} else {
-									xc.setText('.');
+									xc= '.';
 								}
 							}
 						}
 						
 						// Add formatting as appropriate
-						if(this.samRecord.getMappingQuality() < SHADE_MAPQ){
-							xc.setBgColor(Config.get(ConfigKey.shade_low_mapq));
-							xc.setFgColor(Config.get(ConfigKey.foreground));
+						char upper= Character.toUpperCase(xc);
+						int fg= row.foreground;
+						int bg= row.background;
+						if(isLowMapq){
+							bg= row.shadeLowMapq;
 						}
-						else if(bs && Character.toUpperCase(xc.getText()) == charM){
-							xc.setBgColor(Config.get(ConfigKey.methylated_background));
-							xc.setFgColor(Config.get(ConfigKey.methylated_foreground));
+						else if(bs && upper == charM){
+							bg= row.methylatedBackground;
+							fg= row.methylatedForeground;
 						} 
-						else if(bs && Character.toUpperCase(xc.getText()) == charU){
-							xc.setBgColor(Config.get(ConfigKey.unmethylated_background));
-							xc.setFgColor(Config.get(ConfigKey.unmethylated_foreground));
+						else if(bs && upper == charU){
+							bg= row.unmethylatedBackground;
+							fg= row.unmethylatedForeground;
 						}
-						else if(this.isStructuralVariantRead()){
-							xc.setBgColor(Config.get(ConfigKey.shade_structural_variant));
-							xc.setFgColor(Config.get(ConfigKey.foreground));
+						else if(isStructuralVariant){
+							bg= row.shadeStructuralVariant;
 						}
-						else if(Character.toUpperCase(xc.getText()) == 'A'){
-							xc.setFgColor(Config.get(ConfigKey.seq_a));
+						else if(upper == 'A'){
+							fg= row.seqA;
 						} 
-						else if(Character.toUpperCase(xc.getText()) == 'C') {
-							xc.setFgColor(Config.get(ConfigKey.seq_c));
+						else if(upper == 'C') {
+							fg= row.seqC;
 						} 
-						else if(Character.toUpperCase(xc.getText()) == 'G') {
-							xc.setFgColor(Config.get(ConfigKey.seq_g));
+						else if(upper == 'G') {
+							fg= row.seqG;
 						} 
-						else if(Character.toUpperCase(xc.getText()) == 'T') {
-							xc.setFgColor(Config.get(ConfigKey.seq_t));
+						else if(upper == 'T') {
+							fg= row.seqT;
 						} 
-						else if(!bs && !this.samRecord.getReadNegativeStrandFlag()){
-								xc.setFgColor(Config.get(ConfigKey.feature_background_positive_strand));
+						else if(!bs && !isNegative){
+							fg= row.positiveStrand;
 						} 
-						else if(!bs && this.samRecord.getReadNegativeStrandFlag()){
-								xc.setFgColor(Config.get(ConfigKey.feature_background_negative_strand));
+						else if(!bs && isNegative){
+							fg= row.negativeStrand;
 						}
 						
 						if(baseQual.length > 0){
@@ -335,29 +326,12 @@ class TextRead extends IntervalFeature{
 							 * >= 40  deepskyblue3
 							 */
 							int bq= (int) baseQual[i];
-							if(bq < SHADE_BASEQ){
-//								if(bq <= 9){
-//									xc.setBgColor("purple3"); 
-//								} 
-//								else if(bq <= 19){
-//									xc.setBgColor("grey66");
-//								}
-//								else if(bq <= 24){
-//									xc.setBgColor("grey50");
-//								}
-//								else if(bq <= 34){
-//									xc.setBgColor("grey39");
-//								} 
-//								else {
-//									xc.setBgColor(Config.get(ConfigKey.background));
-//								}
-								xc.setBgColor(Config.get(ConfigKey.shade_low_mapq));
+							if(bq < row.shadeBaseq){
+								bg= row.shadeLowMapq;
 							}
 						}
-						if(this.samRecord.getSecondOfPairFlag()){
-							xc.setUnderline(true);
-						}
-						dnaRead.add(xc);
+						row.set(col + n, this.strandCase(xc, isNegative), fg, bg, underline);
+						n++;
 					}
 					curBaseGenomicPos++; // M consumes read and ref bases. So increment them
 					curBaseReadPos++;
@@ -365,24 +339,22 @@ class TextRead extends IntervalFeature{
 			} else if(el.getOperator().equals(CigarOperator.D) || el.getOperator().equals(CigarOperator.N)){
 				// Add gap chars to growing read
 				for(int i= 0; i < el.getLength(); i++){
-					FeatureChar xc= new FeatureChar();
 					if(curBaseGenomicPos >= gc.getFrom() && curBaseGenomicPos <= gc.getTo()){
 						if(el.getOperator().equals(CigarOperator.D)){
-							xc.setText(this.DEL);
-							xc.setInvertFgBgColor(true);
+							row.set(col + n, this.DEL, row.foreground, row.background, ReadRow.INVERT);
 						} else if(el.getOperator().equals(CigarOperator.N)){ 
-							xc.setText(this.SKIP);
+							row.set(col + n, this.SKIP, row.foreground, row.background, (byte)0);
 						} else {
 							System.err.println("Unexpected operator");
 							throw new RuntimeException();
 						}
-						dnaRead.add(xc);
+						n++;
 					}
 					curBaseGenomicPos++;
 				}
 			} else if(el.getOperator().equals(CigarOperator.I)) {
-				if(dnaRead.size() > 0){ // If the insertion is outside the terminal window, there is no base to mark
-					dnaRead.get(dnaRead.size()-1).setInvertFgBgColor(true);
+				if(n > 0){ // If the insertion is outside the terminal window, there is no base to mark
+					row.addAttribute(col + n - 1, ReadRow.INVERT);
 				}
 				curBaseReadPos += el.getLength();
 			} else if(el.getOperator().equals(CigarOperator.S)){
@@ -396,14 +368,14 @@ class TextRead extends IntervalFeature{
 				throw new RuntimeException();
 			}
 		}
-		for(FeatureChar x : dnaRead){
-			if(this.samRecord.getReadNegativeStrandFlag()){
-				x.setText(Character.toLowerCase(x.getText()));
-			} else {
-				x.setText(Character.toUpperCase(x.getText()));
-			}
+	}
+	
+	private char strandCase(char x, boolean isNegative){
+		if(isNegative){
+			return Character.toLowerCase(x);
+		} else {
+			return Character.toUpperCase(x);
 		}
-		return dnaRead;
 	}
 	
 	/** Convert textRead, the actual bases found in sam, to represent match, mismatch and strandness.
@@ -457,10 +429,10 @@ class TextRead extends IntervalFeature{
 	 * @throws IOException 
 	 * @throws InvalidGenomicCoordsException 
 	 */
-	private void convertDnaBaseToTextBS(FeatureChar dnaBase, char refBase) throws IOException, InvalidGenomicCoordsException{
+	private char convertDnaBaseToTextBS(char dnaBase, char refBase) throws IOException, InvalidGenomicCoordsException{
 	
 		if(this.gc.getRefSeq() == null){ // Effectively don't convert 
-			return;
+			return dnaBase;
 		}
 		
 		// For convenience extract flags from sam record
@@ -470,23 +442,23 @@ class TextRead extends IntervalFeature{
 		}
 		boolean isForwardStrand= !this.samRecord.getReadNegativeStrandFlag();
 		
-		char dnaChar= Character.toUpperCase(dnaBase.getText());
+		char dnaChar= Character.toUpperCase(dnaBase);
 		if( ( isForwardStrand && !isSecondOfPair ) || ( !isForwardStrand && isSecondOfPair )){
 			// Look for C on the reference
 			if(isForwardStrand){ // +strand, first in pair or unpaired
 				if(refBase == 'C' && dnaChar == 'C'){
-					dnaBase.setText(charM);
+					return charM;
 				} else if(refBase == 'C' && dnaChar == 'T'){
-					dnaBase.setText(charU);
+					return charU;
 				} else {
 					// Nothing to change
 				}
 			} else { // -ve strand, 2nd in pair
 				// Look for c=',' -> m; 't' -> u
 				if(refBase == 'C' && dnaChar == 'C'){
-					dnaBase.setText(charm);
-				} else if(refBase == 'C' && dnaBase.getText() == 'T'){
-					dnaBase.setText(charu);
+					return charm;
+				} else if(refBase == 'C' && dnaBase == 'T'){
+					return charu;
 				} else {
 					// Nothing to change
 				}
@@ -495,22 +467,23 @@ class TextRead extends IntervalFeature{
 			// Look for G on the reference
 			if(!isForwardStrand){ // -ve strand; first in pair or unpaired
 				if(refBase == 'G' && dnaChar == 'G'){
-					dnaBase.setText('m');
+					return 'm';
 				} else if(refBase == 'G' && dnaChar == 'A'){
-					dnaBase.setText('u');
+					return 'u';
 				} else {
 					// Nothing to change
 				}
 			} else { // -ve strand, 2nd in pair
 				if(refBase == 'G' && dnaChar == 'G'){
-					dnaBase.setText('M');
+					return 'M';
 				} else if(refBase == 'G' && dnaChar == 'A'){
-					dnaBase.setText('U');
+					return 'U';
 				} else {
 					// Nothing to change
 				}
 			}
 		}
+		return dnaBase;
 	}
 	
 	public String toString(double bpPerScreenColumn){
@@ -34,8 +34,6 @@ import exceptions.InvalidRecordException;
 import htsjdk.samtools.CigarElement;
 import htsjdk.samtools.CigarOperator;
 import htsjdk.samtools.SAMRecord;
-import htsjdk.samtools.SamReader;
-import htsjdk.samtools.filter.AggregateFilter;
 import htsjdk.samtools.filter.SamRecordFilter;
 import htsjdk.samtools.reference.IndexedFastaSequenceFile;
 import htsjdk.variant.vcf.VCFHeader;
@@ -77,7 +75,7 @@ public abstract class Track {
 	private float yLimitMin= Float.NaN; // Same as R ylim()
 	private float yLimitMax= Float.NaN;
 	/** Max size of genomic region before the track shuts down to prevent excessive slow down */
-	protected final int MAX_REGION_SIZE= 1000001;   
+	protected static final int MAX_REGION_SIZE= 1000001;   
 	
 	protected String titleColour= null;
 	protected boolean bisulf= false;
@@ -108,6 +106,8 @@ public abstract class Track {
 	private VCFHeader vcfHeader;
 	private String samtoolsPath;
 	private Pattern highlightPattern;
+	/** Shared source of alignments for tracks reading from the same bam file */
+	private AlignmentWindow alignmentWindow;
 	/** Format the title string to add colour or return title as it is if
 	 * no format is set.
 	 * @throws InvalidColourException 
@@ -119,7 +119,6 @@ public abstract class Track {
 		} else {
 			int colourCode= Config.get256Color(ConfigKey.title_colour);
 			if(this.titleColour != null){
-				new Xterm256();
 				colourCode= Xterm256.colorNameToXterm256(this.titleColour);
 			}
 			return "\033[48;5;" + Config.get256Color(ConfigKey.background) + ";38;5;" + colourCode + "m" + title;
@@ -229,6 +228,7 @@ public abstract class Track {
 				awk= "-F '\\t' " + awk; 
 			}
 		}
+		this.getFeatureFilter().setColumnFilter(null);
 		this.getFeatureFilter().setAwk(awk);
 		this.update();
 	}
@@ -236,6 +236,21 @@ public abstract class Track {
 	public String getAwk(){
 		return this.getFeatureFilter().getAwk();
 	}
+
+	/** Filter records with the compiled expression. This replaces the awk script, if any.
+	 * If columnFilter is null, remove the filter.
+	 * */
+	protected void setColumnFilter(ColumnFilter columnFilter) throws ClassNotFoundException, IOException, InvalidGenomicCoordsException, InvalidRecordException, SQLException {
+		this.getFeatureFilter().setAwk(Filter.DEFAULT_AWK.getValue());
+		this.getFeatureFilter().setColumnFilter(columnFilter);
+		this.update();
+	}
+
+	/** The expression of the compiled filter or null if not set*/
+	public String getColumnFilter(){
+		ColumnFilter cf= this.getFeatureFilter().getColumnFilter();
+		return cf == null ? null : cf.getExpression();
+	}
 	
 	protected FeatureFilter getFeatureFilter(){
 		return this.featureFilter;
@@ -245,10 +260,21 @@ public abstract class Track {
 	 * Tracks.SHOW_REGEX or Tracks.HIDE_REGEX for the other. This is to prevent
 	 * calling update() twice when only one is needed.*/
 	public void setShowHideRegex(Pattern showRegex, Pattern hideRegex) throws InvalidGenomicCoordsException, IOException, ClassNotFoundException, InvalidRecordException, SQLException{
-		this.getFeatureFilter().setShowHideRegex(showRegex, hideRegex);
+		this.setShowHideRegex(showRegex, hideRegex, null);
+	}
+
+	/** As setShowHideRegex(showRegex, hideRegex) with regexes applied only to the given
+	 * field of alignments, e.g. qname, cigar or a tag. Null for the whole record.
+	 * Other tracks ignore the field.*/
+	public void setShowHideRegex(Pattern showRegex, Pattern hideRegex, String grepField) throws InvalidGenomicCoordsException, IOException, ClassNotFoundException, InvalidRecordException, SQLException{
+		this.getFeatureFilter().setShowHideRegex(showRegex, hideRegex, grepField);
 		this.update();
 	}
 
+	public String getGrepField() {
+		return this.getFeatureFilter().getGrepField();
+	}
+
 	public Pattern getHideRegex() { 
 		return this.getFeatureFilter().getHideRegex();
 	}
@@ -357,6 +383,15 @@ public abstract class Track {
 
 	public abstract void update() throws MalformedURLException, IOException, InvalidGenomicCoordsException, InvalidRecordException, ClassNotFoundException, SQLException;
 
+	/** Read ahead what update() needs to show the window gc, without changing what this
+	 * track shows, so that moving to gc is then served from memory. Called by the
+	 * prefetcher thread while waiting for input: stop as soon as the prefetcher is cancelled.
+	 * Tracks without an in-memory cache do nothing.
+	 * */
+	protected void prefetch(GenomicCoords gc, Prefetcher prefetcher) throws IOException, InvalidGenomicCoordsException{
+		// Nothing to read ahead
+	}
+
 	public String getSeqRegex() {
 		return null;
 	}
@@ -751,106 +786,64 @@ public abstract class Track {
 		String track= this.printToScreen();
 		String title= this.getTitle();
 		int titleLen= Utils.stripAnsiCodes(title).trim().length();
-		String sProfile= Utils.stripAnsiCodes(track);
-		if(sProfile.trim().isEmpty()){ // No features in this profile
+		int leadingSpaces= leadingBlanks(track);
+		if(leadingSpaces < 0){ // No features in this profile
 			return title.replaceAll("\n", "") + track; 	
 		}
-		int leadingSpaces= sProfile.indexOf(sProfile.trim());
 		if(leadingSpaces > titleLen){
-			while(titleLen > 0){
-				track= track.replaceFirst(" ", "");
-				titleLen--;
+			// Remove the first titleLen spaces
+			StringBuilder sb= new StringBuilder(track.length());
+			for(int i= 0; i < track.length(); i++){
+				char c= track.charAt(i);
+				if(c == ' ' && titleLen > 0){
+					titleLen--;
+				} else {
+					sb.append(c);
+				}
 			}
+			track= sb.toString();
 			title= title.replaceAll("\n", "");
 		}
 		return title + track; 
 	}
 	
-	public List<Boolean> filterReads(SamReader samReader, String chrom, int from, int to) throws IOException{
-
-		Iterator<SAMRecord> filterSam= samReader.query(chrom, from, to, false);
-		
-		AggregateFilter aggregateFilter= new AggregateFilter(this.getFeatureFilter().getSamRecordFilter());
-
-		// This array will contain true/false to indicate whether a record passes the 
-		// sam filters AND the awk filter (if given).
-		// boolean[] results= new boolean[(int) this.nRecsInWindow];
-		List<Boolean> results= new ArrayList<Boolean>();
-
-		List<String> awkDataInput= new ArrayList<String>();
-		while(filterSam.hasNext()){ 
-			// Record whether a read passes the sam filters. If necessary, we also 
-			// store the raw reads for awk.
-			SAMRecord rec= filterSam.next();
-			boolean passed;
-			if(!rec.getReadUnmappedFlag() && 
-			        !aggregateFilter.filterOut(rec) &&
-			        rec.getAlignmentEnd() >= rec.getAlignmentStart()){
-				passed= true;
-			} else {
-				passed= false;
-			}
-
-			// Filter for variant reads: Do it only if there is an intersection between variant interval and current genomic window
-			if(this.getFeatureFilter().getVariantChrom().equals(Filter.DEFAULT_VARIANT_CHROM.getValue())){
-				// Variant read filter is not set. Nothing to do.
-			} else if(passed){ 
-				// Memo: Test filter(s) only if a read is passed==true. 
-				passed= this.isSNVRead(rec, this.getFeatureFilter().isVariantOnly());
-			}
-			
-			String raw= null;
-
-			if(passed && (! this.getFeatureFilter().getShowRegex().equals(Filter.DEFAULT_SHOW_REGEX.getValue()) || 
-					      ! this.getFeatureFilter().getHideRegex().equals(Filter.DEFAULT_HIDE_REGEX.getValue()))){
-				// grep
-				raw= rec.getSAMString().trim();
-				boolean showIt= true;
-				if(! this.getFeatureFilter().getShowRegex().equals(Filter.DEFAULT_SHOW_REGEX.getValue())){
-					showIt= this.getFeatureFilter().getShowRegex().matcher(raw).find();
-				}
-				boolean hideIt= false;
-				if(! this.getFeatureFilter().getHideRegex().equals(Filter.DEFAULT_HIDE_REGEX.getValue())){
-					hideIt= this.getFeatureFilter().getHideRegex().matcher(raw).find();	
+	/** Number of whitespace characters before the first visible one in track, 
+	 * ignoring ANSI escapes. -1 if track has only whitespace.*/
+	private static int leadingBlanks(String track){
+		int n= 0;
+		int i= 0;
+		while(i < track.length()){
+			char c= track.charAt(i);
+			if(c == '\033' && i + 1 < track.length() && track.charAt(i + 1) == '['){
+				// Skip the escape if it is one
+				int j= i + 2;
+				while(j < track.length() && ((track.charAt(j) >= '0' && track.charAt(j) <= '9') || track.charAt(j) == ';')){
+					j++;
 				}
-				if(!showIt || hideIt){
-					passed= false;
+				if(j < track.length() && track.charAt(j) == 'm'){
+					i= j + 1;
+					continue;
 				}
 			}
-			results.add(passed);
-			if(passed && this.getAwk() != null && ! this.getAwk().isEmpty()){
-				// We pass to awk only records that have been kept so far.
-				if(raw == null){
-					raw= rec.getSAMString().trim();
-				}
-				awkDataInput.add(raw);
-			}
-		} // End loop through reads
-
-		// Apply the awk filter, if given
-		if(this.getAwk() != null && ! this.getAwk().equals(Filter.DEFAULT_AWK.getValue())){
-			String[] rawLines= new String[awkDataInput.size()];
-			rawLines= awkDataInput.toArray(rawLines);
-			boolean[] awkResults= Utils.passAwkFilter(rawLines, this.getAwk());
-			// Compare the results array with awk filtered. Flip as appropriate the results array
-			int awkIdx= 0;
-			int i= 0;
-			for(boolean isPassed : results){
-				if(isPassed){
-					if( ! awkResults[awkIdx]){
-						results.set(i, false);
-					}
-					awkIdx++;
-				}
-				i++;
+			if(c > ' '){
+				return n;
 			}
+			n++;
+			i++;
 		}
-		return results;
+		return -1;
+	}
+	
+	/** Return the records from sam passing the filters of this track. Records are
+	 * filtered lazily as they are pulled from the returned iterator.
+	 * */
+	protected FilteredSamIterator filterReads(Iterator<SAMRecord> sam){
+		return new FilteredSamIterator(sam, this);
 	}
 
 	/**Return true if samrecord contains a mismatch or insertion/deletion in the target region.
 	 * */
-	private boolean isSNVRead(SAMRecord rec, boolean variantOnly) {
+	protected boolean isSNVRead(SAMRecord rec, boolean variantOnly) {
 		boolean passed= false;
 		
 		int varFrom= this.getFeatureFilter().getVariantFrom();
@@ -1011,6 +1004,17 @@ public abstract class Track {
 		this.printNumDecimals = printNumDecimals;
 	}
 	
+	protected AlignmentWindow getAlignmentWindow() {
+		return this.alignmentWindow;
+	}
+
+	protected void setAlignmentWindow(AlignmentWindow alignmentWindow) {
+		this.alignmentWindow= alignmentWindow;
+	}
+
+	/** Kept for compatibility with the samtools -path option. Depth is computed in process
+	 * so the path is not used anymore.
+	 * */
 	public void setSamtoolsPath(String samtoolsPath) {
 		this.samtoolsPath= samtoolsPath;
 	}
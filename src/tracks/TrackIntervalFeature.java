@@ -18,6 +18,9 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.collect.Lists;
 
+import coloring.AnsiEncoder;
+import coloring.Config;
+import coloring.ConfigKey;
 import coloring.Xterm256;
 import exceptions.InvalidColourException;
 import exceptions.InvalidCommandLineException;
@@ -41,6 +44,8 @@ public class TrackIntervalFeature extends Track {
 	 * */
 	protected TabixReader tabixReader; // Leave *protected* for TrackBookmark to work
 	private BBFileReader bigBedReader;
+	/** For small bed, gtf and gff files without tabix index*/
+	private MemoryIntervalIndex memoryIndex;
 	
 	private List<Argument> colorForRegex= null;
 	private VCFCodec vcfCodec;
@@ -62,22 +67,31 @@ public class TrackIntervalFeature extends Track {
 			this.setTrackFormat(TrackFormat.BIGBED);
 			
 		} else if( ! Utils.hasTabixIndex(filename)){
-			// Tabix index not found for this file. Sort and index input to tmp.
+			
+			this.memoryIndex= loadInMemory(filename);
+			if(this.memoryIndex != null){
+				// Small file: Read and index in memory.
+				this.setWorkFilename(filename);
+				this.setTrackFormat(Utils.getFileTypeFromName(new File(filename).getName()));
+			
+			} else {
+				// Tabix index not found for this file. Sort and index input to tmp.
 
-			String suffix= new File(filename).getName();
-			if( ! suffix.endsWith(".gz")){
-				suffix += ".gz";
-			}
-			String tmpWorkFile= Utils.createTempFile(".asciigenome.", "." + suffix).getAbsolutePath();
-			new File(tmpWorkFile).deleteOnExit();
-			new File(new File(tmpWorkFile).getAbsolutePath() + ".tbi").deleteOnExit();
-			this.setWorkFilename(tmpWorkFile);
+				String suffix= new File(filename).getName();
+				if( ! suffix.endsWith(".gz")){
+					suffix += ".gz";
+				}
+				String tmpWorkFile= Utils.createTempFile(".asciigenome.", "." + suffix).getAbsolutePath();
+				new File(tmpWorkFile).deleteOnExit();
+				new File(new File(tmpWorkFile).getAbsolutePath() + ".tbi").deleteOnExit();
+				this.setWorkFilename(tmpWorkFile);
 
-			this.setTrackFormat(Utils.getFileTypeFromName(new File(filename).getName()));
-			new MakeTabixIndex(filename, new File( this.getWorkFilename() ), Utils.trackFormatToTabixFormat(this.getTrackFormat()));	
+				this.setTrackFormat(Utils.getFileTypeFromName(new File(filename).getName()));
+				new MakeTabixIndex(filename, new File( this.getWorkFilename() ), Utils.trackFormatToTabixFormat(this.getTrackFormat()));	
 
-			this.setWorkFilename(tmpWorkFile);
-			this.tabixReader= new TabixReader(new File(this.getWorkFilename()).getAbsolutePath());
+				this.setWorkFilename(tmpWorkFile);
+				this.tabixReader= new TabixReader(new File(this.getWorkFilename()).getAbsolutePath());
+			}
 			
 		} else { // This means the input is tabix indexed.
 			this.setWorkFilename(filename);
@@ -90,6 +104,30 @@ public class TrackIntervalFeature extends Track {
 	protected TrackIntervalFeature(GenomicCoords gc){
 		
 	}
+
+	/** Index in memory the local bed, gtf or gff file if smaller than the size set in 
+	 * configuration. Return null otherwise, so that the file is indexed with tabix.*/
+	private static MemoryIntervalIndex loadInMemory(String filename) throws IOException{
+		TrackFormat fmt= Utils.getFileTypeFromName(new File(filename).getName());
+		if( ! (fmt.equals(TrackFormat.BED) || fmt.equals(TrackFormat.GTF) || fmt.equals(TrackFormat.GFF)) 
+				|| ! new File(filename).isFile()){
+			return null;
+		}
+		long maxBytes= getMemoryIndexMaxBytes();
+		if(maxBytes <= 0){
+			return null;
+		}
+		return MemoryIntervalIndex.load(filename, Utils.trackFormatToTabixFormat(fmt), maxBytes);
+	}
+
+	/** Size limit in bytes for indexing in memory as set in config. 0 if not valid.*/
+	private static long getMemoryIndexMaxBytes(){
+		try{
+			return (long) (1024 * 1024 * Float.parseFloat(Config.get(ConfigKey.memory_index_mb)));
+		} catch(NumberFormatException e){
+			return 0;
+		}
+	}
 	
 	/* M e t h o d s */
 	
@@ -146,13 +184,7 @@ public class TrackIntervalFeature extends Track {
 			} 
 		}
 		// Remove hidden features
-		List<IntervalFeature> xFeaturesFiltered= new ArrayList<IntervalFeature>();
-		for(IntervalFeature x : xFeatures){
-			if(this.featureIsVisible(x.getRaw())){
-				xFeaturesFiltered.add(x);
-			}
-		}
-		return xFeaturesFiltered;
+		return this.filterVisible(xFeatures);
 	}
 
 	private List<IntervalFeature> getFeaturesInVCFInterval(String chrom, int from, int to) throws IOException, InvalidGenomicCoordsException{
@@ -188,56 +220,98 @@ public class TrackIntervalFeature extends Track {
 	}
 	
 	/** Return true if string is visible, i.e. it
-	 * passes the regex filters. Note that regex filters are applied to the raw string.
+	 * passes the regex filters, the column filter and the awk filter. Note that filters are 
+	 * applied to the raw string.
 	 * @throws InvalidGenomicCoordsException 
 	 * @throws IOException 
 	 * */
 	protected Boolean featureIsVisible(String x) throws InvalidGenomicCoordsException, IOException{
 		
-		if(x.contains("__ignore_me__")){
+		if( ! this.passGrep(x)){
+			return false; // If feature is not visible, no need to go on as there is no way to bring it back.
+		}
+		ColumnFilter cf= this.getFeatureFilter().getColumnFilter();
+		// Only drop the line terminator, if any, so that trailing empty fields count as in filterVisible()
+		if(cf != null && ! cf.test(x.endsWith("\n") ? x.substring(0, x.length() - 1) : x)){
 			return false;
 		}
 		
-		boolean showIt= true;
-		if(this.getShowRegex() != null && 
-		   ! this.getShowRegex().equals(Filter.DEFAULT_SHOW_REGEX.getValue())){
-			showIt= this.getShowRegex().matcher(x).find();
+		// Awk
+		Boolean isVisible;
+		try {
+			isVisible= this.getFeatureFilter().getAwkProgram().pass(x);
+		} catch (Exception e) {
+			this.awkFailed("Invalid awk script.");
+			return false;
 		}
-
-		boolean hideIt= false;
-		if(!this.getHideRegex().pattern().isEmpty()){
-			hideIt= this.getHideRegex().matcher(x).find();	
+		if(isVisible == null){
+			this.awkFailed("Awk output must be either empty or equal to input.");
 		}
+		return isVisible;
+	}
 
-		Boolean isVisible= false;
-		if(showIt && !hideIt){
-			isVisible= true;
-		} else {
-			return false; // If feature is not visible, no need to go on as there is no way to bring it back.
+	/** Return the features passing the regex filters, the column filter and the awk filter. 
+	 * Same as calling featureIsVisible() on each feature but awk is run once on all of them.
+	 * */
+	protected List<IntervalFeature> filterVisible(List<IntervalFeature> features) throws InvalidGenomicCoordsException, IOException{
+		List<IntervalFeature> grepped= new ArrayList<IntervalFeature>();
+		ColumnFilter cf= this.getFeatureFilter().getColumnFilter();
+		for(IntervalFeature x : features){
+			if(this.passGrep(x.getRaw()) && (cf == null || cf.test(x.getRaw()))){
+				grepped.add(x);
+			}
 		}
-		
-		// Awk
+		AwkProgram awk= this.getFeatureFilter().getAwkProgram();
+		if(awk.isEmpty() || grepped.isEmpty()){
+			return grepped;
+		}
+		String[] rawLines= new String[grepped.size()];
+		for(int i= 0; i < rawLines.length; i++){
+			rawLines[i]= grepped.get(i).getRaw();
+		}
+		boolean[] passed= null;
 		try {
-			isVisible= Utils.passAwkFilter(x, this.getAwk());
+			passed= awk.pass(rawLines);
 		} catch (Exception e) {
-			System.err.print(Utils.padEndMultiLine("Invalid awk script.", this.getGc().getUserWindowSize()));
-			try {
-				this.setAwk("");
-			} catch (ClassNotFoundException | InvalidRecordException | SQLException e1) {
-				e1.printStackTrace();
-			}
-			throw new InvalidGenomicCoordsException();
+			this.awkFailed("Invalid awk script.");
 		}
-		if(isVisible == null){
-			System.err.print(Utils.padEndMultiLine("Awk output must be either empty or equal to input.", this.getGc().getUserWindowSize()));
-			try {
-				this.setAwk(""); // Remove the faulty awk script.
-			} catch (ClassNotFoundException | IOException | InvalidRecordException | SQLException e) {
-				//
+		if(passed == null){
+			this.awkFailed("Awk output must be either empty or equal to input.");
+		}
+		List<IntervalFeature> visible= new ArrayList<IntervalFeature>();
+		for(int i= 0; i < passed.length; i++){
+			if(passed[i]){
+				visible.add(grepped.get(i));
 			}
-			throw new InvalidGenomicCoordsException();
 		}
-		return isVisible;
+		return visible;
+	}
+	
+	/** True if x passes the show and hide regex filters */
+	private boolean passGrep(String x){
+		if(x.contains("__ignore_me__")){
+			return false;
+		}
+		if(this.getShowRegex() != null && 
+		   ! this.getShowRegex().equals(Filter.DEFAULT_SHOW_REGEX.getValue()) &&
+		   ! this.getShowRegex().matcher(x).find()){
+			return false;
+		}
+		if(!this.getHideRegex().pattern().isEmpty() && this.getHideRegex().matcher(x).find()){
+			return false;
+		}
+		return true;
+	}
+
+	/** Report the message, remove the faulty awk script and throw.*/
+	private void awkFailed(String msg) throws InvalidGenomicCoordsException, IOException{
+		System.err.print(Utils.padEndMultiLine(msg, this.getGc().getUserWindowSize()));
+		try {
+			this.setAwk("");
+		} catch (ClassNotFoundException | IOException | InvalidRecordException | SQLException e) {
+			//
+		}
+		throw new InvalidGenomicCoordsException();
 	}
 
 	/**Return the coordinates of the next feature so that the start coincide with the start of the feature and
@@ -343,6 +417,7 @@ public class TrackIntervalFeature extends Track {
 
 		while(chunkTo > 0){
 			TabixBigBedIterator iter= this.getReader().query(chrom, chunkFrom, chunkTo);
+			List<IntervalFeature> candidates= new ArrayList<IntervalFeature>();
 			while(true){
 				// Find the last feature in this chunk where end coordinate is less then pos
 				String line= iter.next();
@@ -351,11 +426,14 @@ public class TrackIntervalFeature extends Track {
 				} 
 				line= line.trim();
 				IntervalFeature candidate= new IntervalFeature(line, this.getTrackFormat(), this.getVCFCodec());
-				if(candidate.getTo() < pos && this.featureIsVisible(line)){ 
-					// This is a candidate feature but we don't know yet of it's the last one
-					last= new IntervalFeature(line, this.getTrackFormat(), this.getVCFCodec());
+				if(candidate.getTo() < pos){ 
+					candidates.add(candidate);
 				}
 			}
+			List<IntervalFeature> visible= this.filterVisible(candidates);
+			if(visible.size() > 0){
+				last= visible.get(visible.size() - 1);
+			}
 			if(last != null){
 				break; // The last feature is not null and valid. Stop looking 
 			} else {
@@ -503,7 +581,11 @@ public class TrackIntervalFeature extends Track {
 			}
 		}
 
-		return StringUtils.join(printable, "\n").replaceAll("\n$", "");
+		String joined= StringUtils.join(printable, "\n");
+		if(joined.endsWith("\n")){
+			return joined.substring(0, joined.length() - 1);
+		}
+		return joined;
 	}
 	
 	/**		
@@ -532,44 +614,16 @@ public class TrackIntervalFeature extends Track {
 			intervals = flatListOfTx;
 		}
 		
-		// Make a copy of the IntervalFeature list. Items will be popped out as they are 
-		// added to individual lines. 
-		List<IntervalFeature> flatList= new ArrayList<IntervalFeature>(intervals);
-				
-		List<List<IntervalFeature>> listOfLines= new ArrayList<List<IntervalFeature>>();
-		if(flatList.size() == 0){
-			return listOfLines;
-		}
-		List<IntervalFeature> line= new ArrayList<IntervalFeature>();
-		line.add(flatList.get(0)); 
-		flatList.remove(0);
-		listOfLines.add(line);
-
-		while(true){
-			ArrayList<IntervalFeature> trToRemove= new ArrayList<IntervalFeature>();
-			// Find a read in input whose start is greater then end of current
-			for(int i=0; i < flatList.size(); i++){
-				IntervalFeature intervalFeature= flatList.get(i);
-				// int gap= 1; // Add a space between book-end features
-				if(intervalFeature.getScreenFrom() > line.get(line.size()-1).getScreenTo()+this.getGap()){ // +2 because we want some space between adjacent reads
-					listOfLines.get(listOfLines.size()-1).add(intervalFeature); // Append to the last line. 
-					trToRemove.add(intervalFeature);
-				}
-			} // At the end of the loop you have put in line as many reads as you can. 
-			for(IntervalFeature intervalFeature : trToRemove){ 
-				flatList.remove(flatList.indexOf(intervalFeature));
+		return RowPacker.pack(intervals, this.getGap(), new RowPacker.Extent<IntervalFeature>(){
+			@Override
+			public int getStart(IntervalFeature x) {
+				return x.getScreenFrom();
 			}
-			// Create a new line, add the first IntervalFeature in list
-			if(flatList.size() > 0){
-				line= new ArrayList<IntervalFeature>();
-				line.add(flatList.get(0));
-				listOfLines.add(line);
-				flatList.remove(0);
-			} else {
-				break;
+			@Override
+			public int getEnd(IntervalFeature x) {
+				return x.getScreenTo();
 			}
-		}
-		return listOfLines;
+		});
 	}
 	
 	/** Return a string of a single line of (typically de-stacked) reads
@@ -579,11 +633,8 @@ public class TrackIntervalFeature extends Track {
 	 * */
 	private String printToScreenOneLine(List<IntervalFeature> listToPrint) throws InvalidGenomicCoordsException, IOException, InvalidColourException {
 		
-		List<String> printable= new ArrayList<String>(); // Each item in this list occupies a character space in the terminal. 
-		                                                 // NB: Each item is String not char because it might contain the ansi formatting.
-		for(int i= 0; i < this.getGc().getMapping().size(); i++){ // First create empty line
-			printable.add(" ");
-		}
+		// Each item in this array occupies a character space in the terminal. Null for blanks. 
+		FeatureChar[] printable= new FeatureChar[this.getGc().getMapping().size()];
 		for(IntervalFeature intervalFeature : listToPrint){
 			if(intervalFeature.getScreenFrom() == -1){
 				continue; // See test canProcessIndelAtWindowBoundary for how this can happen
@@ -592,11 +643,19 @@ public class TrackIntervalFeature extends Track {
 
 			int i= 0;
 			for(int j= intervalFeature.getScreenFrom(); j <= intervalFeature.getScreenTo(); j++){
-				printable.set(j, text.get(i).format(this.isNoFormat()));
+				printable[j]= text.get(i);
 				i++;
 			}			
 		}
-		return StringUtils.join(printable, "");
+		AnsiEncoder enc= new AnsiEncoder(this.isNoFormat() ? 0 : Config.get256Color(ConfigKey.background));
+		for(FeatureChar x : printable){
+			if(x == null){
+				enc.appendPlain(' ', 0);
+			} else {
+				x.appendTo(enc, this.isNoFormat());
+			}
+		}
+		return enc.toString();
 	}
 
 	/** List where the original records have been grouped into transcripts. If there are 
@@ -678,6 +737,9 @@ public class TrackIntervalFeature extends Track {
 		if( ! this.getAwk().equals(Filter.DEFAULT_AWK.getValue())){
 			title.add("awk");
 		}
+		if(this.getColumnFilter() != null){
+			title.add("filter");
+		}
 		if( ! this.getShowRegex().pattern().equals(Filter.DEFAULT_SHOW_REGEX.getValue()) || ! this.getHideRegex().pattern().equals(Filter.DEFAULT_HIDE_REGEX.getValue())){
 			title.add("grep");
 		}
@@ -993,6 +1055,8 @@ public class TrackIntervalFeature extends Track {
 	
 		if(this.bigBedReader != null){
 			return new TabixBigBedReader(this.bigBedReader);
+		} else if(this.memoryIndex != null){
+			return new TabixBigBedReader(this.memoryIndex);
 		} else if(this.tabixReader != null){
 			return new TabixBigBedReader(this.tabixReader);
 		} else {
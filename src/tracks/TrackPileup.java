@@ -1,36 +1,25 @@
 package tracks;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.sql.SQLException;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Random;
 import java.util.regex.Pattern;
 
-import org.apache.commons.lang3.StringUtils;
-
+import coloring.AnsiEncoder;
 import coloring.Config;
 import coloring.ConfigKey;
 import exceptions.InvalidColourException;
 import exceptions.InvalidGenomicCoordsException;
 import exceptions.InvalidRecordException;
-import htsjdk.samtools.AlignmentBlock;
-import htsjdk.samtools.CigarElement;
-import htsjdk.samtools.CigarOperator;
 import htsjdk.samtools.SAMRecord;
-import htsjdk.samtools.SamReader;
 import htsjdk.samtools.filter.SamRecordFilter;
 import htsjdk.samtools.reference.IndexedFastaSequenceFile;
-import htsjdk.samtools.util.IntervalTree;
 import samTextViewer.GenomicCoords;
 import samTextViewer.Utils;
 
@@ -38,14 +27,17 @@ import samTextViewer.Utils;
  * */
 public class TrackPileup extends TrackWiggles {
 
-	/** Key: Position of the locus. Value: information at this position. 
-	 * NB: This is a hashmap so positions are not returned in order. The method(s)
-	 * getDepth(), etc should return a TreeMap for positions to be sorted. Here we use
-	 * HashMap because is faster to build. 
-	 * */
-	private Map<String, Map<Integer, Locus>> loci= new HashMap<String, Map<Integer, Locus>>();
-	@SuppressWarnings("rawtypes")
-	private Map<String, IntervalTree> zeroDepthIntervals= new HashMap<String, IntervalTree>(); 
+	/** Base counts over the current genomic window. Null if not yet collected.*/
+	private PileupAccumulator accumulator= null;
+	/** Counts collected so far, in genomic tiles*/
+	private PileupTileCache tileCache= new PileupTileCache(PileupTileCache.DEFAULT_MAX_BYTES);
+	
+	/** Precomputed coverage used for large windows, if available. */
+	private CoverageSidecar sidecar= null;
+	/** Filters and time stamp of the sidecar file currently open*/
+	private String sidecarKey= null;
+	/** True if screen scores of the current window come from the sidecar */
+	private boolean fromSidecar= false;
 	
 	private List<ScreenWiggleLocusInfo> screenWiggleLocusInfoList= new ArrayList<ScreenWiggleLocusInfo>();
 	private long alnRecCnt= -1;
@@ -63,16 +55,22 @@ public class TrackPileup extends TrackWiggles {
 	 * @throws ClassNotFoundException 
 	 * */
 	protected TrackPileup(String bam, GenomicCoords gc) throws IOException, ClassNotFoundException, InvalidGenomicCoordsException, InvalidRecordException, SQLException {
+		this(bam, gc, null);
+	}
+
+	/** As TrackPileup(bam, gc) but get alignments from the given AlignmentWindow, typically 
+	 * shared with the read track of the same file. If alignmentWindow is null a new one is
+	 * prepared for this track.
+	 * */
+	protected TrackPileup(String bam, GenomicCoords gc, AlignmentWindow alignmentWindow) throws IOException, ClassNotFoundException, InvalidGenomicCoordsException, InvalidRecordException, SQLException {
 
 		this.setTrackFormat(TrackFormat.BAM);
 		
-		if(!Utils.bamHasIndex(bam)){
-			File temp= Utils.createTempFile(".asciigenome.", ".bam");
-			Utils.sortAndIndexSamOrBam(bam, temp.getAbsolutePath(), true);
-			this.setWorkFilename(temp.getAbsolutePath());
-		} else {
-			this.setWorkFilename(bam);
+		if(alignmentWindow == null){
+			alignmentWindow= AlignmentWindow.fromSource(bam);
 		}
+		this.setAlignmentWindow(alignmentWindow);
+		this.setWorkFilename(alignmentWindow.getWorkFilename());
 		this.setFilename(bam);
 		this.setGc(gc);
 		// this.alnRecCnt= Utils.getAlignedReadCount(this.getWorkFilename());
@@ -88,19 +86,28 @@ public class TrackPileup extends TrackWiggles {
 	}
 	
 	@Override
-	public void setShowHideRegex(Pattern showRegex, Pattern hideRegex) throws InvalidGenomicCoordsException, IOException, ClassNotFoundException, InvalidRecordException, SQLException{
+	public void setShowHideRegex(Pattern showRegex, Pattern hideRegex, String grepField) throws InvalidGenomicCoordsException, IOException, ClassNotFoundException, InvalidRecordException, SQLException{
 		this.clearCache();
-		this.getFeatureFilter().setShowHideRegex(showRegex, hideRegex);
+		this.getFeatureFilter().setShowHideRegex(showRegex, hideRegex, grepField);
 		this.update();
 	}
 		
 	@Override
 	public void setAwk(String awk) throws ClassNotFoundException, IOException, InvalidGenomicCoordsException, InvalidRecordException, SQLException {
 		this.clearCache();
+		this.getFeatureFilter().setColumnFilter(null);
 		this.getFeatureFilter().setAwk(awk);
 		this.update();
 	}
 
+	@Override
+	protected void setColumnFilter(ColumnFilter columnFilter) throws ClassNotFoundException, IOException, InvalidGenomicCoordsException, InvalidRecordException, SQLException {
+		this.clearCache();
+		this.getFeatureFilter().setAwk(Filter.DEFAULT_AWK.getValue());
+		this.getFeatureFilter().setColumnFilter(columnFilter);
+		this.update();
+	}
+
 	@Override 
 	public String getAwk(){
 		// MEMO: You need to override TrackWiggles not Tracks!
@@ -115,102 +122,131 @@ public class TrackPileup extends TrackWiggles {
 
 	/*       M E T H O D S        */
 	
-	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@Override
 	public void update() throws InvalidGenomicCoordsException, IOException{
 		
 		if(this.getyMaxLines() == 0){
 			return;
 		}
-		if( ! this.useSamtools()){
-			String chrom= this.getGc().getChrom();
+		String chrom= this.getGc().getChrom();
+		int from= this.getGc().getFrom();
+		int to= this.getGc().getTo();
+		
+		this.fromSidecar= false;
+		if((to - from + 1) >= Track.MAX_REGION_SIZE && this.getSidecar() != null){
+			this.accumulator= null;
+			this.fromSidecar= true;
+			this.setScreenScores(this.sidecar.getScreenScores(this.getGc()));
+			return;
+		}
+		
+		// Per-base counts are needed only to show the consensus sequence
+		PileupAccumulator acc= new PileupAccumulator(chrom, from, to, this.getGc().isSingleBaseResolution);
+		
+		// Take what we can from cache and read alignments only for the tiles not cached yet.
+		// Alignments are read over whole tiles so these can be cached.
+		List<int[]> missing= this.tileCache.fill(acc);
+		int winFrom= PileupTileCache.tileStart(from);
+		int winTo= PileupTileCache.tileEnd(to);
+		boolean parallel= ! acc.hasBaseCounts() && (winTo - winFrom + 1) >= Track.MAX_REGION_SIZE;
+		for(int[] tile : missing){
 			
-			if(! this.loci.containsKey(chrom)){
-				this.loci.put(chrom, new HashMap<Integer, Locus>());
-			}
-			if(! this.zeroDepthIntervals.containsKey(chrom)){
-				this.zeroDepthIntervals.put(chrom, new IntervalTree());
+			PileupAccumulator tileAcc= new PileupAccumulator(chrom, tile[0], tile[1], acc.hasBaseCounts());
+			if(parallel){
+				// Window too large to be held in memory: Read it in chunks on multiple threads
+				DepthEngine.collect(this.getWorkFilename(), this, tileAcc);
+			} else {
+				FilteredSamIterator sam= this.filterReads(this.getAlignmentWindow().query(chrom, tile[0], tile[1], winFrom, winTo));
+				SAMRecord rec;
+				while((rec= sam.next()) != null){
+					tileAcc.add(rec, tile[0], tile[1]);
+				}
 			}
-	
-			// Check cache is not growing too much
-			if(this.loci.get(chrom).keySet().size() > 500000){
-				this.loci.get(chrom).clear();
-				this.zeroDepthIntervals.get(chrom).clear();
+			acc.copyOverlap(tileAcc);
+			this.tileCache.put(tileAcc, winFrom, winTo);
+		}
+		this.accumulator= acc;
+		List<Float> screenScores= this.prepareScreenScores();
+		this.setScreenScores(screenScores);
+	}
+
+	/** Compute and cache the tiles of pileup for the window gc, unless the cache is full.
+	 * Large windows are not prefetched since they are not read from memory. Neither are
+	 * windows with an awk filter since awk is not safe to run outside the main thread.
+	 * */
+	@Override
+	protected void prefetch(GenomicCoords gc, Prefetcher prefetcher) throws IOException, InvalidGenomicCoordsException{
+		if(this.getyMaxLines() == 0 || 
+				(gc.getTo() - gc.getFrom() + 1) >= Track.MAX_REGION_SIZE ||
+				! this.getAwk().equals(Filter.DEFAULT_AWK.getValue())){
+			return;
+		}
+		String chrom= gc.getChrom();
+		List<Integer> missing= this.tileCache.missing(chrom, gc.getFrom(), gc.getTo(), gc.isSingleBaseResolution);
+		if(missing.isEmpty()){
+			return;
+		}
+		List<SAMRecord> records= this.getAlignmentWindow().prefetch(chrom, 
+				PileupTileCache.tileStart(gc.getFrom()), PileupTileCache.tileEnd(gc.getTo()), prefetcher);
+		if(records == null){
+			return;
+		}
+		for(int start : missing){
+			if(prefetcher.isCancelled()){
+				return;
 			}
-			
-			// Find the positions that we haven't visited before:
-			List<Integer> missingPos= new ArrayList<Integer>();
-			for(int pos= this.getGc().getFrom(); pos <= this.getGc().getTo(); pos++){
-				if( ! this.loci.get(chrom).containsKey(pos) &&  
-					! this.zeroDepthIntervals.get(chrom).overlappers(pos, pos).hasNext()){
-					missingPos.add(pos);
+			int end= start + PileupTileCache.TILE_SIZE - 1;
+			List<SAMRecord> overlapping= new ArrayList<SAMRecord>();
+			for(SAMRecord rec : records){
+				if(rec.getAlignmentStart() <= end && rec.getAlignmentEnd() >= start){
+					overlapping.add(rec);
 				}
 			}
-			for(List<Integer> gap : mergePositionsInIntervals(missingPos)){
-	
-				int qryFrom= gap.get(0);
-				int qryTo= gap.get(1);
-				
-				SamReader samReader= Utils.getSamReader(this.getWorkFilename());
-				List<Boolean> passFilter= this.filterReads(samReader, chrom, qryFrom, qryTo);
-				samReader= Utils.getSamReader(this.getWorkFilename());
-				
-				Iterator<SAMRecord> sam= samReader.query(chrom, qryFrom, qryTo, false);
-		
-				ListIterator<Boolean> pass = passFilter.listIterator();
-				while(sam.hasNext()){
-					SAMRecord rec= sam.next();
-					if(pass.next()){
-						this.add(rec, qryFrom, qryTo, this.loci.get(chrom));
-					}
-				}
-				
-				// Now add the loci that have been collected in this last update
-				List<Integer> zeroDepthPos= new ArrayList<Integer>();
-				for(int pos= qryFrom; pos <= qryTo; pos++){
-					if( ! this.loci.get(chrom).containsKey(pos)){
-						zeroDepthPos.add(pos);
-					}
-				}
-				List<List<Integer>> zeroDepthGaps = mergePositionsInIntervals(zeroDepthPos);
-				for(List<Integer> z : zeroDepthGaps){
-					this.zeroDepthIntervals.get(chrom).put(z.get(0), z.get(1), null);
-				}
+			PileupAccumulator tileAcc= new PileupAccumulator(chrom, start, end, gc.isSingleBaseResolution);
+			FilteredSamIterator sam= this.filterReads(overlapping.iterator());
+			SAMRecord rec;
+			while((rec= sam.next()) != null){
+				tileAcc.add(rec, start, end);
+			}
+			if( ! this.tileCache.fits(tileAcc.getBytes()) || ! prefetcher.reserve(tileAcc.getBytes())){
+				return;
 			}
+			this.tileCache.put(tileAcc);
 		}
-		List<Float> screenScores= this.prepareScreenScores();
-		this.setScreenScores(screenScores);
 	}
 
-	private boolean useSamtools() throws IOException {
+	/** Return the coverage sidecar of this bam if it exists and matches the current filters.
+	 * Filters other than mapq and sam flags are not applied to the sidecar so in this case
+	 * return null.
+	 * */
+	private CoverageSidecar getSidecar(){
+		FeatureFilter ff= this.getFeatureFilter();
+		if( ! ff.getAwk().equals(Filter.DEFAULT_AWK.getValue()) || ff.getColumnFilter() != null ||
+			! ff.getShowRegex().pattern().equals(Filter.DEFAULT_SHOW_REGEX.getValue()) ||
+			! ff.getHideRegex().pattern().equals(Filter.DEFAULT_HIDE_REGEX.getValue()) ||
+			! ff.getVariantChrom().equals(Filter.DEFAULT_VARIANT_CHROM.getValue())){
+			return null;
+		}
+		String key= ff.getMapq() + " " + ff.get_f_flag() + " " + ff.get_F_flag() + " " + 
+				new File(CoverageSidecar.getFilename(this.getFilename())).lastModified();
+		if( ! key.equals(this.sidecarKey)){
+			if(this.sidecar != null){
+				this.sidecar.close();
+			}
+			this.sidecar= CoverageSidecar.open(this.getFilename(), ff.getMapq(), ff.get_f_flag(), ff.get_F_flag());
+			this.sidecarKey= key;
+		}
+		return this.sidecar;
+	}
 
-		if(this.getSamtoolsPath() == null || this.getSamtoolsPath().trim().isEmpty()){
-			return false;
-		}
-		List<String> cmd= new ArrayList<String>();
-		cmd.add("/bin/sh");
-		cmd.add("-c");
-		cmd.add(this.getSamtoolsPath() + " --version"); 
-		ProcessBuilder pb = new ProcessBuilder().command(cmd);
-		pb.redirectErrorStream(true);
-		Process p= pb.start();
-		
-		try {
-			p.waitFor();
-		} catch (InterruptedException e) {
-			return false;
-		}
-		if(p.exitValue() != 0){
-			return false;
-		}
-		if(this.getFeatureFilter().hideRegex.equals(Filter.DEFAULT_HIDE_REGEX.getValue()) &&
-		   this.getFeatureFilter().showRegex.equals(Filter.DEFAULT_SHOW_REGEX.getValue()) &&
-		   this.getFeatureFilter().getAwk().equals(Filter.DEFAULT_AWK.getValue()) &&
-		   this.getFeatureFilter().getVariantChrom().equals(Filter.DEFAULT_VARIANT_CHROM.getValue()) &&
-		   ! this.getGc().isSingleBaseResolution){
-			return true;
-		}	
-		return false;
+	/** Compute the coverage sidecar for this bam with the current mapq and sam flag
+	 * filters and use it from now on for large windows. Return the sidecar file.
+	 * */
+	public File makeSidecar() throws IOException, InvalidGenomicCoordsException{
+		File tdf= CoverageSidecar.build(this.getFilename(), this.getWorkFilename(), 
+				this.getFeatureFilter().getMapq(), this.getFeatureFilter().get_f_flag(), this.getFeatureFilter().get_F_flag());
+		this.update();
+		return tdf;
 	}
 
 	private List<Float> prepareScreenScores() throws InvalidGenomicCoordsException, IOException{
@@ -223,7 +259,6 @@ public class TrackPileup extends TrackWiggles {
 			this.screenWiggleLocusInfoList.add(new ScreenWiggleLocusInfo());
 		}		
 		
-		List<Double> mapping= this.getGc().getMapping();
 		Map<Integer, Integer> depthMap = this.getDepth(this.getGc().getChrom(), this.getGc().getFrom(), this.getGc().getTo());
 		// Winsorise here:
 //		if(this.getWinsorizeMultiple() > 0){
@@ -234,7 +269,7 @@ public class TrackPileup extends TrackWiggles {
 //		}
 		
 		for(int refPos : depthMap.keySet()){
-			int screenIdx= Utils.getIndexOfclosestValue(refPos, mapping);
+			int screenIdx= this.getGc().getColumnOfPosition(refPos);
 			ScreenWiggleLocusInfo sloc = this.screenWiggleLocusInfoList.get(screenIdx);
 			int depth= depthMap.get(refPos);
 			sloc.increment(depth);
@@ -253,179 +288,36 @@ public class TrackPileup extends TrackWiggles {
 		return this.screenScores;
 	}
 	
-	/** Update the given map of loci with the information in this record. Only consider positions
-	 * between qryFrom and qryTo. 
-	 * */
-	private void add(SAMRecord samRecord, int qryFrom, int qryTo, Map<Integer, Locus> accumulator){
-		
-		// Is this read forward or reverse? First or second in pair?
-		boolean isFirstOFPair= ! samRecord.getFirstOfPairFlag();
-		boolean isReverse= samRecord.getReadNegativeStrandFlag();
-		
-		List<AlignmentBlock> alnBlocks = samRecord.getAlignmentBlocks();
-		if(alnBlocks.size() == 0){
-			// Nothing to be done. This may happen with e.g. fully clipped reads
-			return; 
-		}
-		int readPos= alnBlocks.get(0).getReadStart() - 1; // Leftmost position where the read starts aligning.
-		for(AlignmentBlock block : alnBlocks){
-			
-			if(block.getReferenceStart() > qryTo){
-				// This block is completely to the right of the user's coordinates: Not useful
-				continue; 
-			}
-			if((block.getReferenceStart() + block.getLength() - 1) < qryFrom){
-				// This block is completely to the left of the user's coordinates.
-				// So no useful information here.
-				continue;
-			}
-			
-			int refPos= block.getReferenceStart() - 1; // -1 because we increment immediately in the loop
-			for(int i= 0; i < block.getLength(); i++){
-				// Iterate through each base of this block
-				refPos++;
-				readPos++;
-				if(refPos < qryFrom){
-					continue; // Skip this position. Part of this block is outside user's coordinates. 
-				}
-				if(refPos > qryTo){
-					break; // We have passed the user's endpoint, no need to process this record anymore
-				}
-				// What read base do we have at this position?
-				char base= samRecord.getReadBases().length == 0 ? 'N' : (char) samRecord.getReadBases()[readPos-1];				
-
-				// Start collecting info	
-				if( ! accumulator.containsKey(refPos)){
-					// Add this position to the map.
-					accumulator.put(refPos, new Locus(this.getGc().getChrom(), refPos));
-				}
-				accumulator.get(refPos).add(base, isReverse, isFirstOFPair);
-			}
-		}
-		// Now we need to increment counts corresponding to deletions in the reference
-		List<int[]>deletedBlocks= this.getRefPositionOfDeletedBlocks(samRecord);
-		for(int[] block : deletedBlocks){
-			for(int refPos= block[0]; refPos <= block[1]; refPos++){
-				if(refPos < qryFrom || refPos > qryTo){
-					continue; // Position is outside user's coordinates.
-				}
-				if( ! accumulator.containsKey(refPos)){
-					// Add this position to the map.
-					accumulator.put(refPos, new Locus(this.getGc().getChrom(), refPos));
-				}
-				accumulator.get(refPos).add('D', isReverse, isFirstOFPair);
-			}
-		}
-	}
-	
-	/**
-	 * MEMO: Deletion does not consume read bases. It consumes reference bases:
-	 * ref  NNNNNNNN
-	 * read NNN---NN
-	 * */
-	private List<int[]> getRefPositionOfDeletedBlocks(SAMRecord samRecord){
-		
-		int ndel= StringUtils.countMatches(samRecord.getCigarString().toUpperCase(), 'D');
-		List<int[]> deletedBlocks= new ArrayList<int[]>(ndel); // int array contains start and end of deletion
-		if( ndel == 0 ){
-			return deletedBlocks; // No deletetions, nothing to be done.
-		}
-		
-		// 1S 2M 3D 4M 5D 6M 7S
-		// Walk along the cigar string. When an operator consumes read bases, advance the position tracker
-		// When you hit a deletion record the start and end of the deleted block in ref coordinates.
-		List<CigarElement> cigarOps = samRecord.getCigar().getCigarElements();
-		int readTracker= 0;
-		int[] deletedBlock= new int[2]; // Length 2 because it contains start and end of deleted block
-		for(CigarElement op : cigarOps){
-			if(op.getOperator().equals(CigarOperator.DELETION)){
-				deletedBlock[0]= samRecord.getReferencePositionAtReadPosition(readTracker) + 1;
-				deletedBlock[1]= samRecord.getReferencePositionAtReadPosition(readTracker + 1) - 1;
-				deletedBlocks.add(deletedBlock);
-				deletedBlock= new int[2];
-				if(deletedBlocks.size() == ndel){
-					// We have accumulated all the deleted blocks. No need to process this read any more.
-					return deletedBlocks; 
-				}
-			}
-			if(op.getOperator().consumesReadBases()){
-				readTracker += op.getLength();
-			}
-		}
-		return deletedBlocks;
-	}
-
 	/** Depth at each position. Key: reference position. Value: depth. 
 	 * @throws IOException 
 	 * */
 	protected Map<Integer, Integer> getDepth(String chrom, int from, int to) throws IOException{
 		
-		if(this.useSamtools()){
-			try {
-				return this.getDepthSamtools(chrom, from, to);
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
+		Map<Integer, Integer> depth= new LinkedHashMap<Integer, Integer>();
+		if(this.accumulator == null || ! this.accumulator.getChrom().equals(chrom)){
+			return depth;
 		}
-		List<Integer> posInWindow= new ArrayList<Integer>();  
-		for(int pos : this.loci.get(chrom).keySet()){
-			if(pos < from || pos > to){
-				// Because of locus caching, some loci maybe outside the current window.
-				continue;
-			} else {
-				posInWindow.add(pos);
+		from= Math.max(from, this.accumulator.getFrom());
+		to= Math.min(to, this.accumulator.getTo());
+		
+		int nPos= 0;
+		for(int pos= from; pos <= to; pos++){
+			if(this.accumulator.getDepth(pos) > 0){
+				nPos++;
 			}
 		}
-
-		double samplingRate= (200000.0) / posInWindow.size();
+		double samplingRate= (200000.0) / nPos;
 		Random rand = new Random();
 		// Important: Use have positions returned sorted. 
-		Map<Integer, Integer> depth= new LinkedHashMap<Integer, Integer>();
-		for(int pos : posInWindow){
-			int posDepth= this.loci.get(chrom).get(pos).getDepth();
-			if(rand.nextFloat() < samplingRate){
+		for(int pos= from; pos <= to; pos++){
+			int posDepth= this.accumulator.getDepth(pos);
+			if(posDepth > 0 && rand.nextFloat() < samplingRate){
 				depth.put(pos, posDepth);			
 			}
 		}
 		return depth;
 	}
 	
-	private Map<Integer, Integer> getDepthSamtools(String chrom, int from, int to) throws IOException{
-		
-		String flags= "-q " + this.getFeatureFilter().getMapq() + " -f " + this.getFeatureFilter().get_f_flag() + " -F " + this.getFeatureFilter().get_F_flag();   
-		List<String> cmd= new ArrayList<String>();
-		cmd.add("/bin/sh");
-		cmd.add("-c");
-		cmd.add(this.getSamtoolsPath() + " view -@ 4 -u " + flags + " " + this.getWorkFilename() + " " + chrom + ":" + from + "-" + to + 
-				" | " + this.getSamtoolsPath() + " depth -d 1000000000 -");
-		ProcessBuilder pb = new ProcessBuilder().command(cmd);
-		Process p= pb.start();
-		
-		BufferedReader reader= new BufferedReader(new InputStreamReader(p.getInputStream()));
-    
-		Map<Integer, Integer> depth= new LinkedHashMap<Integer, Integer>();
-		String line = "";
-		while ((line = reader.readLine())!= null) {
-			String[] rec= line.split("\t");
-			int pos= Integer.valueOf(rec[1]);
-			if(pos >= from && pos <= to){
-				depth.put(pos, Integer.valueOf(rec[2]));
-			}
-		}
-		reader.close();
-
-		try {
-			p.waitFor();
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-		}
-		if(p.exitValue() != 0){
-			throw new IOException();
-		}
-		return depth;
-
-	}
-	
 	private char[] getConsensusSequence() throws IOException {
 		
 		// We could get the refseq from genomicCoords but maybe safer to extract it again from scratch.
@@ -439,11 +331,12 @@ public class TrackPileup extends TrackWiggles {
 		int i= 0;
 		for(int pos= this.getGc().getFrom(); pos <= this.getGc().getTo(); pos++){
 			char consensus= ' '; // Empty char assuming there is no coverage.
-			if(this.loci.get(this.getGc().getChrom()).containsKey(pos)){ // If containsKey then the position has coverage.
-				Locus loc= this.loci.get(this.getGc().getChrom()).get(pos);
-				consensus= loc.getConsensus();
+			if(this.accumulator != null && this.accumulator.hasBaseCounts() &&
+			   pos >= this.accumulator.getFrom() && pos <= this.accumulator.getTo() && 
+			   this.accumulator.getDepth(pos) > 0){
+				consensus= this.accumulator.getConsensus(pos);
 				if(refSeq != null){
-					char ref= Character.toUpperCase((char) refSeq[loc.pos - this.getGc().getFrom()]);
+					char ref= Character.toUpperCase((char) refSeq[pos - this.getGc().getFrom()]);
 					if(ref == Character.toUpperCase(consensus)){
 						consensus= '=';
 					}
@@ -463,22 +356,25 @@ public class TrackPileup extends TrackWiggles {
 		if(new String(this.getConsensusSequence()).trim().isEmpty()){
 			return ""; // If there is no coverage at all
 		}
-		String faSeqStr= "";
-		for(char base : this.getConsensusSequence()){
-			
-			if(this.isNoFormat()){
-				faSeqStr += base;
-			} else { 
-				faSeqStr += "\033[48;5;" + Config.get256Color(ConfigKey.background) + ";38;5;";
-				     if(base == 'A') { faSeqStr += Config.get256Color(ConfigKey.seq_a);} 
-				else if(base == 'C') { faSeqStr += Config.get256Color(ConfigKey.seq_c);} 
-				else if(base == 'G') { faSeqStr += Config.get256Color(ConfigKey.seq_g);} 
-				else if(base == 'T') { faSeqStr += Config.get256Color(ConfigKey.seq_t);} 
-				else { faSeqStr += Config.get256Color(ConfigKey.seq_other); }
-				faSeqStr += "m" + base + "\033[0m\033[38;5;0;48;5;" + Config.get256Color(ConfigKey.background) + "m"; // Clear formatting and fg to black and bg to white;
-			}
-		}
-		return faSeqStr + "\n";
+		char[] consensus= this.getConsensusSequence();
+		if(this.isNoFormat()){
+			return new String(consensus) + "\n";
+		}
+		int bg= Config.get256Color(ConfigKey.background);
+		int a= Config.get256Color(ConfigKey.seq_a);
+		int c= Config.get256Color(ConfigKey.seq_c);
+		int g= Config.get256Color(ConfigKey.seq_g);
+		int t= Config.get256Color(ConfigKey.seq_t);
+		int other= Config.get256Color(ConfigKey.seq_other);
+		AnsiEncoder enc= new AnsiEncoder(bg);
+		for(char base : consensus){
+			     if(base == 'A') { enc.append(base, a, bg, 0); } 
+			else if(base == 'C') { enc.append(base, c, bg, 0); } 
+			else if(base == 'G') { enc.append(base, g, bg, 0); } 
+			else if(base == 'T') { enc.append(base, t, bg, 0); } 
+			else { enc.append(base, other, bg, 0); }
+		}
+		return enc.toString() + "\n";
 	}
 	
 	@Override
@@ -487,6 +383,9 @@ public class TrackPileup extends TrackWiggles {
 		if( ! this.getAwk().equals(Filter.DEFAULT_AWK.getValue())){
 			title.add("awk");
 		}
+		if(this.getColumnFilter() != null){
+			title.add("filter");
+		}
 		if( ! this.getShowRegex().pattern().equals(Filter.DEFAULT_SHOW_REGEX.getValue()) || ! this.getHideRegex().pattern().equals(Filter.DEFAULT_HIDE_REGEX.getValue())){
 			title.add("grep");
 		}
@@ -540,6 +439,7 @@ public class TrackPileup extends TrackWiggles {
 				+ "; range[" + rounded[0] + " " + rounded[1] + "]"
 				+ libsize
 				+ rpmTag
+				+ (this.fromSidecar ? "; tdf" : "")
 				+ this.getTitleForActiveFilters();
 		return this.formatTitle(xtitle) + "\n";
 	}
@@ -588,7 +488,17 @@ public class TrackPileup extends TrackWiggles {
 	}
 
 	private void clearCache(){
-		this.loci.clear(); // clear cached positions
-		this.zeroDepthIntervals.clear();
+		this.accumulator= null; // clear cached positions
+		this.tileCache.clear();
+	}
+
+	/** Number of genomic tiles of pileup served from cache*/
+	public long getCacheHits(){
+		return this.tileCache.getHits();
+	}
+
+	/** Number of genomic tiles of pileup not found in cache and read from file*/
+	public long getCacheMisses(){
+		return this.tileCache.getMisses();
 	}
 }
@@ -1,18 +1,18 @@
 package tracks;
 
-import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.ListIterator;
+import java.util.Map;
 import java.util.Random;
 import java.util.regex.Pattern;
 
-import org.apache.commons.lang3.StringUtils;
 
 import coloring.Config;
 import coloring.ConfigKey;
@@ -20,7 +20,6 @@ import exceptions.InvalidColourException;
 import exceptions.InvalidGenomicCoordsException;
 import exceptions.InvalidRecordException;
 import htsjdk.samtools.SAMRecord;
-import htsjdk.samtools.SamReader;
 import samTextViewer.GenomicCoords;
 import samTextViewer.Utils;
 
@@ -32,8 +31,12 @@ import samTextViewer.Utils;
 public class TrackReads extends Track{
 
 	private List<List<SamSequenceFragment>> readStack;
+	/** All the sampled reads, also those in rows not laid out*/
+	private List<SAMRecord> sampledReads= new ArrayList<SAMRecord>();
 	// private boolean withReadName= false;
 	private long nRecsInWindow= -1;
+	/** Reads in the sample not shown because the track height is exceeded*/
+	private long nHiddenReads= 0;
 	private int userWindowSize;
 	private List<Argument> colorForRegex= null;
 	private long alnRecCnt= -1;
@@ -52,16 +55,23 @@ public class TrackReads extends Track{
 	 * @throws ClassNotFoundException 
 	 */
 	public TrackReads(String bam, GenomicCoords gc) throws IOException, InvalidGenomicCoordsException, ClassNotFoundException, InvalidRecordException, SQLException{
+		this(bam, gc, null);
+	}
+
+	/**
+	 * Create read track getting alignments from the given AlignmentWindow, typically 
+	 * shared with the coverage track of the same file. If alignmentWindow is null a new one is 
+	 * prepared for this track.
+	 */
+	protected TrackReads(String bam, GenomicCoords gc, AlignmentWindow alignmentWindow) throws IOException, InvalidGenomicCoordsException, ClassNotFoundException, InvalidRecordException, SQLException{
 
 		this.setTrackFormat(TrackFormat.BAM);
 		
-		if(!Utils.bamHasIndex(bam)){
-			File temp= Utils.createTempFile(".asciigenome.", ".bam");
-			Utils.sortAndIndexSamOrBam(bam, temp.getAbsolutePath(), true);
-			this.setWorkFilename(temp.getAbsolutePath());
-		} else {
-			this.setWorkFilename(bam);
+		if(alignmentWindow == null){
+			alignmentWindow= AlignmentWindow.fromSource(bam);
 		}
+		this.setAlignmentWindow(alignmentWindow);
+		this.setWorkFilename(alignmentWindow.getWorkFilename());
 		this.setFilename(bam);
 		this.setGc(gc);
 	}
@@ -72,6 +82,18 @@ public class TrackReads extends Track{
 	
 	/* M e t h o d s */
 	
+	/** Read ahead the alignments of the window gc. Whole tiles are read, as the coverage
+	 * track of the same file does, so that the window serves both tracks.
+	 * */
+	@Override
+	protected void prefetch(GenomicCoords gc, Prefetcher prefetcher) throws IOException, InvalidGenomicCoordsException{
+		if(this.getyMaxLines() == 0 || gc.getGenomicWindowSize() >= MAX_REGION_SIZE){
+			return;
+		}
+		this.getAlignmentWindow().prefetch(gc.getChrom(), 
+				PileupTileCache.tileStart(gc.getFrom()), PileupTileCache.tileEnd(gc.getTo()), prefetcher);
+	}
+
 	public void update() throws InvalidGenomicCoordsException, IOException{
 
 		if(this.getyMaxLines() == 0){
@@ -81,44 +103,42 @@ public class TrackReads extends Track{
 		this.userWindowSize= this.getGc().getUserWindowSize();
 		
 		this.readStack= new ArrayList<List<SamSequenceFragment>>();
-		if(this.getGc().getGenomicWindowSize() < this.MAX_REGION_SIZE){
-
-			SamReader samReader= Utils.getSamReader(this.getWorkFilename());
-			List<Boolean> passFilter= this.filterReads(samReader, this.getGc().getChrom(), this.getGc().getFrom(), this.getGc().getTo());
+		if(this.getGc().getGenomicWindowSize() < Track.MAX_REGION_SIZE){
 
-			this.nRecsInWindow= 0;
-			for(boolean x : passFilter){ // The count of reads in window is the count of reads passing filters
-				if(x){
-					this.nRecsInWindow++;
-				}
+			String chrom= this.getGc().getChrom();
+			int from= this.getGc().getFrom();
+			int to= this.getGc().getTo();
+			// Sample reads in the same pass that counts them. Use a new seed each time so 
+			// different screenshots will generate different samples.
+			int max_reads= (int) Float.parseFloat(Config.get(ConfigKey.max_reads_in_stack));
+			ReadSampler sampler= new ReadSampler(max_reads, new Random().nextLong());
+			FilteredSamIterator sam= this.filterReads(this.getAlignmentWindow().query(chrom, from, to, from, to));
+			SAMRecord rec;
+			while((rec= sam.next()) != null){
+				sampler.add(rec);
 			}
-			samReader= Utils.getSamReader(this.getWorkFilename());
-			Iterator<SAMRecord> sam= samReader.query(this.getGc().getChrom(), this.getGc().getFrom(), this.getGc().getTo(), false);
-			
-			float max_reads= Float.parseFloat(Config.get(ConfigKey.max_reads_in_stack));
-			float probSample= max_reads / this.nRecsInWindow;
-			
-			// Add this random String to the read name so different screenshot will generate 
-			// different samples. 
-			String rndOffset= Integer.toString(new Random().nextInt());
+			// The count of reads in window is the count of reads passing filters
+			this.nRecsInWindow= sampler.getCount();
 
+			this.sampledReads= sampler.getSample();
 			List<TextRead> textReads= new ArrayList<TextRead>();
-			ListIterator<Boolean> pass = passFilter.listIterator();
-			while(sam.hasNext() && textReads.size() < max_reads){
-				SAMRecord rec= sam.next();
-				if( pass.next() ){
-					String templ_name= Utils.templateNameFromSamReadName(rec.getReadName());
-					long v= (templ_name + rndOffset).hashCode(); // Hashing.md5().hashBytes((templ_name + rndOffset).getBytes()).asLong();
-					Random rand = new Random(v);
-					if(rand.nextFloat() < probSample){ // Downsampler
-						TextRead tr= new TextRead(rec, this.getGc());
-						textReads.add(tr);
-					}
+			for(SAMRecord x : this.sampledReads){
+				textReads.add(new TextRead(x, this.getGc()));
+			}
+			int nReads= textReads.size();
+			// Lay out only the rows that can be printed
+			int maxRows= (this.getyMaxLines() < 0) ? Integer.MAX_VALUE : this.getyMaxLines() + 1;
+			this.readStack= stackReads(textReads, maxRows);
+			this.nHiddenReads= nReads;
+			for(int idx : this.rowsToPrint()){
+				for(SamSequenceFragment frag : this.readStack.get(idx)){
+					this.nHiddenReads -= (frag.getRightRead() == null) ? 1 : 2;
 				}
 			}
-			this.readStack= stackReads(textReads);
 		} else {
 			this.nRecsInWindow= -1;
+			this.nHiddenReads= 0;
+			this.sampledReads= new ArrayList<SAMRecord>();
 		}
 	}
 	
@@ -129,30 +149,46 @@ public class TrackReads extends Track{
 	@Override
 	public String printToScreen() throws InvalidGenomicCoordsException, InvalidColourException{
 		
-		int yMaxLines= (this.getyMaxLines() < 0) ? Integer.MAX_VALUE : this.getyMaxLines();;
-		
-		// If there are more lines (inner lists) than desired lines of output (yMaxLines), get a representative sample
-		List<Double> keep= new ArrayList<Double>();
 		if(this.readStack.size() == 0){
 			return  "";
-		} else if(this.readStack.size() > yMaxLines){
-			keep= Utils.seqFromToLenOut(0, yMaxLines, yMaxLines);
-			// keep= Utils.seqFromToLenOut(0, this.readStack.size()-1, yMaxLines);
-		} else {
-			keep= Utils.seqFromToLenOut(0, this.readStack.size()-1, this.readStack.size());
 		}
 		StringBuilder printable= new StringBuilder();
 		// this.changeFeatureColor(null);
-		for(Double idx : keep){
-			List<SamSequenceFragment> line= this.readStack.get((int)Math.rint(idx));
+		ReadRow row= new ReadRow(this.userWindowSize);
+		for(int idx : this.rowsToPrint()){
+			List<SamSequenceFragment> line= this.readStack.get(idx);
 			try {
-				printable.append(linePrinter(line, this.bisulf, this.isNoFormat()));
+				printable.append(linePrinter(line, row, this.bisulf, this.isNoFormat()));
 				printable.append("\n");
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
 		}
-		return printable.toString().replaceAll("\n$", "");
+		if(printable.length() > 0 && printable.charAt(printable.length() - 1) == '\n'){
+			printable.setLength(printable.length() - 1);
+		}
+		return printable.toString();
+	}
+	
+	/** Index of the rows of the read stack to print. If there are more rows than 
+	 * desired lines of output (yMaxLines), get a representative sample.
+	 * */
+	private List<Integer> rowsToPrint(){
+		int yMaxLines= (this.getyMaxLines() < 0) ? Integer.MAX_VALUE : this.getyMaxLines();
+		List<Double> keep= new ArrayList<Double>();
+		if(this.readStack.size() == 0){
+			return new ArrayList<Integer>();
+		} else if(this.readStack.size() > yMaxLines){
+			keep= Utils.seqFromToLenOut(0, yMaxLines, yMaxLines);
+			// keep= Utils.seqFromToLenOut(0, this.readStack.size()-1, yMaxLines);
+		} else {
+			keep= Utils.seqFromToLenOut(0, this.readStack.size()-1, this.readStack.size());
+		}
+		List<Integer> idx= new ArrayList<Integer>();
+		for(Double x : keep){
+			idx.add((int)Math.rint(x));
+		}
+		return idx;
 	}
 	
 	/**		
@@ -167,46 +203,28 @@ public class TrackReads extends Track{
 	 * Output, each line is a list of TextRead:
      [AAAAAAAAAAAA TTTTTTTTTTT  GGGGGGGGGGG]       
 	 [ CCCCCCCCCCCC                     AAAAAAAA]
+	 * Only the first maxRows lines are returned.
 	 * @throws IOException 
 	 * @throws InvalidGenomicCoordsException 
 	 */
-	private List<List<SamSequenceFragment>> stackReads(List<TextRead> textReads) throws InvalidGenomicCoordsException, IOException{
+	private List<List<SamSequenceFragment>> stackReads(List<TextRead> textReads, int maxRows) throws InvalidGenomicCoordsException, IOException{
 		
-		List<List<SamSequenceFragment>> listOfLines= new ArrayList<List<SamSequenceFragment>>();
 		if(textReads.size() == 0){
-			return listOfLines;
+			return new ArrayList<List<SamSequenceFragment>>();
 		}
 
 		List<SamSequenceFragment> fragments= this.makeFragments(textReads, this.getReadsAsPairs()); 
-		List<SamSequenceFragment> line= new ArrayList<SamSequenceFragment>(); // All fragments going in the same line
-		line.add(fragments.get(0)); 
-		fragments.remove(0);
-		listOfLines.add(line);
 		int gap= (this.getGc().isSingleBaseResolution) ? 1 : 0; // If reads are very compressed, do not add space between adjacent ones.
-		while(true){
-			ArrayList<SamSequenceFragment> fragToRemove= new ArrayList<SamSequenceFragment>();
-			// Find a fragment in input whose start is greater then end of current
-			for(int i=0; i < fragments.size(); i++){
-				SamSequenceFragment frag= fragments.get(i);
-				if(frag.getTextStart() > line.get(line.size()-1).getTextEnd()+gap){ // +2 because we want some space between adjacent reads
-					listOfLines.get(listOfLines.size()-1).add(frag); // Append to the last line. 
-					fragToRemove.add(frag);
-				}
-			} // At the end of the loop you have put in line as many reads as you can. 
-			for(SamSequenceFragment tr : fragToRemove){ 
-				fragments.remove(fragments.indexOf(tr));
+		return RowPacker.pack(fragments, gap, new RowPacker.Extent<SamSequenceFragment>(){
+			@Override
+			public int getStart(SamSequenceFragment frag) {
+				return frag.getTextStart();
 			}
-			// Create a new line, add the first textRead in list
-			if(fragments.size() > 0){
-				line= new ArrayList<SamSequenceFragment>();
-				line.add(fragments.get(0));
-				listOfLines.add(line);
-				fragments.remove(0);
-			} else {
-				break;
+			@Override
+			public int getEnd(SamSequenceFragment frag) {
+				return frag.getTextEnd();
 			}
-		}
-		return listOfLines;
+		}, maxRows);
 	}
 	
 	/**Match reads in textReads list to return a list fragments. Fragments are
@@ -218,10 +236,30 @@ public class TrackReads extends Track{
 
 		List<SamSequenceFragment> fragments= new ArrayList<SamSequenceFragment>();
 
-		while(textReads.size() > 0){
-			// Keep going until all reads have been moved to the list of fragments.
-			TextRead tr= textReads.get(0);
-			textReads.remove(0);
+		// Index the properly paired reads by template name and mate start, so the mate of
+		// a read is found by its own name and start. Values are indexes in textReads in 
+		// increasing order.
+		Map<Long, ArrayDeque<Integer>> byMateStart= new HashMap<Long, ArrayDeque<Integer>>();
+		if(asPair){
+			for(int i= 0; i < textReads.size(); i++){
+				SAMRecord rec= textReads.get(i).getSamRecord();
+				if(rec.getProperPairFlag()){
+					Long key= mateKey(rec.getReadName(), rec.getMateAlignmentStart());
+					ArrayDeque<Integer> idx= byMateStart.get(key);
+					if(idx == null){
+						idx= new ArrayDeque<Integer>(2);
+						byMateStart.put(key, idx);
+					}
+					idx.add(i);
+				}
+			}
+		}
+		boolean[] used= new boolean[textReads.size()];
+		for(int i= 0; i < textReads.size(); i++){
+			if(used[i]){
+				continue; // Already paired to a read before this one
+			}
+			TextRead tr= textReads.get(i);
 			if( ! asPair || ! tr.getSamRecord().getProperPairFlag()){
 				SamSequenceFragment frag= new SamSequenceFragment(tr);
 				if(! asPair){ 
@@ -230,21 +268,31 @@ public class TrackReads extends Track{
 				fragments.add(frag);
 			}
 			else {
-				// Find the mate of this read, if present.
+				// Find the mate of this read, if present: The first read after this one with 
+				// the same name and mate start equal to the start of this read.
 				TextRead mate= null;
-				for(TextRead candidateMate : textReads){
-					if(candidateMate.getSamRecord().getProperPairFlag() && 
-					   Utils.equalReadNames(tr.getSamRecord().getReadName(), candidateMate.getSamRecord().getReadName()) &&
-					   tr.getSamRecord().getAlignmentStart() == candidateMate.getSamRecord().getMateAlignmentStart()){
-						mate= candidateMate;
-						break;
+				ArrayDeque<Integer> candidates= byMateStart.get(mateKey(tr.getSamRecord().getReadName(), tr.getSamRecord().getAlignmentStart()));
+				if(candidates != null){
+					// Reads up to this one cannot be the mate of this or any later read
+					while( ! candidates.isEmpty() && candidates.peekFirst() <= i){
+						candidates.pollFirst();
+					}
+					Iterator<Integer> iter= candidates.iterator();
+					while(iter.hasNext()){
+						int j= iter.next();
+						TextRead candidateMate= textReads.get(j);
+						if( ! used[j] && Utils.equalReadNames(tr.getSamRecord().getReadName(), candidateMate.getSamRecord().getReadName())){
+							mate= candidateMate;
+							used[j]= true;
+							iter.remove();
+							break;
+						}
 					}
-				} // After this loop either we have found a mate or not. Either way, create a fragment from a singleton or a pair.
+				} // After this either we have found a mate or not. Either way, create a fragment from a singleton or a pair.
 				if(mate == null){
 					fragments.add(new SamSequenceFragment(tr));
 				} else {
 					fragments.add(new SamSequenceFragment(tr, mate));
-					textReads.remove(mate);
 				}
 			}
 		}
@@ -252,6 +300,11 @@ public class TrackReads extends Track{
 		return fragments;
 	}
 
+	/** Key of the reads in a template with the given start*/
+	private static Long mateKey(String readName, int start){
+		return Utils.templateNameHash(readName, 0) ^ (start * 0x9E3779B97F4A7C15L);
+	}
+
     private void sortFragmentsByStartPosition(List<SamSequenceFragment> fragments){
     	  Collections.sort(fragments, new Comparator<SamSequenceFragment>() {
     	      @Override
@@ -263,50 +316,27 @@ public class TrackReads extends Track{
     }
 	
 	/** Prepare a printable string of each output line. 
-	 * @param textReads List reads to print out on the same line.
+	 * @param fragments List reads to print out on the same line.
+	 * @param row Buffer where to lay out the line, reused across lines.
 	 * @param noFormat Do not format reads.
 	 * @return
 	 * @throws IOException 
 	 * @throws InvalidGenomicCoordsException 
-	 * @throws InvalidColourException 
 	 */
-	private String linePrinter(List<SamSequenceFragment> fragments, boolean bs, boolean noFormat) throws IOException, InvalidGenomicCoordsException, InvalidColourException{
-		StringBuilder sb= new StringBuilder();
-
-		int curPos= 0; // Position on the line, needed to pad with blanks btw reads.
+	private String linePrinter(List<SamSequenceFragment> fragments, ReadRow row, boolean bs, boolean noFormat) throws IOException, InvalidGenomicCoordsException{
+		row.clear();
 		for(SamSequenceFragment frag : fragments){
-			String line= StringUtils.repeat(" ", (frag.getTextStart()-1) - curPos); // Left pad with spaces
-			sb.append(line);
-			String printableRead= frag.getPrintableFragment(bs, noFormat);
-			sb.append(printableRead);
-			curPos= frag.getTextEnd();
+			frag.render(row, bs);
 		}
-		int nchars= Utils.stripAnsiCodes(sb.toString()).length();
-		if(nchars < this.userWindowSize){
-			sb.append(StringUtils.repeat(' ', this.userWindowSize - nchars));
+		int nchars= Math.max(row.length(), this.userWindowSize);
+		// Find the mid character and add some formatting to highlight it.
+		int mid= -1;
+		if( ! this.isNoFormat() && nchars > 7){
+			mid= this.userWindowSize/2;
 		}
-		return this.highlightMidCharacter(sb.toString());
+		return row.format(0, nchars, noFormat, mid);
 	}
 
-	/** Find the mid character and add some formatting to highlight it.
-	 * */
-	private String highlightMidCharacter(String fmtLine){
-		if(this.isNoFormat()){
-			return fmtLine;
-		}
-		List<Integer> idx = Utils.indexOfCharsOnFormattedLine(fmtLine);
-		if(idx.size() <= 7){
-			return fmtLine;
-		}
-		int mid= idx.get(this.userWindowSize/2);
-		char midChar= fmtLine.charAt(mid);
-		if(midChar != ' '){
-			String hLine= fmtLine.substring(0, mid) + "\033[1;7m" + midChar + "\033[21;27m" + fmtLine.substring(mid+1);
-			return hLine;
-		}
-		return fmtLine;
-	}
-	
 	@Override
 	public String getTitle() throws InvalidColourException, InvalidGenomicCoordsException, IOException{
 
@@ -320,6 +350,7 @@ public class TrackReads extends Track{
 		}
 		String xtitle= this.getTrackTag() 
 				+ "; Reads: " + this.nRecsInWindow + libsize 
+				+ (this.nHiddenReads > 0 ? "; hidden: " + this.nHiddenReads : "")
 				+ this.getTitleForActiveFilters(); 
 		return this.formatTitle(xtitle) + "\n";
 	}
@@ -330,6 +361,9 @@ public class TrackReads extends Track{
 		if( ! this.getAwk().equals(Filter.DEFAULT_AWK.getValue())){
 			title.add("awk");
 		}
+		if(this.getColumnFilter() != null){
+			title.add("filter");
+		}
 		if( ! this.getShowRegex().pattern().equals(Filter.DEFAULT_SHOW_REGEX.getValue()) || ! this.getHideRegex().pattern().equals(Filter.DEFAULT_HIDE_REGEX.getValue())){
 			title.add("grep");
 		}
@@ -354,13 +388,8 @@ public class TrackReads extends Track{
 	protected List<String> getRecordsAsStrings() {
 		List<String> featureList= new ArrayList<String>();
 		
-		for(List<SamSequenceFragment> x : this.readStack){
-			for(SamSequenceFragment frag : x){
-				featureList.add(frag.getLeftRead().getSamRecord().getSAMString());
-				if(frag.getRightRead() != null){
-					featureList.add(frag.getRightRead().getSamRecord().getSAMString());	
-				}
-			}
+		for(SAMRecord rec : this.sampledReads){
+			featureList.add(rec.getSAMString());
 		}
 		return featureList;
 	}
@@ -35,6 +35,7 @@ import htsjdk.samtools.filter.MappingQualityFilter;
 import htsjdk.samtools.filter.SamRecordFilter;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import samTextViewer.GenomicCoords;
+import samTextViewer.SamReaderPool;
 import samTextViewer.Utils;
 
 /** Class to hold tracks to be printed. 
@@ -66,7 +67,7 @@ public class TrackSet {
 					this.trackList.add(trackPileup);
 					
 					/* Read track */
-					TrackReads trackReads= new TrackReads(sourceName, gc);
+					TrackReads trackReads= new TrackReads(sourceName, gc, trackPileup.getAlignmentWindow());
 					// trackReads.setTrackTag(new File(sourceName).getName() + "@" + this.getNextTrackId());
 					trackReads.setTrackTag(sourceName + "@" + this.getNextTrackId());
 					this.trackList.add(trackReads);
@@ -232,7 +233,8 @@ public class TrackSet {
 		// String trackId= new File(sourceName).getName() + "@" + idForTrack;
 		String trackId= sourceName + "@" + idForTrack;
 
-		TrackReads trackReads= new TrackReads(sourceName, gc);
+		// Reads share the decoded alignments with the coverage track
+		TrackReads trackReads= new TrackReads(sourceName, gc, trackPileup.getAlignmentWindow());
 		trackReads.setTrackTag(trackId);
 		trackReads.setTrackTag(trackId);
 
@@ -277,7 +279,9 @@ public class TrackSet {
 					+ "Working file: " + track.getWorkFilename() + "\n"
 					+ "Track type:   " + Utils.getFileTypeFromName(track.getFilename()) + " " + hd + "\n"
 					+ "awk script:   " + (! track.getAwk().trim().isEmpty() ? track.getAwk() : "N/A") + "\n"
-					+ "grep:         " + "show: " + track.getShowRegex() + "; hide: " + track.getHideRegex());
+					+ "filter:       " + (track.getColumnFilter() != null ? track.getColumnFilter() : "N/A") + "\n"
+					+ "grep:         " + "show: " + track.getShowRegex() + "; hide: " + track.getHideRegex()
+					+ (track.getGrepField() == null ? "" : "; field: " + track.getGrepField()));
 		}
 		
 		StringBuilder sb= new StringBuilder();
@@ -723,7 +727,6 @@ public class TrackSet {
 		// Collect all regex/color pairs from input. We move left to right along the command 
 		// arguments and collect -r/-R and set the regex inversion accordingly.
 		List<Argument> colorForRegex= new ArrayList<Argument>();
-		new Xterm256();
 		while(argList.contains("-r") || argList.contains("-R")){
 			int r= argList.indexOf("-r") >= 0 ? argList.indexOf("-r") : Integer.MAX_VALUE;
 			int R= argList.indexOf("-R") >= 0 ? argList.indexOf("-R") : Integer.MAX_VALUE;
@@ -1015,28 +1018,81 @@ public class TrackSet {
 		// Set script
         List<Track> tracksToReset = this.matchTracks(trackNameRegex, true, invertSelection);
         for(Track tr : tracksToReset){
-        	if(awk.contains("getSamTag(") && ! tr.getTrackFormat().equals(TrackFormat.BAM)){
-        		System.err.println("\nFunction getSamTag() can be applied to BAM tracks only. Got:\n" + tr.getTrackTag());
-        		throw new InvalidCommandLineException();
-        	}
-        	if((awk.contains("getInfoTag(") || awk.contains("getFmtTag(")) && ! tr.getTrackFormat().equals(TrackFormat.VCF)){
-        		System.err.println("\nFunction getInfoTag(), getFmtTag() can be applied to VCF tracks only. Got:\n" + tr.getTrackTag());
-        		throw new InvalidCommandLineException();
-        	}
-        	if((awk.contains("getGtfTag(") || awk.contains("getGtfTag(")) && ! tr.getTrackFormat().equals(TrackFormat.GTF)){
-        		System.err.println("\nFunction getGtfTag() can be applied to GTF tracks only. Got:\n" + tr.getTrackTag());
-        		throw new InvalidCommandLineException();
-        	}
-        	if((awk.contains("getGffTag(") || awk.contains("getGffTag(")) && ! tr.getTrackFormat().equals(TrackFormat.GFF)){
-        		System.err.println("\nFunction getGffTag() can be applied to GFF tracks only. Got:\n" + tr.getTrackTag());
-        		throw new InvalidCommandLineException();
-        	}
+        	this.checkAwkFuncs(awk, tr);
         	String script= this.replaceAwkHeaders(awk, tr.getTrackFormat());
         	script= this.replaceAwkFuncs(script, tr);
         	tr.setAwk(script);
         }
 	}
 
+	/** Throw if the awk script uses functions not applicable to the format of the track*/
+	private void checkAwkFuncs(String awk, Track tr) throws InvalidCommandLineException{
+		if(awk.contains("getSamTag(") && ! tr.getTrackFormat().equals(TrackFormat.BAM)){
+			System.err.println("\nFunction getSamTag() can be applied to BAM tracks only. Got:\n" + tr.getTrackTag());
+			throw new InvalidCommandLineException();
+		}
+		if((awk.contains("getInfoTag(") || awk.contains("getFmtTag(")) && ! tr.getTrackFormat().equals(TrackFormat.VCF)){
+			System.err.println("\nFunction getInfoTag(), getFmtTag() can be applied to VCF tracks only. Got:\n" + tr.getTrackTag());
+			throw new InvalidCommandLineException();
+		}
+		if((awk.contains("getGtfTag(") || awk.contains("getGtfTag(")) && ! tr.getTrackFormat().equals(TrackFormat.GTF)){
+			System.err.println("\nFunction getGtfTag() can be applied to GTF tracks only. Got:\n" + tr.getTrackTag());
+			throw new InvalidCommandLineException();
+		}
+		if((awk.contains("getGffTag(") || awk.contains("getGffTag(")) && ! tr.getTrackFormat().equals(TrackFormat.GFF)){
+			System.err.println("\nFunction getGffTag() can be applied to GFF tracks only. Got:\n" + tr.getTrackTag());
+			throw new InvalidCommandLineException();
+		}
+	}
+
+	/** Filter records with an expression in the awk syntax, e.g. '$3 > 10'. Column headers 
+	 * are replaced as for awk. If possible the expression is compiled to a ColumnFilter,
+	 * otherwise it is set as awk script. Either way, it replaces the current awk script 
+	 * or filter. cmdInput is e.g.
+	 * [filter, $3 > 10, track1, track2]
+	 * [filter, -off, track1]
+	 * */
+	public void setColumnFilterForTrack(List<String> cmdInput) throws InvalidCommandLineException, ClassNotFoundException, IOException, InvalidGenomicCoordsException, InvalidRecordException, SQLException {
+
+		List<String> args= new ArrayList<String>(cmdInput);
+		args.remove(0); // Remove command name
+		
+		boolean invertSelection= Utils.argListContainsFlag(args, "-V");
+		
+		List<String> trackNameRegex= new ArrayList<String>();
+		String expression= null;
+		if(args.size() == 0){
+			// This will turn off everything
+			trackNameRegex.add(".*");
+		} else if(args.get(0).equals("-off")){
+			args.remove(0);
+			trackNameRegex.addAll(args);
+		} else {
+			expression= args.get(0);
+			trackNameRegex.addAll(args.subList(1, args.size()));
+		}
+		if(trackNameRegex.size() == 0){
+			trackNameRegex.add(".*");
+		}
+		
+		for(Track tr : this.matchTracks(trackNameRegex, true, invertSelection)){
+			if(expression == null){
+				tr.setColumnFilter(null);
+				continue;
+			}
+			String script= this.replaceAwkHeaders(expression, tr.getTrackFormat());
+			ColumnFilter cf= ColumnFilter.compile(script);
+			if(cf != null){
+				tr.setColumnFilter(cf);
+			} else {
+				// Not understood here: Let awk do it
+				String awk= "'" + script + "'";
+				this.checkAwkFuncs(awk, tr);
+				tr.setAwk(this.replaceAwkFuncs(awk, tr));
+			}
+		}
+	}
+
 	/**Replace in awk script the overloaded function name(s) with the actual names and args 
 	 * @throws InvalidCommandLineException 
 	 * */
@@ -1284,6 +1340,18 @@ public class TrackSet {
 		// Get args:
 		boolean invertSelection= Utils.argListContainsFlag(args, "-v");
 
+		String grepField= null;
+		if(args.contains("-f")){
+			int idx= args.indexOf("-f") + 1;
+			if(idx >= args.size() || ! ReadGrep.isValidScope(args.get(idx))){
+				System.err.println("Invalid field for grep: Expected a sam field name, e.g. qname, cigar, or a tag, e.g. NM");
+				throw new InvalidCommandLineException();
+			}
+			grepField= args.get(idx);
+			args.remove(idx);
+			args.remove("-f");
+		}
+
 		int flag= 0;
 		if(Utils.argListContainsFlag(args, "-F")){
 			flag |= Pattern.LITERAL; 
@@ -1321,7 +1389,7 @@ public class TrackSet {
         // And set as required:
         List<Track> tracksToReset = this.matchTracks(trackNameRegex, true, invertSelection);
         for(Track tr : tracksToReset){
-        	tr.setShowHideRegex(showRegex, hideRegex);
+        	tr.setShowHideRegex(showRegex, hideRegex, grepField);
         }
 	}
 	
@@ -1597,7 +1665,7 @@ public class TrackSet {
 	 * Return true if the track was found and dropped, false otherwise. 
 	 * If trackTag is null do nothing and return false.  
 	 * */
-	public boolean dropTrackWithTrackTag(String trackTag){
+	public boolean dropTrackWithTrackTag(String trackTag) throws IOException{
 		
 		if(trackTag == null){
 			return false;
@@ -1606,6 +1674,7 @@ public class TrackSet {
 		for(int i= 0; i < this.trackList.size(); i++){
 			if(this.trackList.get(i).getTrackTag().equals(trackTag)){
 				this.trackList.remove(i);
+				this.closeUnusedSamReaders();
 				return true;
 			}
 		}
@@ -1797,6 +1866,32 @@ public class TrackSet {
         }		
 	}
 	
+	/** Compute the coverage sidecar for the bam coverage tracks captured by the regexes.
+	 * Return a message listing the files written.
+	 * */
+	public String makeCoverageSidecarForRegex(List<String> cmdInput) throws InvalidCommandLineException, IOException, InvalidGenomicCoordsException {
+		List<String> args= new ArrayList<String>(cmdInput);
+		args.remove(0); // Remove name of command
+
+		boolean invertSelection= Utils.argListContainsFlag(args, "-v");
+		if(args.size() == 0){
+			args.add(".*");
+		}
+		String messages= "";
+		for(Track tr : this.matchTracks(args, true, invertSelection)){
+			if( ! (tr instanceof TrackPileup)){
+				continue;
+			}
+			if( ! new File(tr.getFilename()).isFile()){
+				System.err.println("Cannot write coverage next to " + tr.getFilename());
+				continue;
+			}
+			File tdf= ((TrackPileup) tr).makeSidecar();
+			messages += "Coverage written to " + tdf.getAbsolutePath() + "\n";
+		}
+		return messages;
+	}
+
 	public String editNamesForRegex(List<String> cmdInput) throws InvalidCommandLineException {
 		// API:
 		// editNames <patterns> <replacement> [track_re] ...
@@ -2033,7 +2128,7 @@ public class TrackSet {
 		}
 	}
 
-	public String dropTracksWithRegex(List<String> cmdInput) throws InvalidCommandLineException {
+	public String dropTracksWithRegex(List<String> cmdInput) throws InvalidCommandLineException, IOException {
 
 		List<String> args= new ArrayList<String>(cmdInput);
 		args.remove(0); //Remove cmd name
@@ -2057,10 +2152,21 @@ public class TrackSet {
         		this.trackList.remove(tr);
         	}
         }
+        this.closeUnusedSamReaders();
         return messages;
         
 	}
 
+	/** Close the pooled sam readers of files not used anymore by any track.
+	 * */
+	private void closeUnusedSamReaders() throws IOException{
+		List<String> inUse= new ArrayList<String>();
+		for(Track tr : this.trackList){
+			inUse.add(tr.getWorkFilename());
+		}
+		SamReaderPool.retainOnly(inUse);
+	}
+
 	public GenomicCoords trimCoordsForTrack(List<String> cmdInput) throws InvalidGenomicCoordsException, IOException {
 
 		List<String> args= new ArrayList<String>(cmdInput);
@@ -122,7 +122,7 @@ public class TrackWiggles extends Track {
 		
 		this.screenWiggleLocusInfoList= 
 				TDFUtils.tdfRangeToScreen(this.getWorkFilename(), this.getGc().getChrom(), 
-						this.getGc().getFrom(), this.getGc().getTo(), this.getGc().getMapping());
+						this.getGc().getFrom(), this.getGc().getTo(), this.getGc());
 		
 		List<Float> screenScores= new ArrayList<Float>();
 		for(ScreenWiggleLocusInfo x : screenWiggleLocusInfoList){
@@ -163,7 +163,6 @@ public class TrackWiggles extends Track {
 
 		String printable= Joiner.on("\n").join(lineStrings);
 		if(!this.isNoFormat()){
-			new Xterm256();
 			printable= "\033[48;5;"
 			+ Config.get256Color(ConfigKey.background)
 			+ ";38;5;"
@@ -231,9 +230,13 @@ public class TrackWiggles extends Track {
 		BigWigIterator iter = reader.getBigWigIterator(getGc().getChrom(), getGc().getFrom(), getGc().getChrom(), getGc().getTo(), false);
 		while(iter.hasNext()){
 			WigItem bw = iter.next();
-			for(int i= bw.getStartBase(); i <= bw.getEndBase(); i++){
-				int idx= Utils.getIndexOfclosestValue(i, this.getGc().getMapping()); // Where should this position be mapped on screen?
-				screenWigLocInfoList.get(idx).increment(bw.getWigValue());
+			// Where should these positions be mapped on screen?
+			int colFrom= this.getGc().getColumnOfPosition(bw.getStartBase());
+			int[] nPos= this.getGc().countPositionsInColumns(bw.getStartBase(), bw.getEndBase());
+			for(int i= 0; i < nPos.length; i++){
+				if(nPos[i] > 0){
+					screenWigLocInfoList.get(colFrom + i).increment(bw.getWigValue(), nPos[i]);
+				}
 			} 
 		}
 		List<Float> screenScores= new ArrayList<Float>();
@@ -269,8 +272,8 @@ public class TrackWiggles extends Track {
 					continue;
 				}
 				String[] tokens= q.split("\t");
-				int screenFrom= Utils.getIndexOfclosestValue(Integer.valueOf(tokens[1])+1, this.getGc().getMapping());
-				int screenTo= Utils.getIndexOfclosestValue(Integer.valueOf(tokens[2]), this.getGc().getMapping());
+				int screenFrom= this.getGc().getColumnOfPosition(Integer.valueOf(tokens[1])+1);
+				int screenTo= this.getGc().getColumnOfPosition(Integer.valueOf(tokens[2]));
 				float value= Float.valueOf(tokens[this.bdgDataColIdx-1]);
 				for(int i= screenFrom; i <= screenTo; i++){
 					screenWigLocInfoList.get(i).increment(value);
@@ -376,6 +379,11 @@ public class TrackWiggles extends Track {
 		return "";
 	}
 
+	@Override
+	protected void setColumnFilter(ColumnFilter columnFilter) throws ClassNotFoundException, IOException, InvalidGenomicCoordsException, InvalidRecordException, SQLException {
+		//
+	}
+
 	@Override
 	protected String getTitleForActiveFilters() {
 		return "";
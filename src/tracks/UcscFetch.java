@@ -23,12 +23,6 @@ import org.apache.commons.io.IOUtils;
 
 import com.google.common.base.Splitter;
 
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
-import java.sql.SQLException;
-import java.sql.Statement;
-
-
 import exceptions.InvalidCommandLineException;
 import exceptions.InvalidRecordException;
 import exceptions.UnableToExecuteUtilException;
@@ -40,6 +34,7 @@ import htsjdk.tribble.readers.LineIterator;
 import htsjdk.tribble.util.TabixUtils;
 import samTextViewer.ArgParse;
 import samTextViewer.Main;
+import sortBgzipIndex.ExternalSort;
 import utils.GtfLine;
 
 /** TO BE DEPRECATED --- 
@@ -73,13 +68,7 @@ public class UcscFetch {
 		unsortedGtf.deleteOnExit();
 		File sortedGtf= new File(unsortedGtf.getAbsoluteFile() + ".sorted.gtf");
 		
-		try {
-			sortGtf(unsortedGtf, sortedGtf);
-		} catch (ClassNotFoundException e) {
-			e.printStackTrace();
-		} catch (SQLException e) {
-			e.printStackTrace();
-		}
+		sortGtf(unsortedGtf, sortedGtf);
 		unsortedGtf.delete();
 		
 		this.gtf= new File(unsortedGtf.getAbsolutePath() + ".gz");
@@ -215,20 +204,11 @@ public class UcscFetch {
     	return outgtf;
     }
 	
-	/** Sort gtf file using Sqlite
+	/** Sort gtf file by chromosome, start and end. Comment lines are dropped.
 	 * */
-	public static void sortGtf(File unsortedGtf, File sortedGtf) throws SQLException, InvalidRecordException, IOException, ClassNotFoundException{
+	public static void sortGtf(File unsortedGtf, File sortedGtf) throws InvalidRecordException, IOException{
 
-		// http://stackoverflow.com/questions/1711631/improve-insert-per-second-performance-of-sqlite
-		GtfSqlite gtfsql= new GtfSqlite();
-		gtfsql.getSqlitedb().deleteOnExit();
-
-		Statement stmt= gtfsql.getConn().createStatement();
-		stmt.execute("PRAGMA journal_mode = MEMORY"); // This is not to leave tmp journal file o disk
-		gtfsql.getConn().setAutoCommit(false); // This is important: By default each insert is committed 
-											   // as it is executed, which is slow. Let's commit in bulk at the end instead.
-
-		PreparedStatement stmtInsert= gtfsql.getConn().prepareStatement(gtfsql.getSqlInsert());
+		ExternalSort sorter= new ExternalSort(0, 3, 4);
 		
 		BufferedReader br= new BufferedReader(new FileReader(unsortedGtf));
 		String gtfLine;
@@ -239,36 +219,27 @@ public class UcscFetch {
 			if(gtfLine.trim().startsWith("##FASTA")){
 				break;
 			}
-			gtfsql.add(gtfLine, stmtInsert);
+			if(Splitter.on("\t").limit(9).splitToList(gtfLine).size() < 8){
+				System.err.println("Invalid gtf record. Less than 8 fields found:");
+				System.err.println(gtfLine);
+				br.close();
+				throw new InvalidRecordException();
+			}
+			sorter.add(gtfLine);
 		}
-		stmtInsert.close();
 		br.close();
 
 		BufferedWriter wr= new BufferedWriter(new FileWriter(sortedGtf.getAbsolutePath()));
-		
-		PreparedStatement stmtSelect= gtfsql.getConn().prepareStatement("SELECT * FROM gtf ORDER BY contig, start, end");
-		
-		ResultSet rs= stmtSelect.executeQuery();
-		
-		// ResultSet rs= stmt.executeQuery("SELECT * FROM gtf ORDER BY contig, start, end");
-		while(rs.next()){
-
-			StringBuilder sb= new StringBuilder();
-			sb.append(rs.getString("contig"));   sb.append("\t");
-			sb.append(rs.getString("source"));   sb.append("\t");
-			sb.append(rs.getString("feature"));  sb.append("\t");
-			sb.append(rs.getInt("start"));       sb.append("\t");
-			sb.append(rs.getInt("end"));         sb.append("\t");
-			sb.append(rs.getString("score"));    sb.append("\t");
-			sb.append(rs.getString("strand"));   sb.append("\t");
-			sb.append(rs.getString("frame"));    sb.append("\t");
-			sb.append(rs.getString("attribute"));
-			wr.write(sb.append("\n").toString());
+		ExternalSort.SortedLines sorted= sorter.sorted();
+		try{
+			while(sorted.hasNext()){
+				wr.write(sorted.next());
+				wr.write("\n");
+			}
+		} finally {
+			sorted.close();
+			wr.close();
 		}
-		gtfsql.getConn().commit();
-		stmt.close();
-		wr.close();
-		gtfsql.getSqlitedb().delete();
 	}
 	
 	/**
@@ -0,0 +1,45 @@
+package coloring;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AnsiEncoderTest {
+
+	@Test
+	public void canEncodeRunsOfSameFormat() {
+		AnsiEncoder enc= new AnsiEncoder(15);
+		enc.append('A', 1, 15, 0);
+		enc.append('A', 1, 15, 0);
+		enc.append('C', 2, 15, 0);
+		enc.appendPlain(' ', 0);
+		enc.append('G', 2, 15, 0);
+		assertEquals("\033[48;5;15;38;5;1mAA\033[48;5;15;38;5;2mC\033[0;48;5;15m \033[48;5;15;38;5;2mG\033[0;48;5;15m", enc.toString());
+	}
+
+	@Test
+	public void canTurnOffAttributes() {
+		AnsiEncoder enc= new AnsiEncoder(15);
+		enc.append('a', 1, 15, AnsiEncoder.UNDERLINE);
+		enc.append('b', 1, 15, AnsiEncoder.UNDERLINE | AnsiEncoder.INVERT);
+		enc.append('c', 1, 15, 0);
+		assertEquals("\033[4;48;5;15;38;5;1ma\033[7;4;48;5;15;38;5;1mb\033[0;48;5;15;38;5;1mc\033[0;48;5;15m", enc.toString());
+	}
+
+	@Test
+	public void canHighlightCell() {
+		AnsiEncoder enc= new AnsiEncoder(15);
+		enc.append('a', 1, 15, AnsiEncoder.HIGHLIGHT);
+		enc.append('b', 1, 15, 0);
+		assertEquals("\033[48;5;15;38;5;1m\033[1;7ma\033[21;27m\033[0;48;5;15;38;5;1mb\033[0;48;5;15m", enc.toString());
+
+		enc= new AnsiEncoder(15);
+		enc.appendPlain('x', AnsiEncoder.HIGHLIGHT);
+		assertEquals("\033[1;7mx\033[21;27m", enc.toString());
+	}
+
+	@Test
+	public void emptyLineHasNoEscapes() {
+		assertEquals("", new AnsiEncoder(15).toString());
+	}
+}
@@ -1,10 +1,13 @@
 package coloring;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.io.IOException;
 import java.sql.SQLException;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Test;
 
 import exceptions.InvalidColourException;
@@ -52,6 +55,24 @@ public class ConfigTest {
 		new Config("metal");
 	}
 
+	@Test
+	public void canReadConfigWithoutOptionalKeys() throws IOException, InvalidConfigException {
+		// As a config file written before bgzf_threads and memory_index_mb were added
+		String conf= FileUtils.readFileToString(new File("resources/config/black_on_white.conf"));
+		File old= File.createTempFile("asciigenome.", ".conf");
+		old.deleteOnExit();
+
+		FileUtils.writeStringToFile(old, conf.replaceAll("(?m)^bgzf_threads .*$", "bgzf_threads 3"));
+		new Config(old.getAbsolutePath());
+		assertEquals("3", Config.get(ConfigKey.bgzf_threads));
+
+		FileUtils.writeStringToFile(old, conf.replaceAll("(?m)^(bgzf_threads|memory_index_mb) .*$", ""));
+		new Config(old.getAbsolutePath());
+		assertEquals("0", Config.get(ConfigKey.bgzf_threads));
+		assertEquals("20", Config.get(ConfigKey.memory_index_mb));
+		new Config(null);
+	}
+
 	@Test
 	public void failsOnInvalidSource() throws IOException, InvalidConfigException {
 		boolean pass= false;
@@ -73,4 +94,32 @@ public class ConfigTest {
 		}
 	}
 	
+	@Test
+	public void canUpdatePaletteOnSet() throws InvalidColourException, IOException, InvalidConfigException{
+		new Config(null);
+		Config.set(ConfigKey.seq_a, "grey");
+		assertEquals(8, Config.get256Color(ConfigKey.seq_a));
+		assertEquals("8", Config.get(ConfigKey.seq_a));
+
+		// Invalid colour leaves the palette as it was
+		boolean pass= false;
+		try{
+			Config.set(ConfigKey.seq_a, "nonsense");
+		} catch(InvalidColourException e){
+			pass= true;
+		}
+		assertTrue(pass);
+		assertEquals(8, Config.get256Color(ConfigKey.seq_a));
+		
+		// Reloading the configuration rebuilds the palette 
+		new Config("white_on_black");
+		assertEquals(Xterm256.colorNameToXterm256("black"), Config.get256Color(ConfigKey.background));
+		new Config(null);
+	}
+	
+	@Test(expected= InvalidColourException.class)
+	public void failsOnColourOfNonColourKey() throws InvalidColourException, IOException, InvalidConfigException{
+		new Config(null);
+		Config.get256Color(ConfigKey.max_reads_in_stack);
+	}
 }
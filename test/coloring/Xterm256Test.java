@@ -3,10 +3,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.awt.Color;
+import java.io.IOException;
 
 import org.junit.Test;
 
 import exceptions.InvalidColourException;
+import exceptions.InvalidConfigException;
 
 public class Xterm256Test {
 
@@ -54,7 +56,8 @@ public class Xterm256Test {
 	}
 	
 	@Test
-	public void canShowColors() throws InvalidColourException{
+	public void canShowColors() throws InvalidColourException, IOException, InvalidConfigException{
+		new Config(null);
 		System.out.println(Xterm256.colorShowForTerminal());
 	}
 }
@@ -0,0 +1,107 @@
+package samTextViewer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+public class FrameWriterTest {
+
+	@Test
+	public void canPadLinesToWidth() throws IOException {
+		StringWriter out= new StringWriter();
+		FrameWriter fw= new FrameWriter(out, 5);
+		fw.append("ab\n").append("abcdefg\n").append('c');
+		fw.close();
+		assertEquals("ab   \nabcdefg\nc    \n", out.toString());
+		assertNull(fw.getFrame());
+	}
+
+	@Test
+	public void canIgnoreAnsiEscapes() throws IOException {
+		StringWriter out= new StringWriter();
+		FrameWriter fw= new FrameWriter(out, 4);
+		fw.keepFrame();
+		// Escapes may be split across appends
+		fw.append("\033[48;5;1").append("5;38;5;1mab\033[0m\n");
+		// Not escapes: counted as visible
+		fw.append("\033x\n");
+		fw.append("\033[1");
+		fw.close();
+		assertEquals("\033[48;5;15;38;5;1mab\033[0m  \n\033x  \n\033[1 \n", out.toString());
+		assertEquals("\033[48;5;15;38;5;1mab\033[0m  \n\033x  \n\033[1 ", fw.getFrame());
+	}
+
+	@Test
+	public void canWriteEmptyFrame() throws IOException {
+		StringWriter out= new StringWriter();
+		FrameWriter fw= new FrameWriter(out, 2);
+		fw.keepFrame();
+		fw.append("\n");
+		fw.close();
+		assertEquals("  \n  \n", out.toString());
+		assertEquals("  \n  ", fw.getFrame());
+	}
+
+	@Test
+	public void canRedrawOnlyChangedLines() throws IOException {
+		StringWriter out= new StringWriter();
+		FrameWriter fw= new FrameWriter(out, 3);
+		fw.diffAgainst(null, 24);
+		fw.append("\033[48;5;1mab\ncd\nef");
+		fw.close();
+		// No previous screen: clear and print all
+		assertEquals("\033[H\033[2J\033[48;5;1mab \ncd \nef \n", out.toString());
+		FrameWriter.Screen screen= fw.getScreen();
+		assertNotNull(screen);
+		
+		out= new StringWriter();
+		fw= new FrameWriter(out, 3);
+		fw.diffAgainst(screen, 24);
+		fw.append("\033[48;5;1mab\nXY\nef");
+		fw.close();
+		// Second line rewritten with the formatting from the line above
+		assertEquals("\033[2;1H\033[0m\033[48;5;1mXY \033[4;1H\033[48;5;1m\033[J", out.toString());
+		screen= fw.getScreen();
+
+		// Formatting reset
+		out= new StringWriter();
+		fw= new FrameWriter(out, 3);
+		fw.diffAgainst(screen, 24);
+		fw.append("\033[48;5;1mab\033[0m\nXY");
+		fw.close();
+		assertEquals("\033[1;1H\033[0m\033[48;5;1mab\033[0m \033[2;1H\033[0m\033[0mXY \033[3;1H\033[0m\033[J", out.toString());
+	}
+
+	@Test
+	public void canRedrawAllIfFrameDoesNotFit() throws IOException {
+		StringWriter out= new StringWriter();
+		FrameWriter fw= new FrameWriter(out, 3);
+		fw.diffAgainst(null, 24);
+		fw.append("ab\ncd");
+		fw.close();
+		FrameWriter.Screen screen= fw.getScreen();
+
+		// Taller than terminal
+		out= new StringWriter();
+		fw= new FrameWriter(out, 3);
+		fw.diffAgainst(screen, 3);
+		fw.append("ab\ncd\nef");
+		fw.close();
+		assertEquals("\033[H\033[2J" + "ab \ncd \nef \n", out.toString());
+		assertNull(fw.getScreen());
+
+		// Line wider than terminal
+		out= new StringWriter();
+		fw= new FrameWriter(out, 3);
+		fw.diffAgainst(screen, 24);
+		fw.append("abcd\ncd");
+		fw.close();
+		assertEquals("\033[H\033[2J" + "abcd\ncd \n", out.toString());
+		assertNull(fw.getScreen());
+	}
+}
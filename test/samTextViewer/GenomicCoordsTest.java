@@ -405,4 +405,39 @@ public class GenomicCoordsTest {
 		assertEquals(139, (int)gc.getTo());
 	}
 
+
+	@Test
+	public void canMapPositionToColumnAsClosestValue() throws InvalidGenomicCoordsException, IOException{
+		String[] regions= {"chr7:1-1000000", "chr7:101-160", "chr7:5566736-5566856", "chr7:1-159138663", "chr7:1000-1000", "chr7:1001-1163"};
+		int[] widths= {80, 81, 150, 7};
+		for(String region : regions){
+			for(int width : widths){
+				GenomicCoords gc= new GenomicCoords(region, width, null, null);
+				int span= gc.getTo() - gc.getFrom() + 1;
+				int step= Math.max(1, span / 5000);
+				for(int pos= gc.getFrom() - 10; pos <= gc.getTo() + 10; pos += step){
+					assertEquals(Utils.getIndexOfclosestValue(pos, gc.getMapping()), gc.getColumnOfPosition(pos));
+				}
+				// Column boundaries
+				for(int c= 1; c < gc.getMapping().size(); c++){
+					int first= gc.getFirstPositionInColumn(c);
+					assertEquals(c, Utils.getIndexOfclosestValue(first, gc.getMapping()));
+					assertEquals(c - 1, Utils.getIndexOfclosestValue(first - 1, gc.getMapping()));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void canCountPositionsInColumns() throws InvalidGenomicCoordsException, IOException{
+		GenomicCoords gc= new GenomicCoords("chr7:1001-2000", 80, null, null);
+		int[] counts= gc.countPositionsInColumns(990, 1523);
+		int colFrom= gc.getColumnOfPosition(990);
+		
+		int[] expected= new int[counts.length];
+		for(int pos= 990; pos <= 1523; pos++){
+			expected[Utils.getIndexOfclosestValue(pos, gc.getMapping()) - colFrom]++;
+		}
+		assertArrayEquals(expected, counts);
+	}
 }
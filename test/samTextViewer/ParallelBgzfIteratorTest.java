@@ -0,0 +1,68 @@
+package samTextViewer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Test;
+
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+
+public class ParallelBgzfIteratorTest {
+
+	@After
+	public void closeAll() throws Exception {
+		SamReaderPool.closeAll();
+	}
+
+	private List<String> readAll(SAMRecordIterator iter){
+		List<String> recs= new ArrayList<String>();
+		while(iter.hasNext()){
+			recs.add(iter.next().getSAMString());
+		}
+		iter.close();
+		return recs;
+	}
+
+	@Test
+	public void sameRecordsAsSamReader() throws Exception {
+
+		String[][] cases= {
+				{"test_data/ds051.actb.bam", "chr7", "5566000", "5567000"},
+				{"test_data/ds051.actb.bam", "chr7", "5500000", "5700000"},
+				{"test_data/ds051.actb.bam", "chr7", "1", "159138663"},
+				{"test_data/ds051.short.bam", "chr7", "5566778", "5566848"},
+				{"test_data/junction.bam", "chr7", "5566000", "5570000"},
+				{"test_data/adjacent.bam", "chr7", "1", "100"},
+				{"test_data/ds051.actb.bam", "chr1", "1", "1000000"},
+		};
+		for(String[] c : cases){
+			int from= Integer.parseInt(c[2]);
+			int to= Integer.parseInt(c[3]);
+			SamReader samReader= Utils.getSamReader(c[0]);
+			assertTrue(ParallelBgzfIterator.canRead(samReader, c[0]));
+			List<String> expected= this.readAll(samReader.query(c[1], from, to, false));
+			for(int nThreads : new int[] {1, 3}){
+				List<String> observed= this.readAll(new ParallelBgzfIterator(samReader, c[0], c[1], from, to, nThreads));
+				assertEquals(expected, observed);
+			}
+			samReader.close();
+		}
+	}
+
+	@Test
+	public void canStopBeforeEnd() throws Exception {
+		SamReader samReader= Utils.getSamReader("test_data/ds051.actb.bam");
+		SAMRecordIterator iter= new ParallelBgzfIterator(samReader, "test_data/ds051.actb.bam", "chr7", 5500000, 5700000, 2);
+		assertTrue(iter.hasNext());
+		iter.next();
+		iter.close();
+		assertFalse(iter.hasNext());
+		samReader.close();
+	}
+}
@@ -0,0 +1,92 @@
+package samTextViewer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import coloring.Config;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import tracks.TrackSet;
+
+public class SamReaderPoolTest {
+
+	@BeforeClass
+	public static void init() throws Exception {
+		new Config(null);
+	}
+
+	@After
+	public void closeAll() throws Exception {
+		SamReaderPool.closeAll();
+	}
+
+	@Test
+	public void canReuseReader() throws Exception {
+
+		SamReader r1= SamReaderPool.get("test_data/ds051.short.bam");
+		SamReader r2= SamReaderPool.get("test_data/ds051.short.bam");
+		assertTrue(r1 == r2);
+		assertEquals(1, SamReaderPool.getOpenFilenames().size());
+
+		// Reader is still usable after closing the iterator
+		SAMRecordIterator iter= r1.query("chr7", 5566000, 5567000, false);
+		assertTrue(iter.hasNext());
+		iter.close();
+		iter= r2.query("chr7", 5566000, 5567000, false);
+		assertTrue(iter.hasNext());
+		iter.close();
+
+		SamReaderPool.close("test_data/ds051.short.bam");
+		assertEquals(0, SamReaderPool.getOpenFilenames().size());
+		assertTrue(r1 != SamReaderPool.get("test_data/ds051.short.bam"));
+	}
+
+	@Test
+	public void canBorrowSpareReaders() throws Exception {
+
+		String bam= "test_data/ds051.short.bam";
+		SamReader r1= SamReaderPool.borrow(bam);
+		SamReader r2= SamReaderPool.borrow(bam);
+		assertTrue(r1 != r2);
+		assertTrue(r1 != SamReaderPool.get(bam));
+		
+		// Both readers can iterate at the same time
+		SAMRecordIterator i1= r1.query("chr7", 5566000, 5567000, false);
+		SAMRecordIterator i2= r2.query("chr7", 5566000, 5567000, false);
+		assertTrue(i1.hasNext() && i2.hasNext());
+		i1.close();
+		i2.close();
+		
+		// Released readers are reused
+		SamReaderPool.release(bam, r1);
+		assertTrue(r1 == SamReaderPool.borrow(bam));
+		SamReaderPool.release(bam, r1);
+
+		SamReaderPool.close(bam);
+		assertEquals(0, SamReaderPool.getOpenFilenames().size());
+		SamReaderPool.release(bam, r2); // Closed, not kept
+		assertEquals(0, SamReaderPool.getOpenFilenames().size());
+	}
+
+	@Test
+	public void canCloseReadersOfDroppedTracks() throws Exception {
+
+		GenomicCoords gc= new GenomicCoords("chr7:5566000-5567000", 80, null, null);
+		TrackSet trackSet= new TrackSet();
+		trackSet.addTrackFromSource("test_data/ds051.short.bam", gc, null);
+		trackSet.addTrackFromSource("test_data/ds051.actb.bam", gc, null);
+		assertTrue(SamReaderPool.getOpenFilenames().contains("test_data/ds051.short.bam"));
+
+		ArrayList<String> cmdInput= Utils.tokenize("dropTracks short", " ");
+		trackSet.dropTracksWithRegex(cmdInput);
+		assertFalse(SamReaderPool.getOpenFilenames().contains("test_data/ds051.short.bam"));
+		assertTrue(SamReaderPool.getOpenFilenames().contains("test_data/ds051.actb.bam"));
+	}
+}
@@ -1,6 +1,10 @@
 package samTextViewer;
 
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
@@ -16,6 +20,7 @@ import exceptions.InvalidCommandLineException;
 import exceptions.InvalidConfigException;
 import exceptions.InvalidGenomicCoordsException;
 import exceptions.InvalidRecordException;
+import tracks.Track;
 import tracks.TrackSet;
 
 public class TrackProcessorTest {
@@ -41,6 +46,44 @@ public class TrackProcessorTest {
 		// tp.iterateTracks();
 	}
 	
+	@Test
+	public void canUpdateTracksConcurrently() throws Exception{
+
+		new Config(null);
+		
+		GenomicCoords gc= new GenomicCoords("chr7:5566000-5567000", 80, null, null);
+		GenomicCoordsHistory gch= new GenomicCoordsHistory();
+		gch.add(gc);
+		
+		List<String> files= new ArrayList<String>();
+		files.add("test_data/ds051.actb.bam");
+		files.add("test_data/hg19_genes_head.gtf.gz");
+		files.add("test_data/ear045.oxBS.actb.tdf");
+		files.add("test_data/CHD.exon.2010_03.sites.vcf.gz");
+		TrackSet trackSet= new TrackSet(files, gc);
+		TrackProcessor tp= new TrackProcessor(trackSet, gch);
+		tp.setShowMem(false);
+		tp.setShowTime(false);
+		tp.setNoFormat(true);
+
+		GenomicCoords next= new GenomicCoords("chr7:5567000-5568000", 80, null, null);
+		gch.add(next);
+		PrintStream stdout= System.out;
+		ByteArrayOutputStream baos= new ByteArrayOutputStream();
+		try{
+			System.setOut(new PrintStream(baos));
+			tp.iterateTracks();
+		} finally {
+			System.setOut(stdout);
+		}
+		for(Track track : trackSet.getTrackList()){
+			if(track.getyMaxLines() > 0 && ! track.isHideTrack()){
+				assertTrue(track.getGc().equalCoords(next));
+			}
+		}
+		assertTrue(baos.toString().contains("chr7:5567000-5568000"));
+	}
+	
 //	@Test
 //	public void canSaveTrackSettings() throws InvalidGenomicCoordsException, IOException, ClassNotFoundException, BamIndexNotFoundException, InvalidRecordException, SQLException{
 //		
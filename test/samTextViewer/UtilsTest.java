@@ -1398,6 +1398,14 @@ public class UtilsTest {
 		assertEquals("keepme", Utils.templateNameFromSamReadName("keepme/1"));
 		assertEquals("keepme", Utils.templateNameFromSamReadName("keepme/2"));
 		assertEquals("keepme", Utils.templateNameFromSamReadName("keepme /2"));
+		
+		// Hash of template name
+		long h= Utils.templateNameHash("keepme", 1);
+		assertEquals(h, Utils.templateNameHash("keepme/1", 1));
+		assertEquals(h, Utils.templateNameHash("keepme/2 foo bar", 1));
+		assertEquals(h, Utils.templateNameHash("keepme /2", 1));
+		assertTrue(h != Utils.templateNameHash("keepme", 2));
+		assertTrue(h != Utils.templateNameHash("keepm", 1));
 		Stopwatch sw= Stopwatch.createStarted();
 		String x= "HSQ9103:404:C6F0VANXX:1:2208:4363:50381 foo bar /1";
 		for(int i= 0; i < 1000000; i++){
@@ -0,0 +1,123 @@
+package sortBgzipIndex;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import samTextViewer.Utils;
+
+public class ExternalSortTest {
+
+	private List<String> readAll(ExternalSort sorter) throws IOException{
+		ExternalSort.SortedLines sorted= sorter.sorted();
+		List<String> out= new ArrayList<String>();
+		while(sorted.hasNext()){
+			out.add(sorted.next());
+		}
+		sorted.close();
+		return out;
+	}
+	
+	/** Expected order: chrom as string, then pos and end as int, ties in input order*/
+	private List<String> expectedOrder(List<String> lines, final int chromCol, final int posCol, final int endCol){
+		List<String> expected= new ArrayList<String>(lines);
+		Collections.sort(expected, new Comparator<String>() { // Stable
+			@Override
+			public int compare(String a, String b) {
+				String[] x= a.split("\t");
+				String[] y= b.split("\t");
+				int c= x[chromCol].compareTo(y[chromCol]);
+				if(c != 0){
+					return c;
+				}
+				c= Integer.compare(Integer.parseInt(x[posCol]), Integer.parseInt(y[posCol]));
+				if(c != 0 || endCol < 0){
+					return c;
+				}
+				return Integer.compare(Integer.parseInt(x[endCol]), Integer.parseInt(y[endCol]));
+			}
+		});
+		return expected;
+	}
+	
+	@Test
+	public void canSortInMemoryAndWithRuns() throws IOException {
+		Random rnd= new Random(1);
+		List<String> lines= new ArrayList<String>();
+		for(int i= 0; i < 5000; i++){
+			int pos= rnd.nextInt(1000);
+			// Plenty of ties to check order is stable
+			lines.add("chr" + rnd.nextInt(12) + "\t" + pos + "\t" + (pos + rnd.nextInt(10)) + "\tline_" + i);
+		}
+		List<String> expected= expectedOrder(lines, 0, 1, 2);
+		
+		ExternalSort inMemory= new ExternalSort(0, 1, 2);
+		for(String x : lines){
+			inMemory.add(x);
+		}
+		assertEquals(expected, readAll(inMemory));
+		
+		// Small chunks: Sort in parallel and merge many runs 
+		ExternalSort runs= new ExternalSort(0, 1, 2, 10000, 3);
+		for(String x : lines){
+			runs.add(x);
+		}
+		assertEquals(expected, readAll(runs));
+		
+		// Sort on start only
+		runs= new ExternalSort(0, 1, -1, 10000, 2);
+		for(String x : lines){
+			runs.add(x);
+		}
+		assertEquals(expectedOrder(lines, 0, 1, -1), readAll(runs));
+	}
+
+	@Test
+	public void canSortGtf() throws IOException {
+		List<String> lines= new ArrayList<String>();
+		BufferedReader br= Utils.reader("test_data/hg19_genes_head.gtf.gz");
+		String line;
+		while((line= br.readLine()) != null){
+			lines.add(line);
+		}
+		br.close();
+		Collections.shuffle(lines, new Random(1));
+		
+		ExternalSort sorter= new ExternalSort(0, 3, 4, 20000, 4);
+		for(String x : lines){
+			sorter.add(x);
+		}
+		List<String> sorted= readAll(sorter);
+		assertEquals(expectedOrder(lines, 0, 3, 4), sorted);
+	}
+
+	@Test
+	public void canRejectInvalidLine() throws IOException {
+		ExternalSort sorter= new ExternalSort(0, 1, 2);
+		boolean pass= false;
+		try{
+			sorter.add("chr1\tfoo\t10");
+		} catch(NumberFormatException e){
+			pass= true;
+		}
+		assertTrue(pass);
+		pass= false;
+		try{
+			sorter.add("chr1");
+		} catch(IndexOutOfBoundsException e){
+			pass= true;
+		}
+		assertTrue(pass);
+		assertFalse(sorter.sorted().hasNext());
+	}
+}
@@ -0,0 +1,61 @@
+package tracks;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import samTextViewer.Utils;
+
+public class AlignmentWindowTest {
+
+	private List<String> readNames(Iterator<SAMRecord> iter){
+		List<String> names= new ArrayList<String>();
+		while(iter.hasNext()){
+			SAMRecord rec= iter.next();
+			names.add(rec.getReadName() + ":" + rec.getAlignmentStart());
+		}
+		return names;
+	}
+
+	private List<String> readNamesFromFile(String bam, String chrom, int from, int to) throws IOException{
+		SamReader reader= Utils.getSamReader(bam);
+		SAMRecordIterator iter= reader.query(chrom, from, to, false);
+		List<String> names= this.readNames(iter);
+		iter.close();
+		reader.close();
+		return names;
+	}
+
+	@Test
+	public void canQueryWindowAndSubIntervals() throws IOException{
+
+		AlignmentWindow aw= new AlignmentWindow("test_data/ds051.short.bam");
+
+		List<String> window= this.readNames(aw.query("chr7", 5566000, 5567000, 5566000, 5567000));
+		assertEquals(this.readNamesFromFile("test_data/ds051.short.bam", "chr7", 5566000, 5567000), window);
+
+		// Sub-interval served from memory
+		List<String> sub= this.readNames(aw.query("chr7", 5566779, 5566799, 5566000, 5567000));
+		assertEquals(this.readNamesFromFile("test_data/ds051.short.bam", "chr7", 5566779, 5566799), sub);
+
+		// Moving to another window
+		List<String> other= this.readNames(aw.query("chr7", 5566900, 5567100, 5566900, 5567100));
+		assertEquals(this.readNamesFromFile("test_data/ds051.short.bam", "chr7", 5566900, 5567100), other);
+	}
+
+	@Test
+	public void canPrepareWindowForUnindexedFile() throws IOException{
+		AlignmentWindow aw= AlignmentWindow.fromSource("test_data/ds051.noindex.sam");
+		List<String> window= this.readNames(aw.query("chr7", 5566000, 5567000, 5566000, 5567000));
+		assertEquals(this.readNamesFromFile(aw.getWorkFilename(), "chr7", 5566000, 5567000), window);
+		assertEquals(18, window.size());
+	}
+}
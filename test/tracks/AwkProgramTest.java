@@ -0,0 +1,50 @@
+package tracks;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class AwkProgramTest {
+
+	@Test
+	public void canFilterBatchOfLines() throws IOException{
+		AwkProgram awk= new AwkProgram("-F '\\t' '$2 > 5'");
+		String[] in= {"chr1\t1\t100", "chr1\t10\t100", "chr1\t2\t100", "chr1\t10\t100"};
+		assertArrayEquals(new boolean[] {false, true, false, true}, awk.pass(in));
+		// Same program reused
+		assertTrue(awk.pass("chr1\t10\t100"));
+		assertEquals(0, awk.pass(new String[] {}).length);
+	}
+
+	@Test
+	public void canUseAwkFunctions() throws IOException{
+		AwkProgram awk= new AwkProgram("-F '\\t' 'getGtfTag(\"gene_id\") == 100'");
+		String[] in= {"chr1\t.\texon\t1\t10\t.\t+\t.\tgene_id 100;", 
+					  "chr1\t.\texon\t1\t10\t.\t+\t.\tgene_id 200;"};
+		assertArrayEquals(new boolean[] {true, false}, awk.pass(in));
+	}
+
+	@Test
+	public void emptyScriptPassesAll() throws IOException{
+		AwkProgram awk= new AwkProgram(" ");
+		assertTrue(awk.isEmpty());
+		assertArrayEquals(new boolean[] {true, true}, awk.pass(new String[] {"a", "b"}));
+	}
+
+	@Test
+	public void returnsNullIfOutputIsNotInput() throws IOException{
+		AwkProgram awk= new AwkProgram("-F '\\t' '{print $1}'");
+		assertNull(awk.pass(new String[] {"chr1\t1\t100", "chr2\t1\t100"}));
+		assertNull(awk.pass("chr1\t1\t100"));
+	}
+
+	@Test(expected= IOException.class)
+	public void invalidScriptThrows() throws IOException{
+		new AwkProgram("'print {'").pass(new String[] {"chr1\t1\t100"});
+	}
+}
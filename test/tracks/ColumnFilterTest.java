@@ -0,0 +1,82 @@
+package tracks;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import samTextViewer.Utils;
+
+public class ColumnFilterTest {
+
+	private static final String GTF= "chr1\tunknown\texon\t11874\t12227\t.\t+\t.\tgene_id \"DDX11L1\";";
+
+	@Test
+	public void canCompareColumns() {
+		assertTrue(ColumnFilter.compile("$4 > 10000").test(GTF));
+		assertFalse(ColumnFilter.compile("$4 > 20000").test(GTF));
+		assertTrue(ColumnFilter.compile("$3 == \"exon\" && $7 == \"+\"").test(GTF));
+		assertTrue(ColumnFilter.compile("$3 == \"CDS\" || ($5 - 0 >= 1)") == null);
+		assertTrue(ColumnFilter.compile("($3 == \"CDS\" || $5 >= 12227) && !($1 != \"chr1\")").test(GTF));
+		assertTrue(ColumnFilter.compile("$5 > $4").test(GTF));
+	}
+
+	@Test
+	public void canCompareAsAwk() {
+		// Numbers compared as numbers, strings as strings
+		assertTrue(ColumnFilter.compile("$1 > 9").test("10"));
+		assertFalse(ColumnFilter.compile("$1 > \"9\"").test("10"));
+		assertTrue(ColumnFilter.compile("$1 == 1").test("1.0"));
+		assertTrue(ColumnFilter.compile("$1 > 5").test("a"));
+		// Missing columns are empty and zero
+		assertTrue(ColumnFilter.compile("$5 == 0").test("a\tb"));
+		assertTrue(ColumnFilter.compile("$5 == \"\"").test("a\tb"));
+		assertFalse(ColumnFilter.compile("$5").test("a\tb"));
+		assertFalse(ColumnFilter.compile("$2").test("a\t0"));
+		assertTrue(ColumnFilter.compile("$2").test("a\tx"));
+	}
+
+	@Test
+	public void canMatchRegex() {
+		assertTrue(ColumnFilter.compile("$3 ~ \"ex\"").test(GTF));
+		assertTrue(ColumnFilter.compile("$3 !~ /^CDS$/").test(GTF));
+		assertTrue(ColumnFilter.compile("$0 ~ \"DDX11L\\\\d\"").test(GTF));
+		assertTrue(ColumnFilter.compile("/DDX11L1/").test(GTF));
+		assertFalse(ColumnFilter.compile("/^exon/").test(GTF));
+	}
+
+	@Test
+	public void returnsNullIfNotSupported() {
+		assertNull(ColumnFilter.compile("($5 - $4) > 100"));
+		assertNull(ColumnFilter.compile("getGtfTag(\"gene_id\") == 1"));
+		assertNull(ColumnFilter.compile("$NF > 1"));
+		assertNull(ColumnFilter.compile("$3 == \"exon"));
+		assertNull(ColumnFilter.compile("$3 == "));
+		assertNull(ColumnFilter.compile("$3 ~ \"[\""));
+	}
+
+	@Test
+	public void canFilterSamRecords() throws IOException {
+		SamReader reader= Utils.getSamReader("test_data/ds051.short.bam");
+		SAMRecordIterator iter= reader.iterator();
+		ColumnFilter cf= ColumnFilter.compile("$5 >= 30 && $2 < 256 && $6 !~ \"S\" && $3 == \"chr7\"");
+		ColumnFilter tag= ColumnFilter.compile("$12 ~ \"^[A-Z][A-Z]:\"");
+		int n= 0;
+		while(iter.hasNext()){
+			SAMRecord rec= iter.next();
+			String line= rec.getSAMString().trim();
+			assertTrue(cf.test(rec) == cf.test(line));
+			assertTrue(tag.test(rec) == tag.test(line));
+			n++;
+		}
+		iter.close();
+		reader.close();
+		assertTrue(n > 0);
+	}
+}
@@ -0,0 +1,96 @@
+package tracks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.common.io.Files;
+
+import coloring.Config;
+import samTextViewer.GenomicCoords;
+
+public class CoverageSidecarTest {
+
+	@Rule
+	public TemporaryFolder tmp= new TemporaryFolder();
+
+	@BeforeClass
+	public static void init() throws Exception {
+		new Config(null);
+	}
+
+	private String copyBam() throws Exception{
+		File bam= new File(tmp.getRoot(), "ds051.actb.bam");
+		Files.copy(new File("test_data/ds051.actb.bam"), bam);
+		Files.copy(new File("test_data/ds051.actb.bam.bai"), new File(bam.getPath() + ".bai"));
+		return bam.getPath();
+	}
+
+	@Test
+	public void canOpenSidecarOnlyWithSameFilters() throws Exception {
+		String bam= this.copyBam();
+		assertNull(CoverageSidecar.open(bam, 0, 0, 4));
+
+		File tdf= CoverageSidecar.build(bam, bam, 0, 0, 4);
+		assertEquals(CoverageSidecar.getFilename(bam), tdf.getPath());
+		assertTrue(tdf.isFile());
+
+		CoverageSidecar sidecar= CoverageSidecar.open(bam, 0, 0, 4);
+		assertNotNull(sidecar);
+		sidecar.close();
+		assertNull(CoverageSidecar.open(bam, 10, 0, 4));
+		assertNull(CoverageSidecar.open(bam, 0, 0, 1024));
+	}
+
+	@Test
+	public void canGetScreenScoresFromSidecar() throws Exception {
+		String bam= this.copyBam();
+		CoverageSidecar.build(bam, bam, 0, 0, 4);
+		CoverageSidecar sidecar= CoverageSidecar.open(bam, 0, 0, 4);
+
+		// Same columns with coverage as the exact depth and about the same scores
+		GenomicCoords gc= new GenomicCoords("chr7:5560000-5580000", 80, null, null);
+		List<Float> observed= sidecar.getScreenScores(gc);
+		TrackPileup tp= new TrackPileup("test_data/ds051.actb.bam", gc);
+		List<Float> expected= tp.getScreenScores();
+		assertEquals(expected.size(), observed.size());
+		for(int i= 0; i < expected.size(); i++){
+			assertEquals(Float.isNaN(expected.get(i)), Float.isNaN(observed.get(i)));
+			if( ! Float.isNaN(expected.get(i))){
+				assertEquals(expected.get(i), observed.get(i), expected.get(i) * 0.2 + 1);
+			}
+		}
+
+		// No coverage on chromosomes without reads
+		gc= new GenomicCoords("chr1:1-1000000", 80, null, null);
+		for(float x : sidecar.getScreenScores(gc)){
+			assertTrue(Float.isNaN(x));
+		}
+		sidecar.close();
+	}
+
+	@Test
+	public void trackPileupUsesSidecarInLargeWindows() throws Exception {
+		String bam= this.copyBam();
+		CoverageSidecar.build(bam, bam, 0, 0, 4);
+
+		GenomicCoords gc= new GenomicCoords("chr7:4000000-7000000", 80, null, null);
+		TrackPileup tp= new TrackPileup(bam, gc);
+		tp.setNoFormat(true);
+		assertTrue(tp.getTitle().contains("; tdf"));
+
+		// Sidecar not used with other filters
+		tp.setMapq(10);
+		tp.update();
+		assertTrue( ! tp.getTitle().contains("; tdf"));
+	}
+}
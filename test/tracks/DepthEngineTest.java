@@ -0,0 +1,85 @@
+package tracks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import coloring.Config;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.filter.MappingQualityFilter;
+import htsjdk.samtools.filter.SamRecordFilter;
+import samTextViewer.GenomicCoords;
+import samTextViewer.Utils;
+
+public class DepthEngineTest {
+
+	@BeforeClass
+	public static void init() throws Exception {
+		new Config(null);
+	}
+
+	/** Depth collected reading the whole region in one go on this thread*/
+	private PileupAccumulator sequentialDepth(String bam, Track track, String chrom, int from, int to) throws Exception{
+		PileupAccumulator acc= new PileupAccumulator(chrom, from, to, false);
+		SamReader samReader= Utils.getSamReader(bam);
+		SAMRecordIterator iter= samReader.query(chrom, from, to, false);
+		FilteredSamIterator sam= new FilteredSamIterator(iter, track);
+		SAMRecord rec;
+		while((rec= sam.next()) != null){
+			acc.add(rec, from, to);
+		}
+		iter.close();
+		samReader.close();
+		return acc;
+	}
+
+	@Test
+	public void canSplitRegionInChunks(){
+		assertEquals(1, DepthEngine.chunkStart(1));
+		assertEquals(1, DepthEngine.chunkStart(16384));
+		assertEquals(16385, DepthEngine.chunkStart(16385));
+	}
+
+	@Test
+	public void sameDepthAsSequentialReading() throws Exception {
+
+		String bam= "test_data/ds051.actb.bam";
+		GenomicCoords gc= new GenomicCoords("chr7:5566000-5567000", 80, null, null);
+		TrackPileup tr= new TrackPileup(bam, gc);
+
+		// Region spanning several chunks and starting and ending inside a chunk
+		int from= 5520001;
+		int to= 5610000;
+		PileupAccumulator parallel= new PileupAccumulator("chr7", from, to, false);
+		DepthEngine.collect(bam, tr, parallel);
+		PileupAccumulator expected= this.sequentialDepth(bam, tr, "chr7", from, to);
+
+		long total= 0;
+		for(int pos= from; pos <= to; pos++){
+			assertEquals(expected.getDepth(pos), parallel.getDepth(pos));
+			total += parallel.getDepth(pos);
+		}
+		assertTrue(total > 0);
+
+		// With mapq filter
+		List<SamRecordFilter> filters= new ArrayList<SamRecordFilter>();
+		filters.add(new MappingQualityFilter(30));
+		tr.getFeatureFilter().setSamRecordFilter(filters);
+		parallel= new PileupAccumulator("chr7", from, to, false);
+		DepthEngine.collect(bam, tr, parallel);
+		expected= this.sequentialDepth(bam, tr, "chr7", from, to);
+		long totalMapq= 0;
+		for(int pos= from; pos <= to; pos++){
+			assertEquals(expected.getDepth(pos), parallel.getDepth(pos));
+			totalMapq += parallel.getDepth(pos);
+		}
+		assertTrue(totalMapq < total);
+	}
+}
@@ -0,0 +1,80 @@
+package tracks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import coloring.Config;
+import exceptions.InvalidConfigException;
+import exceptions.InvalidGenomicCoordsException;
+import exceptions.InvalidRecordException;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import samTextViewer.GenomicCoords;
+import samTextViewer.Utils;
+
+public class FilteredSamIteratorTest {
+
+	@BeforeClass
+	public static void init() throws IOException, InvalidConfigException {
+		new Config(null);
+	}
+
+	private List<SAMRecord> filter(Track tr, String bam, String chrom, int from, int to) throws IOException{
+		SamReader reader= Utils.getSamReader(bam);
+		SAMRecordIterator iter= reader.query(chrom, from, to, false);
+		FilteredSamIterator filtered= tr.filterReads(iter);
+		List<SAMRecord> passed= new ArrayList<SAMRecord>();
+		SAMRecord rec;
+		while((rec= filtered.next()) != null){
+			passed.add(rec);
+		}
+		iter.close();
+		reader.close();
+		return passed;
+	}
+
+	@Test
+	public void canFilterWithGrepAndAwk() throws InvalidGenomicCoordsException, IOException, ClassNotFoundException, InvalidRecordException, SQLException{
+
+		String bam= "test_data/ds051.short.bam";
+		GenomicCoords gc= new GenomicCoords("chr7:5566000-5567000", 80, null, null);
+		TrackReads tr= new TrackReads(bam, gc);
+
+		assertEquals(22, this.filter(tr, bam, "chr7", 5566000, 5567000).size());
+
+		tr.setShowHideRegex(Pattern.compile("NCNNNCCC"), Pattern.compile(Filter.DEFAULT_HIDE_REGEX.getValue()));
+		List<SAMRecord> passed= this.filter(tr, bam, "chr7", 5566000, 5567000);
+		assertTrue(passed.size() < 22);
+		for(SAMRecord rec : passed){
+			assertTrue(rec.getSAMString().contains("NCNNNCCC"));
+		}
+
+		int nGrep= passed.size();
+		tr.setAwk("'$4 != 5566779'");
+		passed= this.filter(tr, bam, "chr7", 5566000, 5567000);
+		assertTrue(passed.size() < nGrep);
+		for(SAMRecord rec : passed){
+			assertTrue(rec.getAlignmentStart() != 5566779);
+		}
+	}
+
+	@Test
+	public void canReturnNullOnEmptyInput() throws InvalidGenomicCoordsException, IOException, ClassNotFoundException, InvalidRecordException, SQLException{
+		String bam= "test_data/ds051.short.bam";
+		GenomicCoords gc= new GenomicCoords("chr7:1-1000", 80, null, null);
+		TrackReads tr= new TrackReads(bam, gc);
+		assertEquals(0, this.filter(tr, bam, "chr7", 1, 1000).size());
+		tr.setAwk("'$4 > 0'");
+		assertEquals(0, this.filter(tr, bam, "chr7", 1, 1000).size());
+	}
+}
@@ -14,6 +14,7 @@ import org.junit.Test;
 import com.google.common.base.Splitter;
 
 import coloring.Config;
+import coloring.ConfigKey;
 import coloring.Xterm256;
 import exceptions.InvalidColourException;
 import exceptions.InvalidConfigException;
@@ -280,6 +281,28 @@ public class GenotypeMatrixTest {
 		assertTrue(x.contains("*")); // Different
 	}
 	
+	@Test
+	public void formattedRowsEndWithReset() throws Exception{
+
+		VCFFileReader reader = new VCFFileReader(new File("test_data/info_formats.vcf.gz"));
+		VCFHeader vcfHeader = reader.getFileHeader();
+		reader.close();
+
+		GenomicCoords gc= new GenomicCoords("1:17822074-17822184", 80, null, null);
+		TrackIntervalFeature vcf= new TrackIntervalFeature("test_data/info_formats.vcf.gz", gc);
+		List<IntervalFeature> linf = vcf.getIntervalFeatureList();
+
+		GenotypeMatrix gm= new GenotypeMatrix();
+		String x= gm.printToScreen(false, linf, 80, vcfHeader);
+		String reset= "\033[0;48;5;" + Config.get256Color(ConfigKey.background) + "m";
+		String[] rows= x.split("\n");
+		assertEquals(2, rows.length);
+		for(String row : rows){
+			assertTrue(row.contains("\033[48;5;"));
+			assertTrue(row.endsWith(reset));
+		}
+	}
+
 	@Test
 	public void canSelectSamplesByRegex() throws Exception{
 
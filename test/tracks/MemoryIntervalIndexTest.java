@@ -0,0 +1,89 @@
+package tracks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import exceptions.InvalidGenomicCoordsException;
+import exceptions.InvalidRecordException;
+import htsjdk.tribble.index.tabix.TabixFormat;
+import htsjdk.tribble.readers.TabixReader;
+import samTextViewer.GenomicCoords;
+import samTextViewer.Utils;
+import sortBgzipIndex.MakeTabixIndex;
+
+public class MemoryIntervalIndexTest {
+
+	/** Query the file indexed in memory and with tabix and compare results*/
+	private void assertSameAsTabix(String infile, TabixFormat fmt) throws IOException, ClassNotFoundException, InvalidRecordException, SQLException{
+		File bgz= Utils.createTempFile(".asciigenome.", ".memoryIndexTest.gz");
+		bgz.deleteOnExit();
+		new File(bgz.getAbsolutePath() + ".tbi").deleteOnExit();
+		new MakeTabixIndex(infile, bgz, fmt);
+		TabixReader tabix= new TabixReader(bgz.getAbsolutePath());
+		
+		MemoryIntervalIndex index= MemoryIntervalIndex.load(infile, fmt, 100 * 1024 * 1024);
+		assertEquals(tabix.getChromosomes(), index.getChromosomes());
+		
+		Random rnd= new Random(1);
+		for(String chrom : tabix.getChromosomes()){
+			List<int[]> regions= new ArrayList<int[]>();
+			regions.add(new int[] {0, Integer.MAX_VALUE});
+			for(int i= 0; i < 200; i++){
+				int from= rnd.nextInt(200000);
+				regions.add(new int[] {from, from + rnd.nextInt(20000)});
+				regions.add(new int[] {from, from + 1});
+			}
+			for(int[] r : regions){
+				List<String> expected= new ArrayList<String>();
+				TabixReader.Iterator iter= tabix.query(chrom, r[0], r[1]);
+				String line;
+				while((line= iter.next()) != null){
+					if( ! line.contains("\t__ignore_me__")){
+						expected.add(line);
+					}
+				}
+				assertEquals(chrom + ":" + r[0] + "-" + r[1], expected, index.query(chrom, r[0], r[1]));
+			}
+		}
+		assertEquals(0, index.query("nonsense", 0, 1000).size());
+		tabix.close();
+	}
+	
+	@Test
+	public void canQueryAsTabix() throws ClassNotFoundException, IOException, InvalidRecordException, SQLException {
+		assertSameAsTabix("test_data/hg19_genes_head.gtf", TabixFormat.GFF);
+		assertSameAsTabix("test_data/hg19_genes_head.gtf.gz", TabixFormat.GFF);
+		assertSameAsTabix("test_data/refSeq.hg19.short.bed", TabixFormat.BED); // Not sorted
+		assertSameAsTabix("test_data/overlapped.bed", TabixFormat.BED);
+		assertSameAsTabix("test_data/refSeqZero.bed", TabixFormat.BED);
+		assertSameAsTabix("test_data/ovl.gff", TabixFormat.GFF);
+		assertSameAsTabix("test_data/Homo_sapiens.GRCh38.86.ENST00000331789.gff3", TabixFormat.GFF);
+	}
+	
+	@Test
+	public void canRefuseLargeFile() throws IOException {
+		assertNull(MemoryIntervalIndex.load("test_data/hg19_genes_head.gtf", TabixFormat.GFF, 1000));
+		assertNull(MemoryIntervalIndex.load("test_data/hg19_genes_head.gtf.gz", TabixFormat.GFF, 1000));
+	}
+	
+	@Test
+	public void canOpenTrackWithoutWritingFiles() throws ClassNotFoundException, IOException, InvalidGenomicCoordsException, InvalidRecordException, SQLException {
+		GenomicCoords gc= new GenomicCoords("chr1:1-100000", 80, null, null);
+		TrackIntervalFeature tif= new TrackIntervalFeature("test_data/hg19_genes_head.gtf", gc);
+		assertEquals("test_data/hg19_genes_head.gtf", tif.getWorkFilename());
+		assertTrue(tif.getIntervalFeatureList().size() > 0);
+		
+		GenomicCoords next= tif.coordsOfNextFeature(gc, false);
+		assertTrue(next.getFrom() > 1);
+	}
+}
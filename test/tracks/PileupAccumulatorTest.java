@@ -0,0 +1,80 @@
+package tracks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PileupAccumulatorTest {
+
+	private void addN(PileupAccumulator acc, int pos, int base, int n){
+		for(int i= 0; i < n; i++){
+			acc.add(pos, base, i % 2 == 0, i % 3 == 0);
+		}
+	}
+	
+	@Test
+	public void canCollectDepth(){
+		PileupAccumulator acc= new PileupAccumulator("chr1", 101, 200, false);
+		acc.add(101, PileupAccumulator.A, false, true);
+		acc.add(101, PileupAccumulator.D, true, false);
+		acc.add(200, PileupAccumulator.baseIndex((byte)'c'), true, true);
+		assertEquals(2, acc.getDepth(101));
+		assertEquals(0, acc.getDepth(150));
+		assertEquals(1, acc.getDepth(200));
+		assertFalse(acc.hasBaseCounts());
+	}
+
+	@Test
+	public void canCallConsensus(){
+		PileupAccumulator acc= new PileupAccumulator("chr1", 1, 10, true);
+		
+		assertEquals(' ', acc.getConsensus(1)); // No coverage
+		
+		this.addN(acc, 2, PileupAccumulator.G, 100);
+		assertEquals('G', acc.getConsensus(2));
+		
+		this.addN(acc, 3, PileupAccumulator.A, 50);
+		this.addN(acc, 3, PileupAccumulator.G, 50);
+		assertEquals('R', acc.getConsensus(3));
+
+		// Alternative allele with too few reads
+		this.addN(acc, 4, PileupAccumulator.C, 100);
+		this.addN(acc, 4, PileupAccumulator.T, 2);
+		assertEquals('C', acc.getConsensus(4));
+		
+		// Too many different alleles
+		this.addN(acc, 5, PileupAccumulator.A, 10);
+		this.addN(acc, 5, PileupAccumulator.C, 10);
+		this.addN(acc, 5, PileupAccumulator.T, 10);
+		assertEquals('N', acc.getConsensus(5));
+
+		// Deletion
+		this.addN(acc, 6, PileupAccumulator.D, 10);
+		assertEquals('D', acc.getConsensus(6));
+		
+		// Ties are broken in the order A, C, T, D, G, N 
+		this.addN(acc, 7, PileupAccumulator.G, 1);
+		this.addN(acc, 7, PileupAccumulator.T, 1);
+		assertEquals('T', acc.getConsensus(7));
+	}
+
+	@Test
+	public void canCopyOverlap(){
+		PileupAccumulator acc= new PileupAccumulator("chr1", 1, 10, true);
+		this.addN(acc, 8, PileupAccumulator.A, 3);
+		
+		PileupAccumulator next= new PileupAccumulator("chr1", 5, 15, true);
+		assertTrue(next.copyOverlap(acc));
+		assertEquals(3, next.getDepth(8));
+		assertEquals('A', next.getConsensus(8));
+
+		// Cannot get base counts from an accumulator without them
+		PileupAccumulator depthOnly= new PileupAccumulator("chr1", 1, 10, false);
+		assertFalse(next.copyOverlap(depthOnly));
+		
+		assertFalse(new PileupAccumulator("chr2", 1, 10, false).copyOverlap(acc));
+		assertFalse(new PileupAccumulator("chr1", 11, 20, false).copyOverlap(acc));
+	}
+}
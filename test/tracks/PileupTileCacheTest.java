@@ -0,0 +1,100 @@
+package tracks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class PileupTileCacheTest {
+
+	@Test
+	public void canAlignToTiles(){
+		assertEquals(1, PileupTileCache.tileStart(1));
+		assertEquals(1, PileupTileCache.tileStart(PileupTileCache.TILE_SIZE));
+		assertEquals(PileupTileCache.TILE_SIZE + 1, PileupTileCache.tileStart(PileupTileCache.TILE_SIZE + 1));
+		assertEquals(PileupTileCache.TILE_SIZE, PileupTileCache.tileEnd(1));
+	}
+	
+	@Test
+	public void canFillFromCache(){
+		int tile= PileupTileCache.TILE_SIZE;
+		PileupTileCache cache= new PileupTileCache(PileupTileCache.DEFAULT_MAX_BYTES);
+
+		PileupAccumulator window= new PileupAccumulator("chr1", 500, tile + 500, false);
+		List<int[]> missing= cache.fill(window);
+		assertEquals(1, missing.size()); // Two adjacent tiles merged in one interval
+		assertEquals(1, missing.get(0)[0]);
+		assertEquals(2 * tile, missing.get(0)[1]);
+		assertEquals(2, cache.getMisses());
+
+		PileupAccumulator computed= new PileupAccumulator("chr1", 1, 2 * tile, false);
+		computed.add(600, PileupAccumulator.A, false, false);
+		cache.put(computed);
+		assertEquals(2, cache.size()); // Tile without coverage is cached too
+		
+		window= new PileupAccumulator("chr1", 1, 2 * tile, false);
+		assertEquals(0, cache.fill(window).size());
+		assertEquals(1, window.getDepth(600));
+		assertEquals(2, cache.getHits());
+		
+		// Depth-only tiles cannot serve per-base counts
+		window= new PileupAccumulator("chr1", 1, 10, true);
+		assertEquals(1, cache.fill(window).size());
+	}
+	
+	@Test
+	public void canEvictLeastRecentlyUsed(){
+		int tile= PileupTileCache.TILE_SIZE;
+		// Room for about two tiles with coverage
+		PileupTileCache cache= new PileupTileCache(2 * (4 * tile + 64));
+		for(int i= 0; i < 3; i++){
+			PileupAccumulator computed= new PileupAccumulator("chr1", i * tile + 1, (i + 1) * tile, false);
+			computed.add(i * tile + 1, PileupAccumulator.A, false, false);
+			cache.put(computed);
+		}
+		assertEquals(2, cache.size());
+		// First tile has been evicted
+		assertEquals(1, cache.fill(new PileupAccumulator("chr1", 1, 10, false)).size());
+		assertEquals(0, cache.fill(new PileupAccumulator("chr1", 2 * tile + 1, 2 * tile + 10, false)).size());
+	}
+
+	@Test
+	public void doesNotCacheWindowLargerThanBudget(){
+		int tile= PileupTileCache.TILE_SIZE;
+		PileupTileCache cache= new PileupTileCache(2 * (4 * tile + 64));
+		PileupAccumulator computed= new PileupAccumulator("chr1", 1, tile, false);
+		computed.add(1, PileupAccumulator.A, false, false);
+		cache.put(computed);
+		
+		computed= new PileupAccumulator("chr1", tile + 1, 4 * tile, false);
+		computed.add(tile + 1, PileupAccumulator.A, false, false);
+		cache.put(computed);
+		// Cache left as it was
+		assertEquals(1, cache.size());
+		assertEquals(0, cache.fill(new PileupAccumulator("chr1", 1, 10, false)).size());
+	}
+
+	@Test
+	public void doesNotEvictTilesOfCurrentWindow(){
+		int tile= PileupTileCache.TILE_SIZE;
+		PileupTileCache cache= new PileupTileCache(2 * (4 * tile + 64));
+		PileupAccumulator computed= new PileupAccumulator("chr2", 1, tile, false);
+		computed.add(1, PileupAccumulator.A, false, false);
+		cache.put(computed);
+
+		// Window of three tiles, computed one tile at a time
+		for(int i= 0; i < 3; i++){
+			computed= new PileupAccumulator("chr1", i * tile + 1, (i + 1) * tile, false);
+			computed.add(i * tile + 1, PileupAccumulator.A, false, false);
+			cache.put(computed, 1, 3 * tile);
+		}
+		assertEquals(2, cache.size());
+		assertTrue(cache.getBytes() <= 2 * (4 * tile + 64));
+		// Tile of another window evicted, last tile of the window not cached
+		assertEquals(1, cache.fill(new PileupAccumulator("chr2", 1, 10, false)).size());
+		assertEquals(0, cache.fill(new PileupAccumulator("chr1", 1, 2 * tile, false)).size());
+		assertEquals(1, cache.fill(new PileupAccumulator("chr1", 2 * tile + 1, 2 * tile + 10, false)).size());
+	}
+}
@@ -0,0 +1,70 @@
+package tracks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import exceptions.InvalidGenomicCoordsException;
+import exceptions.InvalidRecordException;
+import samTextViewer.GenomicCoords;
+
+public class PrefetcherTest {
+
+	@Test
+	public void canListNextWindows() throws InvalidGenomicCoordsException, IOException{
+		GenomicCoords gc= new GenomicCoords("chr7:5566736-5566856", 80, null, null);
+		List<GenomicCoords> windows= Prefetcher.nextWindows(gc, 80);
+		assertEquals(4, windows.size());
+		GenomicCoords right= (GenomicCoords) gc.clone();
+		right.right();
+		assertTrue(right.equalCoords(windows.get(0)));
+		GenomicCoords left= (GenomicCoords) gc.clone();
+		left.left();
+		assertTrue(left.equalCoords(windows.get(1)));
+		// Original not changed
+		assertEquals(5566736, (int)gc.getFrom());
+	}
+
+	@Test
+	public void canServeNextWindowFromMemory() throws InvalidGenomicCoordsException, IOException, ClassNotFoundException, InvalidRecordException, SQLException{
+		GenomicCoords gc= new GenomicCoords("chr7:5566736-5566856", 80, null, null);
+		TrackPileup tr= new TrackPileup("test_data/ds051.short.bam", gc);
+		Prefetcher prefetcher= new Prefetcher(Arrays.asList(new Track[] {tr}), gc, 80, Prefetcher.DEFAULT_MAX_BYTES);
+		for(GenomicCoords next : prefetcher.getWindows()){
+			tr.prefetch(next, prefetcher);
+		}
+		long misses= tr.getCacheMisses();
+		GenomicCoords right= prefetcher.getWindows().get(0);
+		tr.setGc(right);
+		assertEquals(misses, tr.getCacheMisses());
+		TrackPileup fresh= new TrackPileup("test_data/ds051.short.bam", right);
+		assertEquals(fresh.getDepth(right.getChrom(), right.getFrom(), right.getTo()),
+				tr.getDepth(right.getChrom(), right.getFrom(), right.getTo()));
+	}
+
+	@Test
+	public void canStopWhenCancelledOrOverBudget() throws InvalidGenomicCoordsException, IOException, ClassNotFoundException, InvalidRecordException, SQLException{
+		GenomicCoords gc= new GenomicCoords("chr7:5566736-5566856", 80, null, null);
+		TrackPileup tr= new TrackPileup("test_data/ds051.short.bam", gc);
+
+		// Window not overlapping any cached tile
+		GenomicCoords next= new GenomicCoords("chr7:5568736-5568856", 80, null, null);
+
+		Prefetcher prefetcher= new Prefetcher(Arrays.asList(new Track[] {tr}), gc, 80, 0);
+		tr.prefetch(next, prefetcher);
+
+		prefetcher= new Prefetcher(Arrays.asList(new Track[] {tr}), gc, 80, Prefetcher.DEFAULT_MAX_BYTES);
+		prefetcher.cancel();
+		tr.prefetch(next, prefetcher);
+
+		long misses= tr.getCacheMisses();
+		tr.setGc(next);
+		assertTrue(tr.getCacheMisses() > misses);
+	}
+}
@@ -0,0 +1,95 @@
+package tracks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamReader;
+import samTextViewer.Utils;
+
+public class ReadGrepTest {
+
+	private List<SAMRecord> readBam(String bam) throws IOException{
+		SamReader reader= Utils.getSamReader(bam);
+		SAMRecordIterator iter= reader.iterator();
+		List<SAMRecord> recs= new ArrayList<SAMRecord>();
+		while(iter.hasNext()){
+			recs.add(iter.next());
+		}
+		iter.close();
+		reader.close();
+		return recs;
+	}
+
+	@Test
+	public void canMatchWholeRecordAsRegex() throws IOException {
+		List<SAMRecord> recs= readBam("test_data/ds051.short.bam");
+		String[] patterns= {"NCNNNCCC", "ncnnnccc", "\t5566779\t", "NM:i:0", "nm:I:0", "chr7", "=", "HWI", "XX", "", "100M", "AS:i:", "^HWI", "\\tchr7\\t"};
+		int matched= 0;
+		for(String p : patterns){
+			for(int flags : new int[] {0, Pattern.CASE_INSENSITIVE, Pattern.LITERAL}){
+				Pattern pattern= Pattern.compile(p, flags);
+				ReadGrep grep= new ReadGrep(pattern, null);
+				for(SAMRecord rec : recs){
+					boolean expected= pattern.matcher(rec.getSAMString().trim()).find();
+					assertEquals(p, expected, grep.find(rec));
+					if(expected){
+						matched++;
+					}
+				}
+			}
+		}
+		assertTrue(matched > 0);
+	}
+
+	@Test
+	public void canMatchFieldOnly() throws IOException {
+		List<SAMRecord> recs= readBam("test_data/ds051.short.bam");
+		SAMRecord rec= recs.get(0);
+		String name= rec.getReadName();
+
+		assertTrue(new ReadGrep(Pattern.compile(name.substring(0, 5)), "qname").find(rec));
+		assertTrue(new ReadGrep(Pattern.compile("^" + name.substring(0, 5)), "QNAME").find(rec));
+		assertFalse(new ReadGrep(Pattern.compile("chr7"), "qname").find(rec));
+		assertTrue(new ReadGrep(Pattern.compile("chr7"), "rname").find(rec));
+		assertTrue(new ReadGrep(Pattern.compile(rec.getCigarString(), Pattern.LITERAL), "cigar").find(rec));
+
+		// Tags: Value only
+		Object nm= rec.getAttribute("NM");
+		assertTrue(new ReadGrep(Pattern.compile("^" + nm + "$"), "NM").find(rec));
+		assertFalse(new ReadGrep(Pattern.compile("NM"), "NM").find(rec));
+		assertFalse(new ReadGrep(Pattern.compile(".*"), "ZZ").find(rec)); // Missing tag
+	}
+
+	@Test
+	public void canSearchLiteralCaseInsensitive() {
+		ReadGrep grep= new ReadGrep(Pattern.compile("AbC", Pattern.CASE_INSENSITIVE), null);
+		assertTrue(grep.find("xxabc"));
+		assertTrue(grep.find("ABCxx"));
+		assertTrue(grep.find("xaBcx"));
+		assertFalse(grep.find("xabxc"));
+		assertFalse(grep.find("ab"));
+		assertFalse(grep.find("éab"));
+		assertTrue(new ReadGrep(Pattern.compile("", Pattern.CASE_INSENSITIVE), null).find(""));
+	}
+
+	@Test
+	public void canValidateScope() {
+		assertTrue(ReadGrep.isValidScope(null));
+		assertTrue(ReadGrep.isValidScope("qname"));
+		assertTrue(ReadGrep.isValidScope("NM"));
+		assertTrue(ReadGrep.isValidScope("X0"));
+		assertFalse(ReadGrep.isValidScope("foo"));
+		assertFalse(ReadGrep.isValidScope("N"));
+		assertFalse(ReadGrep.isValidScope("0X"));
+	}
+}
@@ -0,0 +1,45 @@
+package tracks;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import coloring.Config;
+
+public class ReadRowTest {
+
+	@BeforeClass
+	public static void init() throws Exception {
+		new Config(null);
+	}
+
+	@Test
+	public void canFormatRow() throws Exception {
+		ReadRow row= new ReadRow(10);
+		row.set(2, 'A', 1, 2, (byte)0);
+		row.set(3, '-', 3, 4, ReadRow.INVERT);
+		row.addAttribute(2, ReadRow.UNDERLINE);
+		assertEquals(4, row.length());
+		assertEquals("  A-  ", row.format(0, 6, true, -1));
+
+		String reset= "\033[0;48;5;" + row.background + "m";
+		assertEquals(" \033[4;48;5;2;38;5;1mA\033[0;7;48;5;4;38;5;3m-" + reset, row.format(1, 4, false, -1));
+
+		// Cells with the same format share one escape
+		row.set(4, 'C', 3, 4, ReadRow.INVERT);
+		assertEquals("\033[7;48;5;4;38;5;3m-C" + reset, row.format(3, 5, false, -1));
+
+		// Highlight blank or formatted cell
+		assertEquals(" ", row.format(0, 1, false, 0));
+		assertEquals("\033[4;48;5;2;38;5;1m\033[1;7mA\033[21;27m" + reset, row.format(2, 3, false, 2));
+
+		// Reuse row
+		row.clear();
+		assertEquals(0, row.length());
+		assertEquals("      ", row.format(0, 6, false, -1));
+		row.set(11, 'C', 1, 2, (byte)0);
+		assertEquals(12, row.length());
+		assertEquals("    C", row.format(7, 12, true, -1));
+	}
+}
@@ -0,0 +1,78 @@
+package tracks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+
+public class ReadSamplerTest {
+
+	private SAMRecord makeRecord(String name, int start){
+		SAMRecord rec= new SAMRecord(new SAMFileHeader());
+		rec.setReadName(name);
+		rec.setAlignmentStart(start);
+		return rec;
+	}
+
+	@Test
+	public void canKeepAllReadsBelowMax() {
+		ReadSampler sampler= new ReadSampler(10, 1);
+		for(int i= 0; i < 10; i++){
+			sampler.add(this.makeRecord("read" + i, i + 1));
+		}
+		List<SAMRecord> sample= sampler.getSample();
+		assertEquals(10, sampler.getCount());
+		assertEquals(10, sample.size());
+		// Input order is preserved
+		for(int i= 0; i < 10; i++){
+			assertEquals(i + 1, sample.get(i).getAlignmentStart());
+		}
+	}
+
+	@Test
+	public void canSampleAndKeepMatesTogether() {
+		ReadSampler sampler= new ReadSampler(1000, 1);
+		for(int i= 0; i < 10000; i++){
+			sampler.add(this.makeRecord("read" + i + "/1", i + 1));
+			sampler.add(this.makeRecord("read" + i + "/2", i + 500));
+		}
+		List<SAMRecord> sample= sampler.getSample();
+		assertEquals(20000, sampler.getCount());
+		assertTrue(sample.size() <= 1000);
+		assertTrue(sample.size() >= 990);
+
+		Map<String, Integer> mates= new HashMap<String, Integer>();
+		int prev= 0;
+		for(SAMRecord rec : sample){
+			String templ= rec.getReadName().substring(0, rec.getReadName().length() - 2);
+			mates.put(templ, mates.containsKey(templ) ? mates.get(templ) + 1 : 1);
+			if(rec.getReadName().endsWith("/1")){
+				assertTrue(rec.getAlignmentStart() > prev);
+				prev= rec.getAlignmentStart();
+			}
+		}
+		for(int n : mates.values()){
+			assertEquals(2, n);
+		}
+		// Sample is spread along the input, not taken from the start
+		assertTrue(prev > 9000);
+	}
+
+	@Test
+	public void canChangeSampleWithSeed() {
+		ReadSampler s1= new ReadSampler(10, 1);
+		ReadSampler s2= new ReadSampler(10, 2);
+		for(int i= 0; i < 1000; i++){
+			s1.add(this.makeRecord("read" + i, i + 1));
+			s2.add(this.makeRecord("read" + i, i + 1));
+		}
+		assertTrue( ! s1.getSample().equals(s2.getSample()));
+	}
+}
@@ -0,0 +1,87 @@
+package tracks;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RowPackerTest {
+
+	private static final RowPacker.Extent<int[]> EXTENT= new RowPacker.Extent<int[]>(){
+		@Override
+		public int getStart(int[] x) {
+			return x[0];
+		}
+		@Override
+		public int getEnd(int[] x) {
+			return x[1];
+		}
+	};
+
+	/** Fill one row at a time, as stacking was done before RowPacker*/
+	private List<List<int[]>> packRowByRow(List<int[]> items, int gap){
+		List<int[]> remaining= new ArrayList<int[]>(items);
+		List<List<int[]>> rows= new ArrayList<List<int[]>>();
+		while(remaining.size() > 0){
+			List<int[]> row= new ArrayList<int[]>();
+			List<int[]> next= new ArrayList<int[]>();
+			for(int[] x : remaining){
+				if(row.size() == 0 || x[0] > row.get(row.size() - 1)[1] + gap){
+					row.add(x);
+				} else {
+					next.add(x);
+				}
+			}
+			rows.add(row);
+			remaining= next;
+		}
+		return rows;
+	}
+
+	@Test
+	public void canPackItems() {
+		List<int[]> items= new ArrayList<int[]>();
+		items.add(new int[] {1, 10});
+		items.add(new int[] {2, 5});
+		items.add(new int[] {11, 20});
+		items.add(new int[] {12, 15});
+		
+		List<List<int[]>> rows= RowPacker.pack(items, 0, EXTENT);
+		assertEquals(2, rows.size());
+		assertEquals(11, rows.get(0).get(1)[0]);
+		assertEquals(2, rows.get(1).get(0)[0]);
+		assertEquals(12, rows.get(1).get(1)[0]);
+		
+		// With gap of one, book-end items go on separate rows
+		rows= RowPacker.pack(items, 1, EXTENT);
+		assertEquals(2, rows.size());
+		assertEquals(12, rows.get(0).get(1)[0]);
+		assertEquals(11, rows.get(1).get(1)[0]);
+		
+		assertEquals(0, RowPacker.pack(new ArrayList<int[]>(), 1, EXTENT).size());
+	}
+
+	@Test
+	public void sameLayoutAsFillingOneRowAtATime() {
+		Random rand= new Random(1);
+		for(int n : new int[] {1, 2, 3, 10, 100, 1000}){
+			for(int gap= 0; gap <= 2; gap++){
+				List<int[]> items= new ArrayList<int[]>();
+				int start= 1;
+				for(int i= 0; i < n; i++){
+					start += rand.nextInt(5);
+					items.add(new int[] {start, start + rand.nextInt(30)});
+				}
+				List<List<int[]>> expected= this.packRowByRow(items, gap);
+				List<List<int[]>> observed= RowPacker.pack(items, gap, EXTENT);
+				assertEquals(expected, observed);
+				// Same rows if stopping after a few
+				observed= RowPacker.pack(items, gap, EXTENT, 3);
+				assertEquals(expected.subList(0, Math.min(3, expected.size())), observed);
+			}
+		}
+	}
+}
@@ -827,4 +827,26 @@ public class TrackIntervalFeatureTest {
 		assertTrue(xset.size() > 1000);		
 	}
 	
+
+	@Test
+	public void columnFilterSeesTrailingEmptyFields() throws Exception{
+		GenomicCoords gc= new GenomicCoords("chr1:1-1000", 80, null, null);
+		TrackIntervalFeature tif= new TrackIntervalFeature("test_data/refSeq.hg19.short.bed", gc);
+		tif.setColumnFilter(ColumnFilter.compile("$0 ~ /\\t$/"));
+		
+		String empty= "chr1\t10\t20\tx\t";
+		String full= "chr1\t10\t20\tx\ty";
+		assertTrue(tif.featureIsVisible(empty));
+		assertTrue(tif.featureIsVisible(empty + "\n"));
+		assertTrue( ! tif.featureIsVisible(full));
+		
+		List<IntervalFeature> features= new ArrayList<IntervalFeature>();
+		features.add(new IntervalFeature(empty, TrackFormat.BED, null));
+		features.add(new IntervalFeature(full, TrackFormat.BED, null));
+		// Same result feature by feature and in batch
+		List<IntervalFeature> visible= tif.filterVisible(features);
+		for(IntervalFeature x : features){
+			assertEquals(tif.featureIsVisible(x.getRaw()), visible.contains(x));
+		}
+	}
 }
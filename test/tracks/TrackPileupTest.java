@@ -336,4 +336,29 @@ public class TrackPileupTest {
 		GenomicCoords gc= new GenomicCoords("chr1:1-1000", 80, null, null);
 		new TrackPileup("test_data/ds051.noindex.sam", gc);
 	}	
+
+	@Test
+	public void canReuseCountsWhenMovingWindow() throws ClassNotFoundException, IOException, InvalidGenomicCoordsException, InvalidRecordException, SQLException{
+		GenomicCoords gc= new GenomicCoords("chr7:5566736-5566856", 80, null, null);
+		TrackPileup tr= new TrackPileup("test_data/ds051.short.bam", gc);
+		
+		// Move right, partially overlapping the previous window
+		gc= new GenomicCoords("chr7:5566800-5566920", 80, null, null);
+		tr.setGc(gc);
+		TrackPileup fresh= new TrackPileup("test_data/ds051.short.bam", gc);
+		assertEquals(fresh.getDepth(gc.getChrom(), gc.getFrom(), gc.getTo()), tr.getDepth(gc.getChrom(), gc.getFrom(), gc.getTo()));
+		
+		// Move left
+		gc= new GenomicCoords("chr7:5566700-5566820", 80, null, null);
+		tr.setGc(gc);
+		fresh= new TrackPileup("test_data/ds051.short.bam", gc);
+		assertEquals(fresh.getDepth(gc.getChrom(), gc.getFrom(), gc.getTo()), tr.getDepth(gc.getChrom(), gc.getFrom(), gc.getTo()));
+		
+		// Going back to a region already visited is served from cache
+		long misses= tr.getCacheMisses();
+		gc= new GenomicCoords("chr7:5566736-5566856", 80, null, null);
+		tr.setGc(gc);
+		assertEquals(misses, tr.getCacheMisses());
+		assertTrue(tr.getCacheHits() > 0);
+	}
 }
@@ -122,6 +122,21 @@ public class TrackReadsTest {
 			
 	}
 	
+	@Test
+	public void canShowCountOfHiddenReads() throws Exception{
+		GenomicCoords gc= new GenomicCoords("chr7:5566000-5567000", 80, null, null);
+		TrackReads tr= new TrackReads("test_data/ds051.short.bam", gc);
+		tr.setNoFormat(true);
+		tr.setyMaxLines(-1);
+		assertTrue( ! tr.getTitle().contains("hidden"));
+
+		tr.setyMaxLines(2);
+		assertEquals(2, tr.printToScreen().split("\n").length);
+		assertTrue(tr.getTitle().contains("; hidden: "));
+		// Hidden reads are still available to print
+		assertEquals(22, tr.getRecordsAsStrings().size());
+	}
+	
 	@Test
 	public void canReturnReadsAsRawStrings() throws ClassNotFoundException, IOException, InvalidGenomicCoordsException, InvalidRecordException, SQLException{
 		GenomicCoords gc= new GenomicCoords("chr7:5566000-5567000", 80, null, null);
@@ -322,10 +322,59 @@ public class TrackSetTest {
 		assertEquals("exon", ts.getTrack(t3).getShowRegex().pattern());
 		assertEquals("intron", ts.getTrack(t3).getHideRegex().pattern());
 
+		cmdInput= "grep -i HWI -f qname #1";
+		ts.setFilterForTrackIntervalFeature(Utils.tokenize(cmdInput, " "));
+		assertEquals("HWI", ts.getTrack(t1).getShowRegex().pattern());
+		assertEquals("qname", ts.getTrack(t1).getGrepField());
+
 		cmdInput= "grep"; // Reset all to default
 		ts.setFilterForTrackIntervalFeature(Utils.tokenize(cmdInput, " "));
 		assertEquals(".*", ts.getTrack(t3).getShowRegex().pattern()); // As default
 		assertEquals("^$", ts.getTrack(t3).getHideRegex().pattern());
+		assertEquals(null, ts.getTrack(t1).getGrepField());
+		
+		boolean pass= false;
+		try{
+			ts.setFilterForTrackIntervalFeature(Utils.tokenize("grep -i HWI -f foo", " "));
+		} catch(InvalidCommandLineException e){
+			pass= true;
+		}
+		assertTrue(pass);
+	}
+
+	@Test
+	public void canSetColumnFilterForTrackIntervalFeature() throws InvalidCommandLineException, IOException, InvalidGenomicCoordsException, ClassNotFoundException, InvalidRecordException, SQLException{
+				
+		TrackSet ts= new TrackSet();
+		GenomicCoords gc= new GenomicCoords("chr1:1-70000", 80, null, null);
+		Track t1= new TrackIntervalFeature("test_data/hg19_genes_head.gtf", gc); ts.addTrack(t1, "x");
+		Track t2= new TrackIntervalFeature("test_data/hg19_genes_head.gtf.gz", gc); ts.addTrack(t2, "x");
+		
+		ts.setAwkForTrack(Utils.tokenize("awk '$3 == \"exon\" && $START > 12000' #2", " "));
+		ts.setColumnFilterForTrack(Utils.tokenize("filter '$3 == \"exon\" && $START > 12000' #1", " "));
+		assertEquals("$3 == \"exon\" && $4 > 12000", ts.getTrack(t1).getColumnFilter());
+		assertEquals("", ts.getTrack(t1).getAwk());
+		int n= ((TrackIntervalFeature)t1).getIntervalFeatureList().size();
+		assertTrue(n > 0);
+		assertEquals(((TrackIntervalFeature)t2).getIntervalFeatureList().size(), n);
+		
+		// Not understood: Set as awk script
+		ts.setColumnFilterForTrack(Utils.tokenize("filter '($5 - $4) > 1000'", " "));
+		assertEquals(null, ts.getTrack(t1).getColumnFilter());
+		assertEquals("-F '\\t' '($5 - $4) > 1000'", ts.getTrack(t1).getAwk());
+		
+		// awk replaces the filter
+		ts.setColumnFilterForTrack(Utils.tokenize("filter '$3 == \"exon\"' #1", " "));
+		ts.setAwkForTrack(Utils.tokenize("awk '$3 == \"exon\"' #1", " "));
+		assertEquals(null, ts.getTrack(t1).getColumnFilter());
+
+		// Turn off 
+		ts.setColumnFilterForTrack(Utils.tokenize("filter '$3 == \"exon\"'", " "));
+		ts.setColumnFilterForTrack(Utils.tokenize("filter -off #2", " "));
+		assertEquals(null, ts.getTrack(t2).getColumnFilter());
+		assertEquals("$3 == \"exon\"", ts.getTrack(t1).getColumnFilter());
+		ts.setColumnFilterForTrack(Utils.tokenize("filter", " "));
+		assertEquals(null, ts.getTrack(t1).getColumnFilter());
 	}
 
 	@Test
@@ -171,13 +171,13 @@ public class TrackWigglesTest {
 		GenomicCoords gc= new GenomicCoords("chr8:1-100", 80, null, null);
 		String tdfFile= "test_data/hg18_var_sample.wig.v2.1.30.tdf";
 		List<ScreenWiggleLocusInfo> screenLocInfo = 
-		TDFUtils.tdfRangeToScreen(tdfFile, gc.getChrom(), gc.getFrom(), gc.getTo(), gc.getMapping());
+		TDFUtils.tdfRangeToScreen(tdfFile, gc.getChrom(), gc.getFrom(), gc.getTo(), gc);
 		// assertEquals(0.925, screenLocInfo.get(1).getMeanScore(), 0.1);
 
 	
 		gc= new GenomicCoords("chrM:1-16000", 80, null, null);
 		tdfFile= "/Volumes/My_Passport_for_Mac/tmp/rhh_hacat_0508-1406_FAIRE.tdf";
-		screenLocInfo = TDFUtils.tdfRangeToScreen(tdfFile, gc.getChrom(), gc.getFrom(), gc.getTo(), gc.getMapping());
+		screenLocInfo = TDFUtils.tdfRangeToScreen(tdfFile, gc.getChrom(), gc.getFrom(), gc.getTo(), gc);
 		int i= 1;
 		for(ScreenWiggleLocusInfo x : screenLocInfo){
 			//System.out.println(i + " " + x);